@@ -0,0 +1,47 @@
+package tool.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar, takes the usual JMH options.
+ *
+ * Unless given on the command line, the GC profiler (allocation rate, bytes per op) is enabled and
+ * the results are written as JSON to jmh-result.json, so that runs of different commits can be
+ * compared.
+ *
+ *    java -jar target/benchmarks.jar ModelBenchmark -p links=1000000 -rff results/$(git rev-parse --short HEAD).json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions cmd = new CommandLineOptions( args );
+
+        if ( cmd.shouldHelp() ) {
+            cmd.showHelp();
+            return;
+        }
+
+        if ( cmd.shouldList() ) {
+            new Runner( cmd ).list();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent( cmd );
+
+        if ( cmd.getProfilers().isEmpty() )
+            options.addProfiler( GCProfiler.class );
+
+        if ( !cmd.getResultFormat().hasValue() )
+            options.resultFormat( ResultFormatType.JSON );
+
+        new Runner( options.build() ).run();
+
+    }
+
+}
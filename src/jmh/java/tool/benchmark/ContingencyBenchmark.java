@@ -0,0 +1,54 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.GridModel;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tool.flow.ContingencyAnalysis;
+import tool.flow.DCPowerFlow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full N-1 screening of one tick: one solve and one pass over the links per outage, so it grows
+ * with links * ( nnz(L) + links ); the outages are spread over the common fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ContingencyBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int links;
+
+    ContingencyAnalysis analysis;
+    double[] flows;
+
+    @Setup
+    public void setup() {
+        SyntheticGridGenerator.SyntheticGrid g = Grids.generate( links );
+        GridModel grid = GridModel.build( g.regions, g.stations, g.powerPlants, g.segments );
+        DCPowerFlow flow = new DCPowerFlow( grid, Grids.SEED );
+        analysis = new ContingencyAnalysis( grid, flow );
+        flows = new double[grid.linkCount()];
+        flow.flows( 0, flows );
+    }
+
+    @Benchmark
+    public ContingencyAnalysis.Report sweep() {
+        return analysis.run( flows );
+    }
+
+}
@@ -0,0 +1,75 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+import dataprovider.CSVFileRepository;
+import dataprovider.GridDataProvider;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the model CSV files through CSVFileRepository and GridDataProvider. The files are
+ * generated once per trial into a temporary folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLoadBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int links;
+
+    File folder;
+
+    @Setup
+    public void setup() throws Exception {
+        folder = Grids.tempFolder( "csv-bench" );
+        new SyntheticGridGenerator( links, Grids.SEED ).writeCSV( folder.getPath() );
+        CSVFileRepository.repoPath = folder.getPath() + "/";
+    }
+
+    @TearDown
+    public void tearDown() {
+        Grids.delete( folder );
+    }
+
+    @Benchmark
+    public Vector<Station> stations() throws Exception {
+        return CSVFileRepository.getStationsFromRepository();
+    }
+
+    @Benchmark
+    public Vector<PowerPlant> plants() throws Exception {
+        return CSVFileRepository.getPowerPlantsFromRepository();
+    }
+
+    @Benchmark
+    public Vector<Region> regions() throws Exception {
+        return CSVFileRepository.getRegionsFromRepository();
+    }
+
+    @Benchmark
+    public Vector<String> segments() throws Exception {
+        return GridDataProvider.getSegments( CSVFileRepository.repoPath );
+    }
+
+}
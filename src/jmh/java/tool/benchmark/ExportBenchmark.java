@@ -0,0 +1,61 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.GridModel;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tool.SimulationScenario;
+import tool.geojson.GeoJSONExporter;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GeoJSONExporter.generateGrid on a synthetic grid, written to a temporary folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int links;
+
+    File folder;
+
+    @Setup
+    public void setup() throws Exception {
+
+        SyntheticGridGenerator.SyntheticGrid grid = Grids.generate( links );
+
+        SimulationScenario.setModel( GridModel.build( grid.regions, grid.stations, grid.powerPlants, grid.segments ) );
+
+        folder = Grids.tempFolder( "export-bench" );
+        GeoJSONExporter.initExportFolder( folder.getPath() );
+
+    }
+
+    @TearDown
+    public void tearDown() {
+        Grids.delete( folder );
+    }
+
+    @Benchmark
+    public File generateGrid() throws Exception {
+        return GeoJSONExporter.generateGrid();
+    }
+
+}
@@ -0,0 +1,102 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.poi.POIData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tool.geojson.GeoJSONEncoder;
+import tool.geojson.GeoJSONStreamWriter;
+import tool.geojson.OrgJsonService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrgJsonService.asGeoJson (org.json object trees) against GeoJSONEncoder for all station POIs of a
+ * grid, one POI per call and as one list, and GeoJSONEncoder.encodeAll into a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoJsonBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int links;
+
+    List<POIData> pois;
+    File file;
+
+    @Setup
+    public void setup() throws IOException {
+        pois = new ArrayList<>();
+        for( Station s : Grids.generate( links ).stations ) {
+            pois.add( s.asPoi() );
+        }
+        file = File.createTempFile( "pois", ".json" );
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void singlePoi(Blackhole bh) throws Exception {
+        for( POIData poi : pois ) {
+            bh.consume( OrgJsonService.asGeoJson( poi ) );
+        }
+    }
+
+    @Benchmark
+    public String poiList() throws Exception {
+        return OrgJsonService.asGeoJson( pois );
+    }
+
+    @Benchmark
+    public void singlePoiEncoder(Blackhole bh) {
+        for( POIData poi : pois ) {
+            bh.consume( GeoJSONEncoder.local().poi( poi ).toString() );
+        }
+    }
+
+    @Benchmark
+    public String poiListEncoder() {
+        return GeoJSONEncoder.featureCollection( pois );
+    }
+
+    @Benchmark
+    public long encodeAll() throws IOException {
+        GeoJSONStreamWriter w = new GeoJSONStreamWriter( file, false );
+        try {
+            GeoJSONEncoder.encodeAll( pois, new GeoJSONEncoder.FeatureSource<POIData>() {
+                @Override
+                public void encode(POIData poi, GeoJSONEncoder e) {
+                    e.poi( poi );
+                }
+            }, w );
+            w.close();
+        }
+        finally {
+            w.abort();
+        }
+        return w.getFeatureCount();
+    }
+
+}
@@ -0,0 +1,144 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.GridGraph;
+import dataprovider.SyntheticGridGenerator;
+import edu.uci.ics.jung.algorithms.cluster.WeakComponentClusterer;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CSR GridGraph against a JUNG UndirectedSparseGraph of the same synthetic segments: building
+ * the graph, connected components and a 3-hop neighbourhood.
+ *
+ * The edges come straight from the generator as int pairs, without the model classes, so 10
+ * million links fit as well: -p links=10000000 (JUNG needs a few GB more heap for that).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    static final int HOPS = 3;
+
+    @Param({ "100000", "1000000" })
+    public int links;
+
+    int nodes;
+    int[] source;
+    int[] target;
+    int edges;
+
+    GridGraph csr;
+    Graph<Integer, Integer> jung;
+
+    int start = 0;
+
+    @Setup
+    public void setup() throws IOException {
+
+        SyntheticGridGenerator generator = new SyntheticGridGenerator( links, Grids.SEED );
+        source = new int[links];
+        target = new int[links];
+        generator.segments( new SyntheticGridGenerator.SegmentSink() {
+            @Override
+            public void segment(int s, int t) {
+                if ( edges == source.length ) {
+                    source = Arrays.copyOf( source, 2 * edges );
+                    target = Arrays.copyOf( target, 2 * edges );
+                }
+                source[edges] = s;
+                target[edges] = t;
+                edges++;
+            }
+        });
+        nodes = generator.getStationCount();
+
+        csr = buildCsr();
+        jung = buildJung();
+
+    }
+
+    @Benchmark
+    public GridGraph buildCsr() {
+        GridGraph.Builder b = new GridGraph.Builder( nodes, edges );
+        for( int e = 0; e < edges; e++ ) {
+            b.add( source[e], target[e] );
+        }
+        return b.build();
+    }
+
+    @Benchmark
+    public Graph<Integer, Integer> buildJung() {
+        Graph<Integer, Integer> g = new UndirectedSparseGraph<>();
+        for( int v = 0; v < nodes; v++ ) {
+            g.addVertex( v );
+        }
+        for( int e = 0; e < edges; e++ ) {
+            if ( source[e] != target[e] && g.findEdge( source[e], target[e] ) == null )
+                g.addEdge( e, source[e], target[e] );
+        }
+        return g;
+    }
+
+    @Benchmark
+    public GridGraph.Components componentsCsr() {
+        return csr.components();
+    }
+
+    @Benchmark
+    public Set<Set<Integer>> componentsJung() {
+        return new WeakComponentClusterer<Integer, Integer>().transform( jung );
+    }
+
+    @Benchmark
+    public int[] hopsCsr() {
+        return csr.withinHops( next(), HOPS );
+    }
+
+    @Benchmark
+    public Set<Integer> hopsJung() {
+        int s = next();
+        Set<Integer> seen = new HashSet<>();
+        seen.add( s );
+        ArrayDeque<Integer> level = new ArrayDeque<>();
+        level.add( s );
+        for( int h = 0; h < HOPS; h++ ) {
+            ArrayDeque<Integer> nextLevel = new ArrayDeque<>();
+            for( Integer v : level ) {
+                for( Integer u : jung.getNeighbors( v ) ) {
+                    if ( seen.add( u ) )
+                        nextLevel.add( u );
+                }
+            }
+            level = nextLevel;
+        }
+        return seen;
+    }
+
+    int next() {
+        start = ( start + 7919 ) % nodes;
+        return start;
+    }
+
+}
@@ -0,0 +1,89 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.TopologyIndex;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the GridLink set from stations and segments: the TopologyIndex against the former
+ * pairwise Vector.contains() scan, which is only measured on small grids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridBuildBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Grid {
+
+        @Param({ "1000", "100000", "1000000" })
+        public int links;
+
+        SyntheticGridGenerator.SyntheticGrid grid;
+
+        @Setup
+        public void setup() {
+            grid = Grids.generate( links );
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class SmallGrid {
+
+        @Param({ "100", "1000" })
+        public int links;
+
+        SyntheticGridGenerator.SyntheticGrid grid;
+
+        @Setup
+        public void setup() {
+            grid = Grids.generate( links );
+        }
+
+    }
+
+    @Benchmark
+    public List<GridLink> topologyIndex(Grid g) {
+        return TopologyIndex.build( g.grid.stations, g.grid.segments ).createGridLinks( 0, 100, 0.1, "STATIONLINK" );
+    }
+
+    @Benchmark
+    public Vector<GridLink> pairwiseScan(SmallGrid g) {
+        return pairwiseScan( g.grid.stations, g.grid.segments );
+    }
+
+    /**
+     * The way GeoJSONExporter.generateGrid used to find the links: O(S^2 * L).
+     */
+    static Vector<GridLink> pairwiseScan(Vector<Station> stations, Vector<String> segments) {
+        Vector<GridLink> links = new Vector<>();
+        for( Station s1 : stations ) {
+            for( Station s2 : stations ) {
+                if ( segments.contains( s1.id + "-" + s2.id ) ) {
+                    links.add( new GridLink( s1, s2, 0, 100, 0.1, "STATIONLINK" ) );
+                }
+            }
+        }
+        return links;
+    }
+
+}
@@ -0,0 +1,42 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.TopologyIndex;
+import datamodel.graph_of_things.relations.GridLink;
+import dataprovider.SyntheticGridGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Synthetic grids for the benchmarks, always with the same seed, so every run and every commit
+ * measures the same data.
+ */
+class Grids {
+
+    static final long SEED = 42;
+
+    static SyntheticGridGenerator.SyntheticGrid generate(int links) {
+        return new SyntheticGridGenerator( links, SEED ).generate();
+    }
+
+    static List<GridLink> gridLinks(SyntheticGridGenerator.SyntheticGrid grid) {
+        return TopologyIndex.build( grid.stations, grid.segments ).createGridLinks( 0, 100, 0.1, "STATIONLINK" );
+    }
+
+    static File tempFolder(String prefix) throws IOException {
+        return Files.createTempDirectory( prefix ).toFile();
+    }
+
+    static void delete(File f) {
+        File[] children = f.listFiles();
+        if ( children != null ) {
+            for( File c : children ) {
+                delete( c );
+            }
+        }
+        f.delete();
+    }
+
+}
@@ -0,0 +1,89 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass over all links or stations of a grid: sample generation and the Gson encoding of
+ * samples and nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int links;
+
+    GridLink[] gridLinks;
+    PowerFlowSample[] samples;
+    Station[] stations;
+
+    SplittableRandom random;
+
+    @Setup
+    public void setup() {
+
+        SyntheticGridGenerator.SyntheticGrid grid = Grids.generate( links );
+
+        gridLinks = Grids.gridLinks( grid ).toArray( new GridLink[0] );
+        stations = grid.stations.toArray( new Station[0] );
+
+        random = new SplittableRandom( Grids.SEED );
+
+        samples = new PowerFlowSample[gridLinks.length];
+        for( int i = 0; i < gridLinks.length; i++ ) {
+            samples[i] = gridLinks[i].newSample( 1, random );
+        }
+
+    }
+
+    @Benchmark
+    public void newSample(Blackhole bh) {
+        for( GridLink l : gridLinks ) {
+            bh.consume( l.newSample( 1 ) );
+        }
+    }
+
+    @Benchmark
+    public void newSampleSeeded(Blackhole bh) {
+        for( GridLink l : gridLinks ) {
+            bh.consume( l.newSample( 1, random ) );
+        }
+    }
+
+    @Benchmark
+    public void sampleAsJson(Blackhole bh) {
+        for( PowerFlowSample s : samples ) {
+            bh.consume( s.asJson() );
+        }
+    }
+
+    @Benchmark
+    public void stationAsJson(Blackhole bh) {
+        for( Station s : stations ) {
+            bh.consume( s.asJson() );
+        }
+    }
+
+}
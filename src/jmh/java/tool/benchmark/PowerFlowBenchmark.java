@@ -0,0 +1,62 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.GridModel;
+import dataprovider.SyntheticGridGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tool.flow.DCPowerFlow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DC power flow: building and factorising the susceptance matrix once, and one tick (noise on
+ * production and load, one solve, the link flows).
+ *
+ * A tick must grow with nnz(L), not with the square of the buses, and allocate nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PowerFlowBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int links;
+
+    GridModel grid;
+    DCPowerFlow flow;
+    double[] flows;
+
+    int z = 0;
+
+    @Setup
+    public void setup() {
+        SyntheticGridGenerator.SyntheticGrid g = Grids.generate( links );
+        grid = GridModel.build( g.regions, g.stations, g.powerPlants, g.segments );
+        flow = new DCPowerFlow( grid, Grids.SEED );
+        flows = new double[grid.linkCount()];
+    }
+
+    @Benchmark
+    public DCPowerFlow factorise() {
+        return new DCPowerFlow( grid, Grids.SEED );
+    }
+
+    @Benchmark
+    public double[] tick() {
+        flow.flows( z++, flows );
+        return flows;
+    }
+
+}
@@ -0,0 +1,116 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+import kafka.serde.LinkIdDictionary;
+import kafka.serde.PowerFlowSampleBinarySerializer;
+import kafka.serde.SampleEncoder;
+import kafka.serde.SampleFormat;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding all samples of one tick in the JSON and in the binary wire format. The record size of
+ * the format is printed once per trial.
+ *
+ * serialize: PowerFlowSample objects through the Kafka serializer of the format.
+ * encodeFromBuffer: the same records from a SampleBuffer into a reused ByteBuffer, this must show
+ * (close to) zero bytes in gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SampleFormatBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int links;
+
+    @Param({ "JSON", "BINARY" })
+    public SampleFormat format;
+
+    PowerFlowSample[] samples;
+    Serializer<PowerFlowSample> serializer;
+
+    SampleBuffer buffer;
+    SampleEncoder encoder;
+    ByteBuffer out;
+
+    @Setup
+    public void setup() throws Exception {
+
+        List<GridLink> gridLinks = Grids.gridLinks( Grids.generate( links ) );
+
+        LinkIdDictionary dictionary = new LinkIdDictionary();
+        SplittableRandom random = new SplittableRandom( Grids.SEED );
+
+        samples = new PowerFlowSample[gridLinks.size()];
+        buffer = new SampleBuffer( gridLinks.size() );
+        String[] linkIds = new String[gridLinks.size()];
+        for( int i = 0; i < samples.length; i++ ) {
+            linkIds[i] = gridLinks.get( i ).id;
+            dictionary.assign( linkIds[i] );
+            samples[i] = gridLinks.get( i ).newSample( 1, random );
+            buffer.set( i, i, samples[i].ts, samples[i].flow );
+        }
+        buffer.setSize( samples.length );
+
+        encoder = format.encoder( linkIds, dictionary );
+        out = ByteBuffer.allocate( 1 << 16 );
+
+        serializer = format == SampleFormat.BINARY ? new PowerFlowSampleBinarySerializer( dictionary ) : newSerializer( format.serializerClass );
+
+        long bytes = 0;
+        for( PowerFlowSample s : samples ) {
+            bytes = bytes + serializer.serialize( "bench", s ).length;
+        }
+        System.out.println( String.format( "> %s : %.1f bytes/record", format, bytes / (double) samples.length ) );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    static Serializer<PowerFlowSample> newSerializer(String className) throws Exception {
+        Serializer<PowerFlowSample> s = (Serializer<PowerFlowSample>) Class.forName( className ).getDeclaredConstructor().newInstance();
+        s.configure( new HashMap<String, Object>(), false );
+        return s;
+    }
+
+    @Benchmark
+    public int encodeFromBuffer() {
+        int bytes = 0;
+        for( int i = 0; i < buffer.size(); i++ ) {
+            out.clear();
+            encoder.encode( buffer, i, out );
+            bytes = bytes + out.position();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public void serialize(Blackhole bh) {
+        for( PowerFlowSample s : samples ) {
+            bh.consume( serializer.serialize( "bench", s ) );
+        }
+    }
+
+}
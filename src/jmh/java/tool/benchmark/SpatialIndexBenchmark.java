@@ -0,0 +1,135 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.SpatialIndex;
+import datamodel.poi.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of the SpatialIndex over clustered nodes in Europe, against a linear scan, and the
+ * bulk load. The index is shared, run with -t 4 to measure concurrent reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    @Param({ "10000", "1000000" })
+    public int nodes;
+
+    static final int QUERIES = 1024;
+
+    List<Node> list;
+    SpatialIndex<Node> index;
+
+    double[] lat = new double[QUERIES];
+    double[] lon = new double[QUERIES];
+
+    @Setup
+    public void setup() {
+
+        SplittableRandom random = new SplittableRandom( Grids.SEED );
+
+        // gaussian clusters around a few hundred cities
+        double[] cLat = new double[256];
+        double[] cLon = new double[256];
+        for( int c = 0; c < cLat.length; c++ ) {
+            cLat[c] = 36 + 34 * random.nextDouble();
+            cLon[c] = -10 + 40 * random.nextDouble();
+        }
+
+        list = new ArrayList<>( nodes );
+        for( int i = 0; i < nodes; i++ ) {
+            int c = random.nextInt( cLat.length );
+            Node n = new Node();
+            n.id = "N" + i;
+            n.lat = cLat[c] + gaussian( random ) * 0.8;
+            n.lon = cLon[c] + gaussian( random ) * 1.2;
+            list.add( n );
+        }
+
+        index = SpatialIndex.of( list );
+
+        for( int q = 0; q < QUERIES; q++ ) {
+            Node n = list.get( random.nextInt( nodes ) );
+            lat[q] = n.lat + random.nextDouble() - 0.5;
+            lon[q] = n.lon + random.nextDouble() - 0.5;
+        }
+
+    }
+
+    static double gaussian(SplittableRandom random) {
+        // Box-Muller, SplittableRandom has no nextGaussian()
+        return Math.sqrt( -2 * Math.log( 1 - random.nextDouble() ) ) * Math.cos( 2 * Math.PI * random.nextDouble() );
+    }
+
+    static int query() {
+        return ThreadLocalRandom.current().nextInt( QUERIES );
+    }
+
+    @Benchmark
+    public Node nearest() {
+        int q = query();
+        return index.nearest( lat[q], lon[q] );
+    }
+
+    @Benchmark
+    public List<Node> nearest10() {
+        int q = query();
+        return index.nearest( lat[q], lon[q], 10 );
+    }
+
+    @Benchmark
+    public List<Node> radius25km() {
+        int q = query();
+        return index.withinRadius( lat[q], lon[q], 25 );
+    }
+
+    @Benchmark
+    public List<Node> box() {
+        int q = query();
+        return index.withinBox( lat[q] - 0.1, lon[q] - 0.15, lat[q] + 0.1, lon[q] + 0.15 );
+    }
+
+    @Benchmark
+    public Node nearestLinearScan() {
+        int q = query();
+        Node best = null;
+        double min = Double.POSITIVE_INFINITY;
+        for( Node n : list ) {
+            double d = SpatialIndex.distanceKm( lat[q], lon[q], n.lat, n.lon );
+            if ( d < min ) {
+                min = d;
+                best = n;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public SpatialIndex<Node> bulkLoad() {
+        return SpatialIndex.of( list );
+    }
+
+}
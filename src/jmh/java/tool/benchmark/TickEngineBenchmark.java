@@ -0,0 +1,82 @@
+package tool.benchmark;
+
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tool.TickEngine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One simulation tick (sample generation only, no publishing) with a growing number of workers,
+ * as PowerFlowSample objects and into a SampleBuffer.
+ *
+ * The buffer path must not allocate per sample: its gc.alloc.rate.norm is a few hundred bytes per
+ * tick (task objects of the workers) whatever the number of links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TickEngineBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int links;
+
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    TickEngine engine;
+    SampleBuffer buffer;
+
+    // called from all workers, a Blackhole must not be shared between threads
+    final LongAdder checksum = new LongAdder();
+
+    final TickEngine.SampleSink sink = new TickEngine.SampleSink() {
+        @Override
+        public void sample(PowerFlowSample sample) {
+            checksum.add( Double.doubleToLongBits( sample.flow ) );
+        }
+    };
+
+    int z = 0;
+
+    @Setup
+    public void setup() {
+        List<GridLink> gridLinks = Grids.gridLinks( Grids.generate( links ) );
+        engine = new TickEngine( gridLinks, threads, Grids.SEED );
+        buffer = new SampleBuffer( gridLinks.size() );
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public int tick() {
+        return engine.tick( z++, sink );
+    }
+
+    @Benchmark
+    public int tickIntoBuffer() {
+        return engine.tick( z++, buffer, null );
+    }
+
+}
@@ -0,0 +1,617 @@
+package datamodel.graph_of_things;
+
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The grid as an undirected graph in compressed sparse rows (CSR): the neighbours of node v are
+ * adjacency[ offsets[v] .. offsets[v+1] ), sorted, without duplicates and self loops. Two int arrays
+ * for the whole graph, 4 * ( nodes + 1 + 2 * edges ) bytes: 80 MB for 10 million edges plus 4 bytes
+ * per node, e.g. about 110 MB for the 7.1 million stations of a synthetic grid with 10 million
+ * links, where a graph of node and edge objects needs several times that.
+ *
+ * The nodes are dense ordinals: in a graph of a GridModel first the stations in station order,
+ * then the power plants. The graph never changes after it is built, it can be read by any number
+ * of threads.
+ *
+ *  - components() : connected components (islands) by a lock free parallel union-find
+ *  - hops(source) : hop distance of every node, level synchronous BFS, large levels in parallel
+ *  - withinHops(source, k) : the k-hop neighbourhood of one node, touches only that neighbourhood
+ *  - degrees() : degree statistics
+ */
+public final class GridGraph {
+
+    /**
+     * Nodes (or BFS frontier entries) per parallel task.
+     */
+    static final int GRAIN = 16384;
+
+    final int nodes;
+    final int[] offsets;
+    final int[] adjacency;
+
+    final ThreadLocal<int[]> marks;         // per thread for withinHops, reset by stamps
+    final ThreadLocal<int[]> stamp = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    GridGraph(final int nodes, int[] offsets, int[] adjacency) {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.adjacency = adjacency;
+        this.marks = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[nodes];
+            }
+        };
+    }
+
+    /**
+     * The stations and plants of the model with all its links.
+     */
+    public static GridGraph of(GridModel grid) {
+
+        List<Station> stations = grid.stations();
+        List<PowerPlant> plants = grid.powerPlants();
+
+        Map<Node, Integer> ordinal = new IdentityHashMap<>( 2 * ( stations.size() + plants.size() ) );
+        for( int s = 0; s < stations.size(); s++ ) {
+            ordinal.put( stations.get( s ), s );
+        }
+        for( int p = 0; p < plants.size(); p++ ) {
+            ordinal.put( plants.get( p ), stations.size() + p );
+        }
+
+        Builder b = new Builder( stations.size() + plants.size(), grid.linkCount() );
+        for( GridLink l : grid.gridLinks() ) {
+            Integer a = ordinal.get( l.source() );
+            Integer t = ordinal.get( l.target() );
+            if ( a != null && t != null )
+                b.add( a, t );
+        }
+        return b.build();
+
+    }
+
+    /**
+     * Collects the edges as two int arrays, build() sorts them into rows.
+     */
+    public static final class Builder {
+
+        final int nodes;
+        int[] source;
+        int[] target;
+        int edges = 0;
+
+        public Builder(int nodes, int expectedEdges) {
+            this.nodes = nodes;
+            this.source = new int[Math.max( 16, expectedEdges )];
+            this.target = new int[Math.max( 16, expectedEdges )];
+        }
+
+        public Builder add(int a, int b) {
+            if ( a < 0 || a >= nodes || b < 0 || b >= nodes )
+                throw new IllegalArgumentException( "Edge " + a + "-" + b + " outside of 0.." + ( nodes - 1 ) );
+            if ( edges == source.length ) {
+                int size = (int) Math.min( Integer.MAX_VALUE - 8, source.length * 3L / 2 );
+                source = Arrays.copyOf( source, size );
+                target = Arrays.copyOf( target, size );
+            }
+            source[edges] = a;
+            target[edges] = b;
+            edges++;
+            return this;
+        }
+
+        public GridGraph build() {
+
+            int[] offsets = new int[nodes + 1];
+            for( int e = 0; e < edges; e++ ) {
+                if ( source[e] != target[e] ) {
+                    offsets[source[e] + 1]++;
+                    offsets[target[e] + 1]++;
+                }
+            }
+            for( int v = 0; v < nodes; v++ ) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            int[] fill = Arrays.copyOf( offsets, nodes );
+            int[] adjacency = new int[offsets[nodes]];
+            for( int e = 0; e < edges; e++ ) {
+                int a = source[e], b = target[e];
+                if ( a != b ) {
+                    adjacency[fill[a]++] = b;
+                    adjacency[fill[b]++] = a;
+                }
+            }
+
+            // the edge lists are not needed any more
+            source = null;
+            target = null;
+            fill = null;
+
+            // sort the rows in parallel, then drop duplicates in place
+            final int[] o = offsets;
+            final int[] adj = adjacency;
+            parallel( nodes, new Range() {
+                @Override
+                public void run(int from, int to) {
+                    for( int v = from; v < to; v++ ) {
+                        Arrays.sort( adj, o[v], o[v + 1] );
+                    }
+                }
+            });
+
+            int write = 0;
+            int start = 0;
+            for( int v = 0; v < nodes; v++ ) {
+                int end = offsets[v + 1];
+                int rowStart = write;
+                for( int p = start; p < end; p++ ) {
+                    if ( write == rowStart || adjacency[write - 1] != adjacency[p] )
+                        adjacency[write++] = adjacency[p];
+                }
+                start = end;
+                offsets[v + 1] = write;
+            }
+
+            return new GridGraph( nodes, offsets, write == adjacency.length ? adjacency : Arrays.copyOf( adjacency, write ) );
+
+        }
+
+    }
+
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Distinct undirected edges.
+     */
+    public long edgeCount() {
+        return adjacency.length / 2;
+    }
+
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    public int firstNeighbour(int v) {
+        return offsets[v];
+    }
+
+    public int endNeighbour(int v) {
+        return offsets[v + 1];
+    }
+
+    public int neighbour(int position) {
+        return adjacency[position];
+    }
+
+    /**
+     * The bytes of the two arrays.
+     */
+    public long heapBytes() {
+        return 4L * offsets.length + 4L * adjacency.length;
+    }
+
+    /*
+     * Connected components
+     */
+
+    /**
+     * The connected components: every node gets the label of its component, components are
+     * numbered in the order of their lowest node.
+     */
+    public Components components() {
+
+        final AtomicIntegerArray parent = new AtomicIntegerArray( nodes );
+        parallel( nodes, new Range() {
+            @Override
+            public void run(int from, int to) {
+                for( int v = from; v < to; v++ ) {
+                    parent.set( v, v );
+                }
+            }
+        });
+
+        // every edge once (from its lower end), the roots are the lowest nodes of their trees
+        parallel( nodes, new Range() {
+            @Override
+            public void run(int from, int to) {
+                for( int v = from; v < to; v++ ) {
+                    for( int p = offsets[v]; p < offsets[v + 1]; p++ ) {
+                        if ( adjacency[p] > v )
+                            union( parent, v, adjacency[p] );
+                    }
+                }
+            }
+        });
+
+        final int[] label = new int[nodes];
+        parallel( nodes, new Range() {
+            @Override
+            public void run(int from, int to) {
+                for( int v = from; v < to; v++ ) {
+                    label[v] = find( parent, v );
+                }
+            }
+        });
+
+        // a root is the lowest node of its component, so it is labelled before its members
+        int count = 0;
+        for( int v = 0; v < nodes; v++ ) {
+            label[v] = label[v] == v ? count++ : label[label[v]];
+        }
+
+        int[] size = new int[count];
+        for( int v = 0; v < nodes; v++ ) {
+            size[label[v]]++;
+        }
+
+        return new Components( label, size );
+
+    }
+
+    static int find(AtomicIntegerArray parent, int v) {
+        while( true ) {
+            int p = parent.get( v );
+            if ( p == v )
+                return v;
+            int gp = parent.get( p );
+            if ( gp != p )
+                parent.compareAndSet( v, p, gp );       // path halving
+            v = gp;
+        }
+    }
+
+    static void union(AtomicIntegerArray parent, int a, int b) {
+        while( true ) {
+            a = find( parent, a );
+            b = find( parent, b );
+            if ( a == b )
+                return;
+            // the higher root goes below the lower one, so no cycles even under contention
+            if ( a < b ) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if ( parent.compareAndSet( a, a, b ) )
+                return;
+        }
+    }
+
+    public static final class Components {
+
+        final int[] label;
+        final int[] size;
+
+        Components(int[] label, int[] size) {
+            this.label = label;
+            this.size = size;
+        }
+
+        public int count() {
+            return size.length;
+        }
+
+        public int of(int node) {
+            return label[node];
+        }
+
+        public int size(int component) {
+            return size[component];
+        }
+
+        /**
+         * The largest component, -1 for an empty graph.
+         */
+        public int largest() {
+            int best = -1;
+            for( int c = 0; c < size.length; c++ ) {
+                if ( best < 0 || size[c] > size[best] )
+                    best = c;
+            }
+            return best;
+        }
+
+        /**
+         * Components of one node.
+         */
+        public int isolated() {
+            int n = 0;
+            for( int s : size ) {
+                if ( s == 1 )
+                    n++;
+            }
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            int l = largest();
+            return count() + " components, largest " + ( l < 0 ? 0 : size[l] ) + " nodes, " + isolated() + " isolated";
+        }
+
+    }
+
+    /*
+     * Breadth first search
+     */
+
+    /**
+     * The hop distance from source to every node, -1 if not reachable. Levels with more than GRAIN
+     * nodes are expanded in parallel.
+     */
+    public int[] hops(int source) {
+
+        final AtomicIntegerArray dist = new AtomicIntegerArray( nodes );
+        parallel( nodes, new Range() {
+            @Override
+            public void run(int from, int to) {
+                for( int v = from; v < to; v++ ) {
+                    dist.set( v, -1 );
+                }
+            }
+        });
+
+        dist.set( source, 0 );
+        int[] frontier = { source };
+        int size = 1;
+
+        for( int level = 1; size > 0; level++ ) {
+
+            if ( size < GRAIN ) {
+                int[] next = new int[Math.max( 16, size * 2 )];
+                int n = 0;
+                for( int i = 0; i < size; i++ ) {
+                    int v = frontier[i];
+                    for( int p = offsets[v]; p < offsets[v + 1]; p++ ) {
+                        int u = adjacency[p];
+                        if ( dist.get( u ) < 0 ) {
+                            dist.set( u, level );
+                            if ( n == next.length )
+                                next = Arrays.copyOf( next, n * 2 );
+                            next[n++] = u;
+                        }
+                    }
+                }
+                frontier = next;
+                size = n;
+            }
+            else {
+                Level l = new Level( frontier, 0, size, level, dist );
+                ForkJoinPool.commonPool().invoke( l );
+                frontier = l.found;
+                size = l.count;
+            }
+
+        }
+
+        int[] result = new int[nodes];
+        for( int v = 0; v < nodes; v++ ) {
+            result[v] = dist.get( v );
+        }
+        return result;
+
+    }
+
+    /**
+     * Expands frontier[from, to) by one level, a node is claimed by the first task which sets its
+     * distance. The nodes found by the halves are concatenated.
+     */
+    final class Level extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int[] frontier;
+        final int from, to, level;
+        final AtomicIntegerArray dist;
+
+        int[] found;
+        int count;
+
+        Level(int[] frontier, int from, int to, int level, AtomicIntegerArray dist) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.level = level;
+            this.dist = dist;
+        }
+
+        @Override
+        protected void compute() {
+
+            if ( to - from > GRAIN ) {
+                int mid = ( from + to ) >>> 1;
+                Level a = new Level( frontier, from, mid, level, dist );
+                Level b = new Level( frontier, mid, to, level, dist );
+                invokeAll( a, b );
+                found = Arrays.copyOf( a.found, a.count + b.count );
+                System.arraycopy( b.found, 0, found, a.count, b.count );
+                count = a.count + b.count;
+                return;
+            }
+
+            found = new int[2 * ( to - from )];
+            for( int i = from; i < to; i++ ) {
+                int v = frontier[i];
+                for( int p = offsets[v]; p < offsets[v + 1]; p++ ) {
+                    int u = adjacency[p];
+                    if ( dist.get( u ) < 0 && dist.compareAndSet( u, -1, level ) ) {
+                        if ( count == found.length )
+                            found = Arrays.copyOf( found, count * 2 );
+                        found[count++] = u;
+                    }
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * The nodes at most k hops from source (source first, then by distance). Only the neighbourhood
+     * is touched: the visited marks are a per thread array which is reset by a new stamp, so many
+     * threads can query at the same time.
+     */
+    public int[] withinHops(int source, int k) {
+
+        int[] mark = marks.get();
+        int[] s = stamp.get();
+        if ( ++s[0] == Integer.MAX_VALUE ) {
+            Arrays.fill( mark, 0 );
+            s[0] = 1;
+        }
+        int current = s[0];
+
+        int[] result = new int[16];
+        result[0] = source;
+        mark[source] = current;
+        int n = 1;
+        int levelStart = 0;
+
+        for( int level = 0; level < k && levelStart < n; level++ ) {
+            int levelEnd = n;
+            for( int i = levelStart; i < levelEnd; i++ ) {
+                int v = result[i];
+                for( int p = offsets[v]; p < offsets[v + 1]; p++ ) {
+                    int u = adjacency[p];
+                    if ( mark[u] != current ) {
+                        mark[u] = current;
+                        if ( n == result.length )
+                            result = Arrays.copyOf( result, n * 2 );
+                        result[n++] = u;
+                    }
+                }
+            }
+            levelStart = levelEnd;
+        }
+
+        return Arrays.copyOf( result, n );
+
+    }
+
+    /*
+     * Degrees
+     */
+
+    public Degrees degrees() {
+
+        int min = Integer.MAX_VALUE, max = 0;
+        for( int v = 0; v < nodes; v++ ) {
+            int d = degree( v );
+            min = Math.min( min, d );
+            max = Math.max( max, d );
+        }
+
+        long[] histogram = new long[Math.min( max, Degrees.BUCKETS - 1 ) + 1];
+        for( int v = 0; v < nodes; v++ ) {
+            histogram[Math.min( degree( v ), histogram.length - 1 )]++;
+        }
+
+        return new Degrees( nodes == 0 ? 0 : min, max, nodes == 0 ? 0 : (double) adjacency.length / nodes, histogram );
+
+    }
+
+    public static final class Degrees {
+
+        /**
+         * Degrees from this on share the last bucket.
+         */
+        static final int BUCKETS = 32;
+
+        public final int min;
+        public final int max;
+        public final double mean;
+        final long[] histogram;
+
+        Degrees(int min, int max, double mean, long[] histogram) {
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Nodes with this degree, the last bucket counts all higher degrees too.
+         */
+        public long count(int degree) {
+            return degree < histogram.length ? histogram[degree] : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder( String.format( Locale.ROOT, "degree min %d mean %.2f max %d [", min, mean, max ) );
+            for( int d = 0; d < histogram.length; d++ ) {
+                if ( histogram[d] > 0 )
+                    sb.append( d == BUCKETS - 1 ? d + "+" : String.valueOf( d ) ).append( ':' ).append( histogram[d] ).append( ' ' );
+            }
+            return sb.toString().trim() + "]";
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return String.format( Locale.ROOT, "GridGraph{%d nodes, %d edges, %.1f MB}", nodes, edgeCount(), heapBytes() / 1e6 );
+    }
+
+    /*
+     * Fork-join over node ranges
+     */
+
+    interface Range {
+        void run(int from, int to);
+    }
+
+    static void parallel(int n, final Range range) {
+        if ( n <= GRAIN )
+            range.run( 0, n );
+        else
+            ForkJoinPool.commonPool().invoke( new Split( range, 0, n ) );
+    }
+
+    static final class Split extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final Range range;
+        final int from, to;
+
+        Split(Range range, int from, int to) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from <= GRAIN ) {
+                range.run( from, to );
+                return;
+            }
+            int mid = ( from + to ) >>> 1;
+            invokeAll( new Split( range, from, mid ), new Split( range, mid, to ) );
+        }
+
+    }
+
+}
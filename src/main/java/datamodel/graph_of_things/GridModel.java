@@ -0,0 +1,328 @@
+package datamodel.graph_of_things;
+
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One immutable version of the grid: the loaded nodes and segments, their id indexes, the topology
+ * and the derived links, all built once.
+ *
+ * A model never changes after construction, so any number of threads can iterate it without locks
+ * (the lists are unmodifiable, the registries are frozen). An edit creates a new model with the next
+ * version (copy-on-write), readers which still hold the old one keep a consistent view.
+ *
+ * The links are the station links in topology order (source, then target station position),
+ * followed by one link per power plant to its station, in plant order. A plant whose station id is
+ * unknown is linked to the nearest station of its country (or the nearest one at all).
+ *
+ * The spatial indexes are built on first use.
+ */
+public final class GridModel {
+
+    public static final String STATIONLINK = "STATIONLINK";
+
+    /**
+     * Parameters of the derived links.
+     */
+    static final double STATION_LINK_FLOW = 100;
+    static final double EPSILON = 0.1;
+
+    /**
+     * An edit of the published model, may be applied more than once if another edit wins the race.
+     */
+    public interface Edit {
+        GridModel apply(GridModel current);
+    }
+
+    final long version;
+
+    final List<Region> regions;
+    final List<Station> stations;
+    final List<PowerPlant> powerPlants;
+    final List<String> segments;
+
+    final NodeRegistry<Region> regionRegistry;
+    final NodeRegistry<Station> stationRegistry;
+    final NodeRegistry<PowerPlant> plantRegistry;
+    final TopologyIndex topology;
+
+    final GridLink[] links;
+    final List<GridLink> linkList;
+    final GridLink[] plantLinks;        // per plant ordinal, null if there are no stations
+    final int stationLinks;
+
+    volatile SpatialIndex<Station> stationIndex;
+    volatile SpatialIndex<PowerPlant> plantIndex;
+    volatile SpatialIndex<Region> regionIndex;
+    volatile GridGraph graph;
+
+    GridModel(long version, Collection<Region> regions, Collection<Station> stations, Collection<PowerPlant> powerPlants, Collection<String> segments) {
+
+        this.version = version;
+
+        this.regions = Collections.unmodifiableList( new ArrayList<>( regions ) );
+        this.stations = Collections.unmodifiableList( new ArrayList<>( stations ) );
+        this.powerPlants = Collections.unmodifiableList( new ArrayList<>( powerPlants ) );
+        this.segments = Collections.unmodifiableList( new ArrayList<>( segments ) );
+
+        this.regionRegistry = NodeRegistry.of( this.regions ).freeze();
+        this.stationRegistry = NodeRegistry.of( this.stations ).freeze();
+        this.plantRegistry = NodeRegistry.of( this.powerPlants ).freeze();
+        this.topology = TopologyIndex.build( stationRegistry, this.segments );
+
+        List<GridLink> l = topology.createGridLinks( 0, STATION_LINK_FLOW, EPSILON, STATIONLINK );
+        this.stationLinks = l.size();
+
+        int nearest = 0;
+        this.plantLinks = new GridLink[this.powerPlants.size()];
+        for( int p = 0; p < plantLinks.length; p++ ) {
+            PowerPlant plant = this.powerPlants.get( p );
+            Station s = stationRegistry.get( plant.linkedToStation );
+            if ( s == null ) {
+                s = nearestStation( plant );
+                if ( s == null )
+                    continue;
+                nearest++;
+            }
+            plantLinks[p] = new GridLink( plant, s, 0, plant.production, EPSILON, STATIONLINK );
+            l.add( plantLinks[p] );
+        }
+
+        this.links = l.toArray( new GridLink[0] );
+        this.linkList = Collections.unmodifiableList( Arrays.asList( links ) );
+
+        if ( nearest > 0 )
+            System.out.println( "> GridModel: " + nearest + " power plant(s) with unknown stations linked to the nearest station." );
+
+    }
+
+    /**
+     * The first version, built from the loaded data.
+     */
+    public static GridModel build(Collection<Region> regions, Collection<Station> stations, Collection<PowerPlant> powerPlants, Collection<String> segments) {
+        return new GridModel( 1, regions, stations, powerPlants, segments );
+    }
+
+    public static GridModel empty() {
+        List<String> none = Collections.emptyList();
+        return new GridModel( 0, Collections.<Region>emptyList(), Collections.<Station>emptyList(), Collections.<PowerPlant>emptyList(), none );
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public List<Region> regions() {
+        return regions;
+    }
+
+    public List<Station> stations() {
+        return stations;
+    }
+
+    public List<PowerPlant> powerPlants() {
+        return powerPlants;
+    }
+
+    public List<String> segments() {
+        return segments;
+    }
+
+    public TopologyIndex topology() {
+        return topology;
+    }
+
+    public NodeRegistry<Region> regionRegistry() {
+        return regionRegistry;
+    }
+
+    public NodeRegistry<Station> stationRegistry() {
+        return stationRegistry;
+    }
+
+    public NodeRegistry<PowerPlant> plantRegistry() {
+        return plantRegistry;
+    }
+
+    /**
+     * All links, the position of a link is its ordinal in a SampleBuffer.
+     */
+    public List<GridLink> gridLinks() {
+        return linkList;
+    }
+
+    public int linkCount() {
+        return links.length;
+    }
+
+    public GridLink link(int ordinal) {
+        return links[ordinal];
+    }
+
+    /**
+     * The station link of topology position k (see TopologyIndex.target).
+     */
+    public GridLink stationLink(int k) {
+        return links[k];
+    }
+
+    public int stationLinkCount() {
+        return stationLinks;
+    }
+
+    /**
+     * @return the link from the plant to its station, null if the plant is not part of this model
+     * or the model has no stations
+     */
+    public GridLink plantLink(PowerPlant plant) {
+        int p = plantRegistry.ordinalOf( plant.id );
+        if ( p < 0 )
+            return null;
+        if ( powerPlants.get( p ) != plant ) {
+            // a later plant with a duplicate id
+            p = powerPlants.indexOf( plant );
+            if ( p < 0 )
+                return null;
+        }
+        return plantLinks[p];
+    }
+
+    public SpatialIndex<Station> stationIndex() {
+        if ( stationIndex == null ) {
+            synchronized( this ) {
+                if ( stationIndex == null )
+                    stationIndex = SpatialIndex.of( stations );
+            }
+        }
+        return stationIndex;
+    }
+
+    public SpatialIndex<PowerPlant> plantIndex() {
+        if ( plantIndex == null ) {
+            synchronized( this ) {
+                if ( plantIndex == null )
+                    plantIndex = SpatialIndex.of( powerPlants );
+            }
+        }
+        return plantIndex;
+    }
+
+    public SpatialIndex<Region> regionIndex() {
+        if ( regionIndex == null ) {
+            synchronized( this ) {
+                if ( regionIndex == null )
+                    regionIndex = SpatialIndex.of( regions );
+            }
+        }
+        return regionIndex;
+    }
+
+    /**
+     * The stations and plants as an undirected CSR graph, for components and neighbourhoods.
+     */
+    public GridGraph graph() {
+        if ( graph == null ) {
+            synchronized( this ) {
+                if ( graph == null )
+                    graph = GridGraph.of( this );
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * The nearest station in the country of the node, or the nearest one if the country has none.
+     */
+    public Station nearestStation(final Node node) {
+        List<Station> l = stationIndex().nearest( node.lat, node.lon, 1, new SpatialIndex.Filter<Station>() {
+            @Override
+            public boolean accept(Station s) {
+                return s.country.equals( node.country );
+            }
+        });
+        return l.isEmpty() ? stationIndex().nearest( node.lat, node.lon ) : l.get( 0 );
+    }
+
+    /**
+     * The region with the nearest center.
+     */
+    public Region nearestRegion(double lat, double lon) {
+        return regionIndex().nearest( lat, lon );
+    }
+
+    public Station station(String id) {
+        return stationRegistry.get( id );
+    }
+
+    public PowerPlant powerPlant(String id) {
+        return plantRegistry.get( id );
+    }
+
+    public Region region(String id) {
+        return regionRegistry.get( id );
+    }
+
+    /*
+     * Copy-on-write edits, each one returns the next version and leaves this model unchanged.
+     * The indexes and links are rebuilt, O(nodes + segments) per edit.
+     */
+
+    public GridModel withSegment(String segment) {
+        List<String> s = new ArrayList<>( segments );
+        s.add( segment );
+        return next( regions, stations, powerPlants, s );
+    }
+
+    /**
+     * Removes all occurrences of the segment.
+     */
+    public GridModel withoutSegment(String segment) {
+        List<String> s = new ArrayList<>( segments );
+        s.removeAll( Collections.singleton( segment ) );
+        return next( regions, stations, powerPlants, s );
+    }
+
+    public GridModel withStation(Station station) {
+        List<Station> s = new ArrayList<>( stations );
+        s.add( station );
+        return next( regions, s, powerPlants, segments );
+    }
+
+    public GridModel withPowerPlant(PowerPlant plant) {
+        List<PowerPlant> p = new ArrayList<>( powerPlants );
+        p.add( plant );
+        return next( regions, stations, p, segments );
+    }
+
+    public GridModel withRegion(Region region) {
+        List<Region> r = new ArrayList<>( regions );
+        r.add( region );
+        return next( r, stations, powerPlants, segments );
+    }
+
+    private GridModel next(Collection<Region> regions, Collection<Station> stations, Collection<PowerPlant> powerPlants, Collection<String> segments) {
+        return new GridModel( version + 1, regions, stations, powerPlants, segments );
+    }
+
+    @Override
+    public String toString() {
+        return "GridModel{" +
+                "version=" + version +
+                ", regions=" + regions.size() +
+                ", stations=" + stations.size() +
+                ", powerPlants=" + powerPlants.size() +
+                ", segments=" + segments.size() +
+                ", links=" + links.length +
+                '}';
+    }
+
+}
@@ -0,0 +1,53 @@
+package datamodel.graph_of_things;
+
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+
+/**
+ * The static context of one link: both endpoints with country, coordinates and region, and the
+ * region pair. Exactly what the ksqlDB joins of the flow data against the context topics add.
+ */
+public class LinkContext {
+
+    public final String linkId;
+    public final String linkType;
+    public final String regionPair;         // "<source country>-><target country>"
+
+    public final End source;
+    public final End target;
+
+    /**
+     * One endpoint of the link.
+     */
+    public static class End {
+
+        public final String id;
+        public final String name;
+        public final String type;
+        public final String country;
+        public final double lat;
+        public final double lon;
+        public final String region;         // id of the region of the country, null if there is none
+
+        End(Node n, Region r) {
+            this.id = n.id;
+            this.name = n.name;
+            this.type = n.type == null ? null : n.type.name();
+            this.country = n.country;
+            this.lat = n.lat;
+            this.lon = n.lon;
+            this.region = r == null ? null : r.id;
+        }
+
+    }
+
+    LinkContext(GridLink link, Region sourceRegion, Region targetRegion) {
+        this.linkId = link.id;
+        this.linkType = link.linkType();
+        this.regionPair = link.regionContextTag;
+        this.source = new End( link.source(), sourceRegion );
+        this.target = new End( link.target(), targetRegion );
+    }
+
+}
@@ -0,0 +1,61 @@
+package datamodel.graph_of_things;
+
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.relations.GridLink;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The LinkContext of every link of one grid model version, keyed by GridLink.id.
+ *
+ * A cache is immutable, it is replaced by a new one when a new model version is published. The
+ * region of an endpoint is the region with the country of the node.
+ */
+public class LinkContextCache {
+
+    final long version;
+    final Map<String, LinkContext> contexts;
+
+    LinkContextCache(long version, Map<String, LinkContext> contexts) {
+        this.version = version;
+        this.contexts = contexts;
+    }
+
+    public static LinkContextCache of(GridModel model) {
+
+        Map<String, Region> byCountry = new HashMap<>();
+        for( Region r : model.regions() ) {
+            if ( !byCountry.containsKey( r.country ) )
+                byCountry.put( r.country, r );
+        }
+
+        Map<String, LinkContext> contexts = new HashMap<>( (int) ( model.linkCount() / 0.75f ) + 1 );
+        for( GridLink l : model.gridLinks() ) {
+            if ( !contexts.containsKey( l.id ) )
+                contexts.put( l.id, new LinkContext( l, byCountry.get( l.source().country ), byCountry.get( l.target().country ) ) );
+        }
+
+        return new LinkContextCache( model.version(), contexts );
+
+    }
+
+    /**
+     * @return the context or null if the link is unknown
+     */
+    public LinkContext get(String linkId) {
+        return contexts.get( linkId );
+    }
+
+    /**
+     * The version of the grid model the contexts were taken from.
+     */
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+
+}
@@ -0,0 +1,107 @@
+package datamodel.graph_of_things;
+
+import datamodel.poi.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Constant time lookup of nodes (stations, plants, regions) by id and by a dense int ordinal.
+ *
+ * The ordinal of a node is its position in the registry, i.e. the position in the list it was bulk
+ * loaded from. If an id occurs more than once, lookups by id return the first node with that id
+ * (like the former linear scans did); the later ones keep their ordinal and are counted.
+ *
+ * A frozen registry rejects add() and can be read by many threads without locks.
+ */
+public class NodeRegistry<T extends Node> {
+
+    final ArrayList<T> nodes;
+    final Map<String, Integer> ordinals;
+
+    int duplicates = 0;
+
+    boolean frozen = false;
+
+    public NodeRegistry(int expectedSize) {
+        this.nodes = new ArrayList<>( expectedSize );
+        this.ordinals = new HashMap<>( (int) ( expectedSize / 0.75f ) + 1 );
+    }
+
+    /**
+     * Bulk load, presized from the number of loaded rows.
+     */
+    public static <T extends Node> NodeRegistry<T> of(Collection<T> nodes) {
+        NodeRegistry<T> r = new NodeRegistry<>( nodes.size() );
+        for( T n : nodes ) {
+            r.add( n );
+        }
+        if ( r.duplicates > 0 )
+            System.out.println( "> NodeRegistry: " + r.duplicates + " duplicate id(s) in " + nodes.size() + " nodes." );
+        return r;
+    }
+
+    /**
+     * @return the ordinal of the new node
+     */
+    public int add(T node) {
+        if ( frozen )
+            throw new IllegalStateException( "The registry is frozen, node " + node.id + " can't be added." );
+        int ordinal = nodes.size();
+        nodes.add( node );
+        if ( ordinals.containsKey( node.id ) )
+            duplicates++;
+        else
+            ordinals.put( node.id, ordinal );
+        return ordinal;
+    }
+
+    /**
+     * @return the node or null
+     */
+    public T get(String id) {
+        Integer o = ordinals.get( id );
+        return o == null ? null : nodes.get( o );
+    }
+
+    public T get(int ordinal) {
+        return nodes.get( ordinal );
+    }
+
+    /**
+     * @return the ordinal or -1
+     */
+    public int ordinalOf(String id) {
+        Integer o = ordinals.get( id );
+        return o == null ? -1 : o;
+    }
+
+    public boolean contains(String id) {
+        return ordinals.containsKey( id );
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public int duplicateIds() {
+        return duplicates;
+    }
+
+    /**
+     * No more nodes can be added after this.
+     */
+    public NodeRegistry<T> freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public List<T> nodes() {
+        return Collections.unmodifiableList( nodes );
+    }
+
+}
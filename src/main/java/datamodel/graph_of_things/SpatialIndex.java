@@ -0,0 +1,515 @@
+package datamodel.graph_of_things;
+
+import datamodel.poi.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Nearest, radius and bounding box queries over the coordinates of nodes (stations, plants,
+ * regions), a static R-tree packed with Sort-Tile-Recursive.
+ *
+ * The tree is bulk loaded once and never changes, so any number of threads can query it at the
+ * same time without locks. Each tree node has a lat/lon box (for the bounding box queries) and a box
+ * around the points on the unit sphere (for the distance queries), so nearest and radius queries
+ * use great circle distances and are exact also far from the equator. Bounding boxes must not
+ * cross the antimeridian. Nodes with NaN coordinates are skipped and counted.
+ *
+ * Regions are points (their center), the nearest region is the region with the closest center.
+ */
+public class SpatialIndex<T extends Node> {
+
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /**
+     * Entries per tree node.
+     */
+    static final int NODE_CAPACITY = 16;
+
+    public interface Filter<T> {
+        boolean accept(T node);
+    }
+
+    final Object[] items;               // in tree order
+    final double[] lat;
+    final double[] lon;
+    final double[] xyz;                 // unit vectors, 3 per item
+
+    final double[] geo;                 // per tree node: minLat, maxLat, minLon, maxLon
+    final double[] box;                 // per tree node: minX, maxX, minY, maxY, minZ, maxZ
+    final int[] first;                  // first child node, or first item of a leaf
+    final int[] count;
+    final int leaves;                   // tree nodes [0, leaves) are the leaves
+    final int root;
+
+    int skipped = 0;
+
+    SpatialIndex(Collection<T> nodes) {
+
+        // drop the nodes without coordinates
+        List<T> valid = new ArrayList<>( nodes.size() );
+        for( T n : nodes ) {
+            if ( Double.isNaN( n.lat ) || Double.isNaN( n.lon ) )
+                skipped++;
+            else
+                valid.add( n );
+        }
+
+        int n = valid.size();
+        double[] la = new double[n];
+        double[] lo = new double[n];
+        for( int i = 0; i < n; i++ ) {
+            la[i] = valid.get( i ).lat;
+            lo[i] = valid.get( i ).lon;
+        }
+
+        int[] order = strOrder( lo, la, n );
+
+        this.items = new Object[n];
+        this.lat = new double[n];
+        this.lon = new double[n];
+        this.xyz = new double[3 * n];
+        for( int i = 0; i < n; i++ ) {
+            items[i] = valid.get( order[i] );
+            lat[i] = la[ order[i] ];
+            lon[i] = lo[ order[i] ];
+            double phi = Math.toRadians( lat[i] );
+            double lambda = Math.toRadians( lon[i] );
+            xyz[3 * i] = Math.cos( phi ) * Math.cos( lambda );
+            xyz[3 * i + 1] = Math.cos( phi ) * Math.sin( lambda );
+            xyz[3 * i + 2] = Math.sin( phi );
+        }
+
+        this.leaves = groups( n );
+        int total = 0;
+        for( int c = leaves; c > 0; c = c == 1 ? 0 : groups( c ) ) {
+            total = total + c;
+        }
+
+        this.geo = new double[4 * total];
+        this.box = new double[6 * total];
+        this.first = new int[total];
+        this.count = new int[total];
+
+        for( int j = 0; j < leaves; j++ ) {
+            first[j] = j * NODE_CAPACITY;
+            count[j] = Math.min( NODE_CAPACITY, n - first[j] );
+            bounds( j );
+        }
+
+        // the upper levels: sort the nodes of a level by STR, then group them
+        int from = 0;
+        int to = leaves;
+        while( to - from > 1 ) {
+            strSortLevel( from, to );
+            int parents = groups( to - from );
+            for( int j = 0; j < parents; j++ ) {
+                first[to + j] = from + j * NODE_CAPACITY;
+                count[to + j] = Math.min( NODE_CAPACITY, to - first[to + j] );
+                bounds( to + j );
+            }
+            from = to;
+            to = to + parents;
+        }
+
+        this.root = total - 1;
+
+    }
+
+    /**
+     * Bulk load.
+     */
+    public static <T extends Node> SpatialIndex<T> of(Collection<T> nodes) {
+        SpatialIndex<T> index = new SpatialIndex<>( nodes );
+        if ( index.skipped > 0 )
+            System.out.println( "> SpatialIndex: " + index.skipped + " node(s) without coordinates skipped." );
+        return index;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public int skipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the nearest node or null if the index is empty
+     */
+    public T nearest(double lat, double lon) {
+        List<T> l = nearest( lat, lon, 1, null );
+        return l.isEmpty() ? null : l.get( 0 );
+    }
+
+    /**
+     * @return the k nearest nodes, nearest first
+     */
+    public List<T> nearest(double lat, double lon, int k) {
+        return nearest( lat, lon, k, null );
+    }
+
+    /**
+     * The k nearest nodes which pass the filter (may be null), nearest first. Best first search: tree
+     * nodes and items are taken from one queue ordered by their (lower bound) distance.
+     */
+    public List<T> nearest(double lat, double lon, int k, Filter<? super T> filter) {
+
+        List<T> result = new ArrayList<>( Math.min( k, 64 ) );
+        if ( root < 0 || k <= 0 )
+            return result;
+
+        double[] p = unit( lat, lon );
+
+        Queue q = new Queue();
+        q.push( 0, root );
+
+        while( q.size > 0 && result.size() < k ) {
+
+            int e = q.pop();
+
+            if ( e < 0 ) {
+                // an item
+                T item = item( -e - 1 );
+                if ( filter == null || filter.accept( item ) )
+                    result.add( item );
+            }
+            else if ( e < leaves ) {
+                for( int i = first[e]; i < first[e] + count[e]; i++ ) {
+                    q.push( dist2( p, i ), -i - 1 );
+                }
+            }
+            else {
+                for( int c = first[e]; c < first[e] + count[e]; c++ ) {
+                    q.push( boxDist2( p, c ), c );
+                }
+            }
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * All nodes within the great circle distance, in no particular order.
+     */
+    public List<T> withinRadius(double lat, double lon, double km) {
+
+        List<T> result = new ArrayList<>();
+        if ( root < 0 || km < 0 )
+            return result;
+
+        double[] p = unit( lat, lon );
+
+        // the chord length of the radius, compared squared like the box distances
+        double chord = 2 * Math.sin( Math.min( km / EARTH_RADIUS_KM, Math.PI ) / 2 );
+        double limit = chord * chord * ( 1 + 1e-12 );
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+
+        while( top > 0 ) {
+            int e = stack[--top];
+            if ( boxDist2( p, e ) > limit )
+                continue;
+            if ( e < leaves ) {
+                for( int i = first[e]; i < first[e] + count[e]; i++ ) {
+                    if ( dist2( p, i ) <= limit )
+                        result.add( item( i ) );
+                }
+            }
+            else {
+                for( int c = first[e]; c < first[e] + count[e]; c++ ) {
+                    if ( top == stack.length )
+                        stack = Arrays.copyOf( stack, 2 * top );
+                    stack[top++] = c;
+                }
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * All nodes inside the lat/lon box (borders included), in no particular order.
+     */
+    public List<T> withinBox(double minLat, double minLon, double maxLat, double maxLon) {
+
+        List<T> result = new ArrayList<>();
+        if ( root < 0 )
+            return result;
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+
+        while( top > 0 ) {
+            int e = stack[--top];
+            if ( geo[4 * e] > maxLat || geo[4 * e + 1] < minLat || geo[4 * e + 2] > maxLon || geo[4 * e + 3] < minLon )
+                continue;
+            if ( e < leaves ) {
+                for( int i = first[e]; i < first[e] + count[e]; i++ ) {
+                    if ( lat[i] >= minLat && lat[i] <= maxLat && lon[i] >= minLon && lon[i] <= maxLon )
+                        result.add( item( i ) );
+                }
+            }
+            else {
+                for( int c = first[e]; c < first[e] + count[e]; c++ ) {
+                    if ( top == stack.length )
+                        stack = Arrays.copyOf( stack, 2 * top );
+                    stack[top++] = c;
+                }
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Great circle distance (haversine).
+     */
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dPhi = Math.toRadians( lat2 - lat1 );
+        double dLambda = Math.toRadians( lon2 - lon1 );
+        double a = Math.sin( dPhi / 2 ) * Math.sin( dPhi / 2 )
+                + Math.cos( Math.toRadians( lat1 ) ) * Math.cos( Math.toRadians( lat2 ) ) * Math.sin( dLambda / 2 ) * Math.sin( dLambda / 2 );
+        return 2 * EARTH_RADIUS_KM * Math.asin( Math.min( 1, Math.sqrt( a ) ) );
+    }
+
+    @SuppressWarnings("unchecked")
+    T item(int i) {
+        return (T) items[i];
+    }
+
+    static double[] unit(double lat, double lon) {
+        double phi = Math.toRadians( lat );
+        double lambda = Math.toRadians( lon );
+        return new double[] { Math.cos( phi ) * Math.cos( lambda ), Math.cos( phi ) * Math.sin( lambda ), Math.sin( phi ) };
+    }
+
+    /**
+     * Squared chord distance to item i, grows with the great circle distance.
+     */
+    double dist2(double[] p, int i) {
+        double dx = p[0] - xyz[3 * i];
+        double dy = p[1] - xyz[3 * i + 1];
+        double dz = p[2] - xyz[3 * i + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Squared distance to the box of tree node e, a lower bound of dist2 for all items below it.
+     */
+    double boxDist2(double[] p, int e) {
+        double d = 0;
+        for( int k = 0; k < 3; k++ ) {
+            double min = box[6 * e + 2 * k];
+            double max = box[6 * e + 2 * k + 1];
+            double delta = p[k] < min ? min - p[k] : p[k] > max ? p[k] - max : 0;
+            d = d + delta * delta;
+        }
+        return d;
+    }
+
+    static int groups(int n) {
+        return ( n + NODE_CAPACITY - 1 ) / NODE_CAPACITY;
+    }
+
+    /**
+     * Sort-Tile-Recursive order of n points: sorted by lon into vertical slices of about
+     * sqrt(n / capacity) nodes each, sorted by lat inside each slice.
+     */
+    static int[] strOrder(double[] lon, double[] lat, int n) {
+
+        int[] order = new int[n];
+        for( int i = 0; i < n; i++ ) {
+            order[i] = i;
+        }
+
+        sort( order, lon, 0, n );
+
+        int slices = (int) Math.ceil( Math.sqrt( groups( n ) ) );
+        int sliceSize = slices * NODE_CAPACITY;
+        for( int s = 0; s < n; s += sliceSize ) {
+            sort( order, lat, s, Math.min( n, s + sliceSize ) );
+        }
+
+        return order;
+
+    }
+
+    /**
+     * Reorders the tree nodes [from, to) by the STR order of their lat/lon box centers.
+     */
+    void strSortLevel(int from, int to) {
+
+        int n = to - from;
+        double[] cLat = new double[n];
+        double[] cLon = new double[n];
+        for( int j = 0; j < n; j++ ) {
+            cLat[j] = ( geo[4 * ( from + j )] + geo[4 * ( from + j ) + 1] ) / 2;
+            cLon[j] = ( geo[4 * ( from + j ) + 2] + geo[4 * ( from + j ) + 3] ) / 2;
+        }
+
+        int[] order = strOrder( cLon, cLat, n );
+
+        double[] g = Arrays.copyOfRange( geo, 4 * from, 4 * to );
+        double[] b = Arrays.copyOfRange( box, 6 * from, 6 * to );
+        int[] f = Arrays.copyOfRange( first, from, to );
+        int[] c = Arrays.copyOfRange( count, from, to );
+        for( int j = 0; j < n; j++ ) {
+            int o = order[j];
+            System.arraycopy( g, 4 * o, geo, 4 * ( from + j ), 4 );
+            System.arraycopy( b, 6 * o, box, 6 * ( from + j ), 6 );
+            first[from + j] = f[o];
+            count[from + j] = c[o];
+        }
+
+    }
+
+    /**
+     * Computes the boxes of tree node e from its items or children.
+     */
+    void bounds(int e) {
+
+        double[] g = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        double[] b = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+        for( int i = first[e]; i < first[e] + count[e]; i++ ) {
+            if ( e < leaves ) {
+                g[0] = Math.min( g[0], lat[i] );
+                g[1] = Math.max( g[1], lat[i] );
+                g[2] = Math.min( g[2], lon[i] );
+                g[3] = Math.max( g[3], lon[i] );
+                for( int k = 0; k < 3; k++ ) {
+                    b[2 * k] = Math.min( b[2 * k], xyz[3 * i + k] );
+                    b[2 * k + 1] = Math.max( b[2 * k + 1], xyz[3 * i + k] );
+                }
+            }
+            else {
+                for( int k = 0; k < 4; k += 2 ) {
+                    g[k] = Math.min( g[k], geo[4 * i + k] );
+                    g[k + 1] = Math.max( g[k + 1], geo[4 * i + k + 1] );
+                }
+                for( int k = 0; k < 6; k += 2 ) {
+                    b[k] = Math.min( b[k], box[6 * i + k] );
+                    b[k + 1] = Math.max( b[k + 1], box[6 * i + k + 1] );
+                }
+            }
+        }
+
+        System.arraycopy( g, 0, geo, 4 * e, 4 );
+        System.arraycopy( b, 0, box, 6 * e, 6 );
+
+    }
+
+    /**
+     * Sorts order[from, to) by key[order[i]], a quicksort on the primitive arrays.
+     */
+    static void sort(int[] order, double[] key, int from, int to) {
+
+        while( to - from > 16 ) {
+
+            double a = key[ order[from] ];
+            double b = key[ order[(from + to) >>> 1] ];
+            double c = key[ order[to - 1] ];
+            double pivot = Math.max( Math.min( a, b ), Math.min( Math.max( a, b ), c ) );
+
+            int i = from;
+            int j = to - 1;
+            while( i <= j ) {
+                while( key[ order[i] ] < pivot ) i++;
+                while( key[ order[j] ] > pivot ) j--;
+                if ( i <= j ) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse into the smaller part
+            if ( j + 1 - from < to - i ) {
+                sort( order, key, from, j + 1 );
+                from = i;
+            }
+            else {
+                sort( order, key, i, to );
+                to = j + 1;
+            }
+
+        }
+
+        for( int i = from + 1; i < to; i++ ) {
+            int o = order[i];
+            double k = key[o];
+            int j = i - 1;
+            while( j >= from && key[ order[j] ] > k ) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = o;
+        }
+
+    }
+
+    /**
+     * Min heap of tree nodes (>= 0) and items (-index - 1) by distance, one per query.
+     */
+    static class Queue {
+
+        double[] keys = new double[64];
+        int[] values = new int[64];
+        int size = 0;
+
+        void push(double key, int value) {
+            if ( size == keys.length ) {
+                keys = Arrays.copyOf( keys, 2 * size );
+                values = Arrays.copyOf( values, 2 * size );
+            }
+            int i = size++;
+            while( i > 0 ) {
+                int parent = ( i - 1 ) >>> 1;
+                if ( keys[parent] <= key )
+                    break;
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int top = values[0];
+            size--;
+            double key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while( true ) {
+                int child = 2 * i + 1;
+                if ( child >= size )
+                    break;
+                if ( child + 1 < size && keys[child + 1] < keys[child] )
+                    child++;
+                if ( key <= keys[child] )
+                    break;
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+
+    }
+
+}
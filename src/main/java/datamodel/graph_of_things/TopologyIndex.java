@@ -0,0 +1,200 @@
+package datamodel.graph_of_things;
+
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The station-to-station segments ("source-target" strings) parsed once into an adjacency index.
+ *
+ * Stations are addressed by their position in the station list (ordinal). For every source station
+ * the targets are stored sorted by ordinal in one int array (offsets / targets), so iterating all
+ * links is O(L) and a single segment lookup is a hash lookup plus a binary search.
+ *
+ * Segments with unknown station ids are dropped and duplicates are merged, both are counted. Station
+ * ids may contain '-' themselves: a segment is split at the '-' where both halves are stations, a
+ * segment with more than one such split is rejected as ambiguous.
+ */
+public class TopologyIndex {
+
+    final NodeRegistry<Station> stations;
+
+    final int[] offsets;        // targets of source s : targets[ offsets[s] .. offsets[s+1] )
+    final int[] targets;
+
+    int unresolved = 0;
+    int duplicates = 0;
+
+    TopologyIndex(NodeRegistry<Station> stations, int[] offsets, int[] targets) {
+        this.stations = stations;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    public static TopologyIndex build(List<Station> stations, List<String> segments) {
+        return build( NodeRegistry.of( stations ), segments );
+    }
+
+    public static TopologyIndex build(NodeRegistry<Station> stations, List<String> segments) {
+
+        int n = stations.size();
+
+        // resolve all segments once, count per source
+        int[] src = new int[segments.size()];
+        int[] dst = new int[segments.size()];
+        int[] degree = new int[n + 1];
+
+        int valid = 0;
+        int unresolved = 0;
+        int[] ends = new int[2];
+        for( String segment : segments ) {
+            if ( !resolve( stations, segment, ends ) ) {
+                unresolved++;
+                continue;
+            }
+            src[valid] = ends[0];
+            dst[valid] = ends[1];
+            degree[ends[0]]++;
+            valid++;
+        }
+
+        // counting sort by source
+        int[] offsets = new int[n + 1];
+        for( int i = 0; i < n; i++ ) {
+            offsets[i + 1] = offsets[i] + degree[i];
+        }
+
+        int[] fill = Arrays.copyOf( offsets, n );
+        int[] targets = new int[valid];
+        for( int k = 0; k < valid; k++ ) {
+            targets[ fill[ src[k] ]++ ] = dst[k];
+        }
+
+        // sort the targets of each source and drop duplicates
+        int duplicates = 0;
+        int write = 0;
+        int[] compact = new int[n + 1];
+        for( int s = 0; s < n; s++ ) {
+            int from = offsets[s];
+            int to = offsets[s + 1];
+            Arrays.sort( targets, from, to );
+            compact[s] = write;
+            for( int k = from; k < to; k++ ) {
+                if ( k > from && targets[k] == targets[k - 1] ) {
+                    duplicates++;
+                    continue;
+                }
+                targets[write++] = targets[k];
+            }
+        }
+        compact[n] = write;
+
+        TopologyIndex index = new TopologyIndex( stations, compact, write == targets.length ? targets : Arrays.copyOf( targets, write ) );
+        index.unresolved = unresolved;
+        index.duplicates = duplicates;
+
+        if ( unresolved > 0 || duplicates > 0 )
+            System.out.println( "> Topology: " + unresolved + " segments with unknown stations and " + duplicates + " duplicates ignored." );
+
+        return index;
+
+    }
+
+    /**
+     * Splits the segment "source-target" at the '-' where both halves are station ids.
+     *
+     * @param ends  gets the ordinals of source and target
+     * @return false if there is no such split
+     * @throws IllegalArgumentException if there is more than one
+     */
+    static boolean resolve(NodeRegistry<Station> stations, String segment, int[] ends) {
+
+        boolean found = false;
+        for( int dash = segment.indexOf( '-' ); dash >= 0; dash = segment.indexOf( '-', dash + 1 ) ) {
+            int a = stations.ordinalOf( segment.substring( 0, dash ) );
+            if ( a < 0 )
+                continue;
+            int b = stations.ordinalOf( segment.substring( dash + 1 ) );
+            if ( b < 0 )
+                continue;
+            if ( found )
+                throw new IllegalArgumentException( "Ambiguous segment '" + segment + "': both " + stations.get( ends[0] ).id + " / " + stations.get( ends[1] ).id
+                        + " and " + stations.get( a ).id + " / " + stations.get( b ).id + " are stations." );
+            ends[0] = a;
+            ends[1] = b;
+            found = true;
+        }
+        return found;
+
+    }
+
+    public int stationCount() {
+        return stations.size();
+    }
+
+    public int linkCount() {
+        return targets.length;
+    }
+
+    public int unresolvedSegments() {
+        return unresolved;
+    }
+
+    public int duplicateSegments() {
+        return duplicates;
+    }
+
+    public Station station(int ordinal) {
+        return stations.get( ordinal );
+    }
+
+    /**
+     * @return the ordinal of the station or -1
+     */
+    public int ordinalOf(String stationId) {
+        return stations.ordinalOf( stationId );
+    }
+
+    public NodeRegistry<Station> stations() {
+        return stations;
+    }
+
+    public int firstTarget(int source) {
+        return offsets[source];
+    }
+
+    public int endTarget(int source) {
+        return offsets[source + 1];
+    }
+
+    public int target(int position) {
+        return targets[position];
+    }
+
+    public boolean contains(String source, String target) {
+        int a = ordinalOf( source );
+        int b = ordinalOf( target );
+        return a >= 0 && b >= 0 && contains( a, b );
+    }
+
+    public boolean contains(int source, int target) {
+        return Arrays.binarySearch( targets, offsets[source], offsets[source + 1], target ) >= 0;
+    }
+
+    /**
+     * One GridLink per segment, ordered by source and target station position.
+     */
+    public List<GridLink> createGridLinks(double visualOffsetOnMap4LatLon, double avgFlow, double epsilon, String linkType) {
+        List<GridLink> links = new ArrayList<>( targets.length );
+        for( int s = 0; s < stations.size(); s++ ) {
+            for( int k = offsets[s]; k < offsets[s + 1]; k++ ) {
+                links.add( new GridLink( stations.get( s ), stations.get( targets[k] ), visualOffsetOnMap4LatLon, avgFlow, epsilon, linkType ) );
+            }
+        }
+        return links;
+    }
+
+}
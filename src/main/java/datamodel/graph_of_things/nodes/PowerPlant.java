@@ -4,25 +4,32 @@ import datamodel.poi.Node;
 import datamodel.poi.POIData;
 import datamodel.poi.POITypeEnum;
 import datamodel.graph_of_things.relations.GridLink;
-import tool.geojson.OrgJsonService;
+import tool.geojson.GeoJSONEncoder;
 import tool.SimulationScenario;
 
 public class PowerPlant extends Node {
 
     public PowerPlant(String[] FIELDS) {
 
+        this( FIELDS[0], FIELDS[1], FIELDS[2], Double.parseDouble( FIELDS[3] ), Double.parseDouble( FIELDS[4] ),
+                Double.parseDouble( FIELDS[5] ), FIELDS[6] );
+
+    };
+
+    public PowerPlant(String id, String country, String name, double lat, double lon, double production, String linkedToStation) {
+
         super();
         super.type = POITypeEnum.PPT;
-        super.id = FIELDS[0];
-        super.country = FIELDS[1];
-        super.name = FIELDS[2];
-        super.lat = Double.parseDouble( FIELDS[3] );
-        super.lon = Double.parseDouble( FIELDS[4] );
-        production = Double.parseDouble( FIELDS[5] );
+        super.id = id;
+        super.country = country;
+        super.name = name;
+        super.lat = lat;
+        super.lon = lon;
+        this.production = production;
 
-        linkedToStation = FIELDS[6];
+        this.linkedToStation = linkedToStation;
 
-    };
+    }
 
     public double production = 1.0; // MW
 
@@ -49,13 +56,21 @@ public class PowerPlant extends Node {
     }
 
     public String getGeoJSONStringForPOI() throws Exception {
-        return OrgJsonService.asGeoJson( this.asPoi() ) + ", " + getGeoJSONStringForStationLink();
+        GridLink sl = SimulationScenario.getModel().plantLink( this );
+        GeoJSONEncoder e = GeoJSONEncoder.local().poi( this.asPoi() );
+        if ( sl != null )
+            e.link( sl );
+        return e.toString();
     }
 
+    /**
+     * The link to the station from the current grid model, null if the station is unknown.
+     */
     public String getGeoJSONStringForStationLink() throws Exception {
 
-        GridLink sl = new GridLink( this, SimulationScenario.getStationWithID(linkedToStation), 0, production, 0.1, "STATIONLINK") ;
-        SimulationScenario.collectStationLink( sl );
+        GridLink sl = SimulationScenario.getModel().plantLink( this );
+        if ( sl == null )
+            return null;
 
         String l = sl.getAsGeoJSON();
         return l;
@@ -13,19 +13,28 @@ public class Region extends Node {
 
     public Region(String[] FIELDS) {
 
+        this( FIELDS[0], FIELDS[1], FIELDS[2], Double.parseDouble( FIELDS[3] ), Double.parseDouble( FIELDS[4] ),
+                Double.parseDouble( FIELDS[5] ), Double.parseDouble( FIELDS[6] ),
+                Double.parseDouble( FIELDS[7] ), Double.parseDouble( FIELDS[8] ) );
+
+    };
+
+    public Region(String id, String country, String name, double lat, double lon,
+                  double production, double consumption, double imports, double exports) {
+
         super();
         super.type = POITypeEnum.R;
-        super.id = FIELDS[0];
-        super.country = FIELDS[1];
-        super.name = FIELDS[2];
-        super.lat = Double.parseDouble( FIELDS[3] );
-        super.lon = Double.parseDouble( FIELDS[4] );
-        production = Double.parseDouble( FIELDS[5] );
-        consumption = Double.parseDouble( FIELDS[6] );
-        imports = Double.parseDouble( FIELDS[7] );
-        exports = Double.parseDouble( FIELDS[8] );
+        super.id = id;
+        super.country = country;
+        super.name = name;
+        super.lat = lat;
+        super.lon = lon;
+        this.production = production;
+        this.consumption = consumption;
+        this.imports = imports;
+        this.exports = exports;
 
-    };
+    }
 
     @Override
     public String toString() {
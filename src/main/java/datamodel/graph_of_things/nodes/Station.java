@@ -3,18 +3,22 @@ package datamodel.graph_of_things.nodes;
 import datamodel.poi.Node;
 import datamodel.poi.POIData;
 import datamodel.poi.POITypeEnum;
-import tool.geojson.OrgJsonService;
+import tool.geojson.GeoJSONEncoder;
 
 public class Station extends Node {
 
     public Station(String[] FIELDS) {
+        this( FIELDS[0], FIELDS[1], FIELDS[2], Double.parseDouble( FIELDS[3] ), Double.parseDouble( FIELDS[4] ) );
+    }
+
+    public Station(String id, String country, String name, double lat, double lon) {
         super();
         super.type = POITypeEnum.STATION;
-        super.id = FIELDS[0];
-        country = FIELDS[1];
-        super.name = FIELDS[2];
-        super.lat = Double.parseDouble( FIELDS[3] );
-        super.lon = Double.parseDouble( FIELDS[4] );
+        super.id = id;
+        this.country = country;
+        super.name = name;
+        super.lat = lat;
+        super.lon = lon;
 
     }
 
@@ -37,7 +41,7 @@ public class Station extends Node {
     }
 
     public String getGeoJSONStringForPOI() throws Exception {
-        return OrgJsonService.asGeoJson( this.asPoi() );
+        return GeoJSONEncoder.local().poi( this.asPoi() ).toString();
     }
 
 }
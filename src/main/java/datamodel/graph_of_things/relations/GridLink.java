@@ -3,6 +3,9 @@ package datamodel.graph_of_things.relations;
 import datamodel.poi.Node;
 import datamodel.measurement.PowerFlowSample;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
 public class GridLink extends InterNodeLink {
 
     /**
@@ -36,20 +39,38 @@ public class GridLink extends InterNodeLink {
      * @return
      */
     public PowerFlowSample newSample(int index) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new PowerFlowSample( id, index, flow( random.nextDouble(), random.nextDouble() ) );
+    }
+
+    /**
+     * Same as newSample(index), but draws from the given stream, so that a run is reproducible.
+     */
+    public PowerFlowSample newSample(int index, SplittableRandom random) {
+        return new PowerFlowSample( id, index, nextFlow( random ) );
+    }
+
+    /**
+     * Only the flow value of the next sample, nothing is allocated.
+     */
+    public double nextFlow(SplittableRandom random) {
+        return flow( random.nextDouble(), random.nextDouble() );
+    }
 
+    private double flow(double r1, double r2) {
 
         double power = avgFlow;
 
         double band = avgFlow * epsilon;
-        double delta = Math.random() * band;
+        double delta = r1 * band;
 
         // white noise - no memory
-        if ( Math.random() > 0.5 )
+        if ( r2 > 0.5 )
            power = power + delta;
         else
            power = power - delta;
 
-        return new PowerFlowSample( id, index, power );
+        return power;
 
     }
 
@@ -1,6 +1,7 @@
 package datamodel.graph_of_things.relations;
 
 import datamodel.poi.Node;
+import tool.geojson.GeoJSONEncoder;
 
 public class InterNodeLink {
     double visualOffsetOnMap4LatLon = 0.0;
@@ -15,11 +16,32 @@ public class InterNodeLink {
         this.linkType = linkType;
     }
 
+    /*
+     * No getters, the links are serialized by Jackson with the fields they have now.
+     */
+
+    public Node source() {
+        return r1;
+    }
+
+    public Node target() {
+        return r2;
+    }
+
+    public String linkType() {
+        return linkType;
+    }
+
+    /**
+     * The shift of both ends on the map, so that links in both directions do not overlap.
+     */
+    public double visualOffset() {
+        return visualOffsetOnMap4LatLon;
+    }
+
     public String getAsGeoJSON(){
 
-        return"{ \"type\": \"Feature\", \"geometry\": { \"type\": \"LineString\", \"coordinates\" : [ "+
-                "[" + (r1.lon - visualOffsetOnMap4LatLon) + "," + (r1.lat + visualOffsetOnMap4LatLon) + "], [ " + (r2.lon - visualOffsetOnMap4LatLon) + ", " + (r2.lat + visualOffsetOnMap4LatLon) + "] "
-                + " ] }, \"properties\": { \"popupContent\": \""+linkType+": ("+r1.name+ "=>" + r2.id + ")" + "\" } }";
+        return GeoJSONEncoder.local().link( this ).toString();
 
     }
 }
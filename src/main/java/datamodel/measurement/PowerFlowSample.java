@@ -10,16 +10,37 @@ public class PowerFlowSample {
 
     public static long t0 = System.currentTimeMillis();
 
+    /**
+     * Simulated time of one tick.
+     */
+    public static final long TICK_MS = 1000;
+
     public String id = "";
     public long ts = 0;
     public double flow = 0.0;
 
     public PowerFlowSample(String id, int index, double power) {
         this.id = id;
-        this.ts = t0 + 1000 * index;
+        this.ts = tsOf( index );
         this.flow = power;
     }
 
+    /**
+     * The timestamp of the simulation tick with the given index, one tick is one second.
+     */
+    public static long tsOf(int index) {
+        return t0 + TICK_MS * index;
+    }
+
+    /**
+     * Recreate a sample with an absolute timestamp, e.g. when it is decoded from a topic.
+     */
+    public static PowerFlowSample of(String id, long ts, double flow) {
+        PowerFlowSample s = new PowerFlowSample( id, 0, flow );
+        s.ts = ts;
+        return s;
+    }
+
     @Override
     public String toString() {
         return "PowerFlowSample{" +
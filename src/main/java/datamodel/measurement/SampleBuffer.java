@@ -0,0 +1,55 @@
+package datamodel.measurement;
+
+/**
+ * The samples of one tick as parallel primitive arrays (struct of arrays), so that generating and
+ * encoding a tick does not create an object per sample.
+ *
+ * Slot i holds one sample: the ordinal of its link (the position of the link in the simulation's
+ * link list), the timestamp and the flow. The buffer is reused for every tick. Threads may write
+ * disjoint slot ranges concurrently.
+ *
+ * PowerFlowSample objects are created only where an API needs them, see toSample().
+ */
+public class SampleBuffer {
+
+    public final int[] link;
+    public final long[] ts;
+    public final double[] flow;
+
+    int size = 0;
+
+    public SampleBuffer(int capacity) {
+        this.link = new int[capacity];
+        this.ts = new long[capacity];
+        this.flow = new double[capacity];
+    }
+
+    public int capacity() {
+        return link.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        if ( size < 0 || size > link.length )
+            throw new IllegalArgumentException( "Size " + size + " exceeds the capacity " + link.length );
+        this.size = size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void set(int slot, int link, long ts, double flow) {
+        this.link[slot] = link;
+        this.ts[slot] = ts;
+        this.flow[slot] = flow;
+    }
+
+    public PowerFlowSample toSample(int slot, String linkId) {
+        return PowerFlowSample.of( linkId, ts[slot], flow[slot] );
+    }
+
+}
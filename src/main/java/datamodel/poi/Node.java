@@ -1,7 +1,7 @@
 package datamodel.poi;
 
 import com.google.gson.Gson;
-import tool.geojson.OrgJsonService;
+import tool.geojson.GeoJSONEncoder;
 
 import java.util.ArrayList;
 
@@ -24,7 +24,7 @@ public class Node {
         ArrayList<POIData> l = new ArrayList<>();
         l.add( this.asPoi() );
 
-        return OrgJsonService.asGeoJson( l );
+        return GeoJSONEncoder.featureCollection( l );
 
     }
 
@@ -33,7 +33,7 @@ public class Node {
         return p;
     }
 
-    Gson gson = new Gson();
+    static Gson gson = new Gson();
 
     public String asJson() {
         return gson.toJson( this );
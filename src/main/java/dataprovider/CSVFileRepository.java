@@ -3,11 +3,8 @@ package dataprovider;
 import datamodel.graph_of_things.nodes.PowerPlant;
 import datamodel.graph_of_things.nodes.Region;
 import datamodel.graph_of_things.nodes.Station;
-import tool.GridFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Vector;
 
@@ -15,94 +12,37 @@ public class CSVFileRepository {
 
     public static String repoPath = "./cp-tsdata-geo-enrichment/data/in/";
 
-    public static Vector<PowerPlant> getPowerPlantsFromRepository() throws IOException {
+    public static final String STATIONS_FILE = "E-Grid - Sheet1.csv";
+    public static final String PLANTS_FILE = "E-Grid - Sheet2.csv";
+    public static final String REGIONS_FILE = "E-Grid - Sheet3.csv";
 
-        Vector<PowerPlant> powerPlants = new Vector<>();
+    public static Vector<PowerPlant> getPowerPlantsFromRepository() throws IOException {
 
-        File f = new File( repoPath + "E-Grid - Sheet2.csv" );
+        File f = new File( repoPath + PLANTS_FILE );
         System.out.println( f.getAbsolutePath() + " => " + f.exists() );
 
         /**
          *   Load PowerPlants
          */
-        FileReader fr = new FileReader(f);
-
-        BufferedReader br = new BufferedReader( fr );
-
-        int i = 0;
-        while( br.ready() ) {
-
-            String line = br.readLine();
-            if ( i > 0 ) {
-
-                PowerPlant pp = GridFactory.getGetPPNode( line.split(",") );
-                powerPlants.add( pp );
+        return CSVTopologyLoader.load( f, CSVTopologyLoader.PLANTS );
 
-                System.out.println( pp.toString() );
-            }
-            i++;
-
-        }
-
-        return powerPlants;
     }
 
     public static Vector<Station> getStationsFromRepository() throws IOException {
 
-        Vector<Station> stations = new Vector<>();
-
         /**
          *   Load Stations
          */
-        FileReader fr2 = new FileReader(repoPath + "E-Grid - Sheet1.csv" );
-
-        BufferedReader br2 = new BufferedReader( fr2 );
-
-        int j = 0;
-        while( br2.ready() ) {
+        return CSVTopologyLoader.load( new File( repoPath + STATIONS_FILE ), CSVTopologyLoader.STATIONS );
 
-            String line = br2.readLine();
-
-            if( j > 0 ) {
-                Station s = GridFactory.getGetSNode(line.split(","));
-                System.out.println(s.toString());
-                stations.add( s );
-            }
-            j++;
-        }
-
-        return stations;
     }
 
     public static Vector<Region> getRegionsFromRepository() throws IOException {
 
-        Vector<Region> regions = new Vector<>();
-
         /**
          *   Load regions
          */
-        FileReader fr3 = new FileReader( repoPath + "E-Grid - Sheet3.csv" );
-        FileReader fr31 = new FileReader(repoPath + "E-Grid - Sheet3-1.csv" );
-        FileReader fr32 = new FileReader(repoPath + "E-Grid - Sheet3-2.csv" );
-
-        BufferedReader br3 = new BufferedReader( fr3 );
-
-        int k = 0;
-        while( br3.ready() ) {
-
-            String line = br3.readLine();
-            if ( k > 0 ) {
-
-                Region r = GridFactory.getGetRegionNode( line.split(",") );
-                regions.add( r );
-
-                System.out.println( r.toString() );
-            }
-            k++;
-
-        }
-
-        return regions;
+        return CSVTopologyLoader.load( new File( repoPath + REGIONS_FILE ), CSVTopologyLoader.REGIONS );
 
     }
 
@@ -0,0 +1,41 @@
+package dataprovider;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Thrown by the {@link CSVTopologyLoader} if rows of a file could not be parsed.
+ * The message lists the first errors with file name and line number.
+ */
+public class CSVLoadException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int MAX_REPORTED = 20;
+
+    final List<String> errors;
+
+    public CSVLoadException(String file, List<String> errors) {
+        super( describe( file, errors ) );
+        this.errors = errors;
+    }
+
+    /**
+     * All errors as "<file>:<line>: <message>".
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    static String describe(String file, List<String> errors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append( errors.size() ).append( " invalid row(s) in " ).append( file );
+        for( int i = 0; i < Math.min( MAX_REPORTED, errors.size() ); i++ ) {
+            sb.append( "\n  " ).append( errors.get( i ) );
+        }
+        if ( errors.size() > MAX_REPORTED )
+            sb.append( "\n  ..." );
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,443 @@
+package dataprovider;
+
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the topology CSV files (stations, plants, regions, segments) of any size.
+ *
+ * The file is memory mapped and split into chunks at line boundaries, the chunks are parsed in
+ * parallel and the results are concatenated in file order. Rows are not turned into Strings:
+ * field boundaries are located in the mapped bytes, numbers are parsed directly from the bytes and
+ * only the text fields the model keeps (ids, names, countries) become Strings.
+ *
+ * The first line of a file is the header. Fields are separated by ',', quoting is not supported
+ * (the files never used it). Rows which can not be parsed are reported with their line number;
+ * by default the load fails with a {@link CSVLoadException}, with -Dcsv.loader.skip.invalid=true
+ * the rows are skipped and the errors are printed.
+ */
+public class CSVTopologyLoader {
+
+    public static int PARALLELISM = Integer.getInteger( "csv.loader.threads", Runtime.getRuntime().availableProcessors() );
+
+    public static boolean SKIP_INVALID_ROWS = Boolean.getBoolean( "csv.loader.skip.invalid" );
+
+    static long MIN_CHUNK_SIZE = 4L << 20;
+    static long MAX_CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Creates one object from a row, or returns null to skip the row.
+     */
+    public interface RowMapper<T> {
+        T map(Row row);
+    }
+
+    public static final RowMapper<Station> STATIONS = new RowMapper<Station>() {
+        @Override
+        public Station map(Row row) {
+            return new Station( row.string( 0 ), row.string( 1 ), row.string( 2 ), row.decimal( 3 ), row.decimal( 4 ) );
+        }
+    };
+
+    public static final RowMapper<PowerPlant> PLANTS = new RowMapper<PowerPlant>() {
+        @Override
+        public PowerPlant map(Row row) {
+            return new PowerPlant( row.string( 0 ), row.string( 1 ), row.string( 2 ), row.decimal( 3 ), row.decimal( 4 ),
+                    row.decimal( 5 ), row.string( 6 ) );
+        }
+    };
+
+    public static final RowMapper<Region> REGIONS = new RowMapper<Region>() {
+        @Override
+        public Region map(Row row) {
+            return new Region( row.string( 0 ), row.string( 1 ), row.string( 2 ), row.decimal( 3 ), row.decimal( 4 ),
+                    row.decimal( 5 ), row.decimal( 6 ), row.decimal( 7 ), row.decimal( 8 ) );
+        }
+    };
+
+    /**
+     * "source,target" rows of the segments file as "source-target".
+     */
+    public static final RowMapper<String> SEGMENTS = new RowMapper<String>() {
+        @Override
+        public String map(Row row) {
+            row.checkFields( 2 );
+            return row.string( 0, row.fieldStart( 0 ), row.fieldEnd( 1 ) ).replace( ',', '-' );
+        }
+    };
+
+    public static <T> Vector<T> load(File f, RowMapper<T> mapper) throws IOException {
+
+        long t0 = System.currentTimeMillis();
+
+        try ( RandomAccessFile raf = new RandomAccessFile( f, "r" ) ) {
+
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+
+            long[] bounds = chunkBounds( channel, size );
+            int chunks = bounds.length - 1;
+
+            List<ChunkResult<T>> results = new ArrayList<>( chunks );
+
+            if ( chunks <= 1 || PARALLELISM <= 1 ) {
+                for( int c = 0; c < chunks; c++ ) {
+                    results.add( parseChunk( channel, c, bounds[c], bounds[c + 1], mapper ) );
+                }
+            }
+            else {
+                results = parseParallel( channel, bounds, mapper );
+            }
+
+            // concatenate in file order, translate chunk relative line numbers
+            int total = 0;
+            for( ChunkResult<T> r : results ) {
+                total = total + r.items.size();
+            }
+
+            Vector<T> items = new Vector<>( total );
+            List<String> errors = new ArrayList<>();
+
+            long lineOffset = 0;
+            for( ChunkResult<T> r : results ) {
+                items.addAll( r.items );
+                for( int i = 0; i < r.errorLines.size(); i++ ) {
+                    errors.add( f.getName() + ":" + ( lineOffset + r.errorLines.get( i ) ) + ": " + r.errorMessages.get( i ) );
+                }
+                lineOffset = lineOffset + r.lines;
+            }
+
+            if ( !errors.isEmpty() ) {
+                CSVLoadException ex = new CSVLoadException( f.getAbsolutePath(), errors );
+                if ( !SKIP_INVALID_ROWS )
+                    throw ex;
+                System.err.println( ex.getMessage() );
+            }
+
+            System.out.println( "> Loaded " + items.size() + " rows from " + f.getName() + " (" + size + " bytes, " +
+                    chunks + " chunk(s)) in " + ( System.currentTimeMillis() - t0 ) + " ms" );
+
+            return items;
+
+        }
+
+    }
+
+    static <T> List<ChunkResult<T>> parseParallel(final FileChannel channel, final long[] bounds, final RowMapper<T> mapper) throws IOException {
+
+        ExecutorService pool = Executors.newFixedThreadPool( Math.min( PARALLELISM, bounds.length - 1 ), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "csv-loader" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+
+        try {
+
+            List<Future<ChunkResult<T>>> futures = new ArrayList<>();
+            for( int c = 0; c < bounds.length - 1; c++ ) {
+                final int chunk = c;
+                futures.add( pool.submit( () -> parseChunk( channel, chunk, bounds[chunk], bounds[chunk + 1], mapper ) ) );
+            }
+
+            List<ChunkResult<T>> results = new ArrayList<>( futures.size() );
+            for( Future<ChunkResult<T>> future : futures ) {
+                results.add( future.get() );
+            }
+            return results;
+
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while loading", e );
+        }
+        catch (ExecutionException e) {
+            if ( e.getCause() instanceof IOException )
+                throw (IOException) e.getCause();
+            throw new IOException( e.getCause() );
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+    }
+
+    /**
+     * Splits the file into chunks which all start at the beginning of a line.
+     */
+    static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+
+        long target = Math.max( MIN_CHUNK_SIZE, Math.min( MAX_CHUNK_SIZE, size / ( PARALLELISM * 4L ) + 1 ) );
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add( 0L );
+
+        ByteBuffer probe = ByteBuffer.allocate( 8192 );
+
+        long pos = target;
+        while ( pos < size ) {
+
+            // move forward to the byte after the next newline
+            long next = -1;
+            long scan = pos;
+            while ( next < 0 && scan < size ) {
+                probe.clear();
+                int n = channel.read( probe, scan );
+                if ( n <= 0 )
+                    break;
+                for( int i = 0; i < n; i++ ) {
+                    if ( probe.get( i ) == '\n' ) {
+                        next = scan + i + 1;
+                        break;
+                    }
+                }
+                scan = scan + n;
+            }
+
+            if ( next < 0 || next >= size )
+                break;
+
+            bounds.add( next );
+            pos = next + target;
+
+        }
+
+        bounds.add( size );
+
+        long[] result = new long[bounds.size()];
+        for( int i = 0; i < result.length; i++ ) {
+            result[i] = bounds.get( i );
+        }
+        return result;
+
+    }
+
+    static <T> ChunkResult<T> parseChunk(FileChannel channel, int chunk, long from, long to, RowMapper<T> mapper) throws IOException {
+
+        ChunkResult<T> result = new ChunkResult<>();
+
+        int len = (int) ( to - from );
+        if ( len == 0 )
+            return result;
+
+        MappedByteBuffer buf = channel.map( FileChannel.MapMode.READ_ONLY, from, len );
+        Row row = new Row( buf );
+
+        int pos = 0;
+        int line = 0;
+
+        while ( pos < len ) {
+
+            int lineStart = pos;
+            while ( pos < len && buf.get( pos ) != '\n' ) {
+                pos++;
+            }
+            int lineEnd = pos;
+            pos++;
+            line++;
+
+            if ( lineEnd > lineStart && buf.get( lineEnd - 1 ) == '\r' )
+                lineEnd--;
+
+            // header
+            if ( chunk == 0 && line == 1 )
+                continue;
+
+            if ( lineEnd == lineStart )
+                continue;
+
+            try {
+                row.reset( lineStart, lineEnd );
+                T item = mapper.map( row );
+                if ( item != null )
+                    result.items.add( item );
+            }
+            catch (RuntimeException ex) {
+                result.errorLines.add( line );
+                result.errorMessages.add( ex.getMessage() == null ? ex.toString() : ex.getMessage() );
+            }
+
+        }
+
+        result.lines = line;
+        return result;
+
+    }
+
+    static class ChunkResult<T> {
+        final ArrayList<T> items = new ArrayList<>();
+        final List<Integer> errorLines = new ArrayList<>();
+        final List<String> errorMessages = new ArrayList<>();
+        int lines = 0;
+    }
+
+    /**
+     * One line of the mapped file, with the positions of its fields.
+     */
+    public static class Row {
+
+        static final double[] POW10 = new double[23];
+        static {
+            POW10[0] = 1.0;
+            for( int i = 1; i < POW10.length; i++ ) {
+                POW10[i] = POW10[i - 1] * 10.0;
+            }
+        }
+
+        final ByteBuffer buf;
+
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int fields = 0;
+
+        byte[] scratch = new byte[256];
+
+        Row(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        void reset(int lineStart, int lineEnd) {
+            fields = 0;
+            int s = lineStart;
+            for( int i = lineStart; i <= lineEnd; i++ ) {
+                if ( i == lineEnd || buf.get( i ) == ',' ) {
+                    if ( fields == starts.length ) {
+                        starts = Arrays.copyOf( starts, fields * 2 );
+                        ends = Arrays.copyOf( ends, fields * 2 );
+                    }
+                    starts[fields] = s;
+                    ends[fields] = i;
+                    fields++;
+                    s = i + 1;
+                }
+            }
+        }
+
+        public int fieldCount() {
+            return fields;
+        }
+
+        void checkFields(int required) {
+            if ( fields < required )
+                throw new IllegalArgumentException( "expected at least " + required + " fields but found " + fields );
+        }
+
+        int fieldStart(int i) {
+            checkFields( i + 1 );
+            return starts[i];
+        }
+
+        int fieldEnd(int i) {
+            checkFields( i + 1 );
+            return ends[i];
+        }
+
+        /**
+         * The field as String (UTF-8), not trimmed.
+         */
+        public String string(int i) {
+            checkFields( i + 1 );
+            return string( i, starts[i], ends[i] );
+        }
+
+        String string(int i, int from, int to) {
+            int n = to - from;
+            if ( scratch.length < n )
+                scratch = new byte[n * 2];
+            for( int k = 0; k < n; k++ ) {
+                scratch[k] = buf.get( from + k );
+            }
+            return new String( scratch, 0, n, StandardCharsets.UTF_8 );
+        }
+
+        /**
+         * The field as double, surrounding blanks are ignored.
+         */
+        public double decimal(int i) {
+
+            checkFields( i + 1 );
+
+            int s = starts[i];
+            int e = ends[i];
+            while ( s < e && isBlank( buf.get( s ) ) ) s++;
+            while ( e > s && isBlank( buf.get( e - 1 ) ) ) e--;
+
+            if ( s == e )
+                throw new NumberFormatException( "field " + ( i + 1 ) + " is empty" );
+
+            int p = s;
+            boolean negative = false;
+            byte c = buf.get( p );
+            if ( c == '-' || c == '+' ) {
+                negative = c == '-';
+                p++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean anyDigit = false;
+            boolean dot = false;
+            boolean simple = p < e;
+
+            for( ; p < e && simple; p++ ) {
+                c = buf.get( p );
+                if ( c >= '0' && c <= '9' ) {
+                    anyDigit = true;
+                    if ( mantissa > 0 || c != '0' )
+                        digits++;
+                    mantissa = mantissa * 10 + ( c - '0' );
+                    if ( dot )
+                        scale++;
+                }
+                else if ( c == '.' && !dot ) {
+                    dot = true;
+                }
+                else {
+                    simple = false;
+                }
+            }
+
+            // fast path: exact as long as the mantissa fits into 53 bits and 10^scale is exact
+            if ( simple && anyDigit && digits <= 15 && scale < POW10.length ) {
+                double v = mantissa / POW10[scale];
+                return negative ? -v : v;
+            }
+
+            String text = string( i, s, e );
+            try {
+                return Double.parseDouble( text );
+            }
+            catch (NumberFormatException ex) {
+                throw new NumberFormatException( "field " + ( i + 1 ) + " is not a number: '" + text + "'" );
+            }
+
+        }
+
+        static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t';
+        }
+
+    }
+
+}
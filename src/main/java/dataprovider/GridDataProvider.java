@@ -1,9 +1,29 @@
 package dataprovider;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Vector;
 
 public class GridDataProvider {
 
+    /**
+     * Optional file with one "source,target" station pair per line, e.g. written by the SyntheticGridGenerator.
+     */
+    public static final String SEGMENTS_FILE = "E-Grid - Segments.csv";
+
+    /**
+     * Segments from the segments file in the repository folder, or the demo segments if there is none.
+     */
+    public static Vector<String> getSegments( String repoPath ) throws IOException {
+
+        File f = new File( repoPath + SEGMENTS_FILE );
+        if ( !f.exists() )
+            return getSegments();
+
+        return CSVTopologyLoader.load( f, CSVTopologyLoader.SEGMENTS );
+
+    }
+
     public static Vector<String> getSegments() {
 
         Vector<String> segments = new Vector<String>();
@@ -0,0 +1,549 @@
+package dataprovider;
+
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+import tool.GridFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Generates grids of configurable size (10k .. 10M links) for scale tests.
+ *
+ * Regions are spread over a European sized bounding box, stations are clustered around the region
+ * centers and numbered along a Morton (z-order) curve inside each region, so that stations with
+ * neighbouring ordinals are also spatially close. The segments are:
+ *
+ *   - a chain along the z-order inside each region (keeps every region connected),
+ *   - extra links to nearby stations, sampled uniformly until the target link count is reached,
+ *   - a few tie lines between the closest stations of neighbouring regions.
+ *
+ * With the default average degree of 2.8 this resembles a meshed transmission grid. The same seed
+ * always produces the same grid.
+ *
+ * The result is either loaded into the regular model classes (generate) or written as CSV files in
+ * the layout of ./data/in (writeCSV), the second variant only keeps primitive arrays in memory.
+ *
+ *    java -cp <jar> dataprovider.SyntheticGridGenerator <out-folder> <links> [seed]
+ */
+public class SyntheticGridGenerator {
+
+    static final String[] COUNTRIES = { "BE", "DE", "FR", "NL", "LU", "AT", "CH", "IT", "ES", "PT", "PL", "CZ",
+            "SK", "HU", "SI", "HR", "DK", "SE", "NO", "FI", "EE", "LV", "LT", "IE", "GB", "RO", "BG", "GR",
+            "RS", "BA", "ME", "MK", "AL", "UA", "MD", "BY" };
+
+    static final double MIN_LAT = 36.0;
+    static final double MAX_LAT = 70.0;
+    static final double MIN_LON = -10.0;
+    static final double MAX_LON = 35.0;
+
+    /**
+     * Generator settings - change them before the first call of generate() or writeCSV().
+     */
+    public long seed = 42;
+    public int links = 10000;
+    public int regions = 0;                 // 0 : derived from the grid size
+    public double averageDegree = 2.8;
+    public int stationsPerPlant = 15;
+    public int tieLinesPerBorder = 2;
+    public int neighbourRegions = 3;
+    public int neighbourWindow = 8;
+
+    int stationCount;
+    int regionCount;
+
+    double[] regionLat;
+    double[] regionLon;
+    int[] regionStart;                      // stations of region r : [ regionStart[r], regionStart[r+1] )
+
+    double[] lat;
+    double[] lon;
+
+    int[] plantStation;
+    double[] plantProduction;
+
+    double[] regionProduction;
+    double[] regionConsumption;
+
+    boolean laidOut = false;
+
+    public SyntheticGridGenerator(int links, long seed) {
+        this.links = links;
+        this.seed = seed;
+    }
+
+    /**
+     * Receives the generated segments as pairs of station ordinals.
+     */
+    public interface SegmentSink {
+        void segment(int source, int target) throws IOException;
+    }
+
+    /**
+     * The generated grid in the model classes used by SimulationScenario.
+     */
+    public static class SyntheticGrid {
+        public Vector<Region> regions = new Vector<>();
+        public Vector<Station> stations = new Vector<>();
+        public Vector<PowerPlant> powerPlants = new Vector<>();
+        public Vector<String> segments = new Vector<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String folder = args.length > 0 ? args[0] : "./data/synthetic/";
+        int links = args.length > 1 ? Integer.parseInt( args[1] ) : 10000;
+        long seed = args.length > 2 ? Long.parseLong( args[2] ) : 42;
+
+        SyntheticGridGenerator g = new SyntheticGridGenerator( links, seed );
+
+        long t0 = System.currentTimeMillis();
+        long written = g.writeCSV( folder );
+        long t1 = System.currentTimeMillis();
+
+        System.out.println( "> Wrote " + g.regionCount + " regions, " + g.stationCount + " stations, " +
+                g.plantStation.length + " plants and " + written + " segments to " + folder + " in " + ( t1 - t0 ) + " ms" );
+
+    }
+
+    public String stationId(int i) {
+        return "ST" + ( i + 1 );
+    }
+
+    public String plantId(int i) {
+        return "PP" + ( i + 1 );
+    }
+
+    public String regionId(int r) {
+        return "" + ( r + 1 );
+    }
+
+    public String countryCode(int r) {
+        return r < COUNTRIES.length ? COUNTRIES[r] : "X" + r;
+    }
+
+    public int getStationCount() {
+        layout();
+        return stationCount;
+    }
+
+    public int getRegionCount() {
+        layout();
+        return regionCount;
+    }
+
+    public int getPlantCount() {
+        layout();
+        return plantStation.length;
+    }
+
+    /**
+     * Builds the grid in memory using the regular model classes.
+     */
+    public SyntheticGrid generate() {
+
+        layout();
+
+        final SyntheticGrid grid = new SyntheticGrid();
+
+        for( int r = 0; r < regionCount; r++ ) {
+            grid.regions.add( GridFactory.getGetRegionNode( regionFields( r ) ) );
+        }
+
+        grid.stations.ensureCapacity( stationCount );
+        for( int r = 0; r < regionCount; r++ ) {
+            for( int i = regionStart[r]; i < regionStart[r + 1]; i++ ) {
+                grid.stations.add( GridFactory.getGetSNode( stationFields( i, r ) ) );
+            }
+        }
+
+        grid.powerPlants.ensureCapacity( plantStation.length );
+        for( int p = 0; p < plantStation.length; p++ ) {
+            grid.powerPlants.add( GridFactory.getGetPPNode( plantFields( p ) ) );
+        }
+
+        grid.segments.ensureCapacity( links );
+        try {
+            segments( new SegmentSink() {
+                @Override
+                public void segment(int source, int target) {
+                    grid.segments.add( stationId( source ) + "-" + stationId( target ) );
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException( e );
+        }
+
+        return grid;
+
+    }
+
+    /**
+     * Writes Sheet1 (stations), Sheet2 (plants), Sheet3 (regions) and the segments file into the folder.
+     *
+     * @return number of segments written
+     */
+    public long writeCSV(String folder) throws IOException {
+
+        layout();
+
+        File dir = new File( folder );
+        dir.mkdirs();
+
+        try ( Writer w = writer( new File( dir, CSVFileRepository.STATIONS_FILE ) ) ) {
+            w.write( "id,country,city,lat,lon,PC,linkedToStation\n" );
+            for( int r = 0; r < regionCount; r++ ) {
+                for( int i = regionStart[r]; i < regionStart[r + 1]; i++ ) {
+                    w.write( join( stationFields( i, r ) ) );
+                }
+            }
+        }
+
+        try ( Writer w = writer( new File( dir, CSVFileRepository.PLANTS_FILE ) ) ) {
+            w.write( "id,country,city,lat,lon,PC,linkedToStation\n" );
+            for( int p = 0; p < plantStation.length; p++ ) {
+                w.write( join( plantFields( p ) ) );
+            }
+        }
+
+        try ( Writer w = writer( new File( dir, CSVFileRepository.REGIONS_FILE ) ) ) {
+            w.write( "id,countryCode,region,lat,lon,production,consumption,imports,exports,excess\n" );
+            for( int r = 0; r < regionCount; r++ ) {
+                w.write( join( regionFields( r ) ) );
+            }
+        }
+
+        try ( final Writer w = writer( new File( dir, GridDataProvider.SEGMENTS_FILE ) ) ) {
+            w.write( "source,target\n" );
+            return segments( new SegmentSink() {
+                @Override
+                public void segment(int source, int target) throws IOException {
+                    w.write( stationId( source ) );
+                    w.write( ',' );
+                    w.write( stationId( target ) );
+                    w.write( '\n' );
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Places regions, stations and plants. Idempotent.
+     */
+    void layout() {
+
+        if ( laidOut )
+            return;
+
+        Random rnd = new Random( seed );
+
+        stationCount = (int) Math.max( 6, Math.round( 2.0 * links / averageDegree ) );
+
+        regionCount = regions > 0 ? regions : Math.min( COUNTRIES.length, Math.max( 3, (int) Math.sqrt( stationCount / 100.0 ) ) );
+        regionCount = Math.min( regionCount, stationCount / 2 );
+
+        // region centers on a jittered grid over the bounding box
+        int cols = (int) Math.ceil( Math.sqrt( regionCount * ( MAX_LON - MIN_LON ) / ( MAX_LAT - MIN_LAT ) ) );
+        int rows = (int) Math.ceil( regionCount / (double) cols );
+        double cellLon = ( MAX_LON - MIN_LON ) / cols;
+        double cellLat = ( MAX_LAT - MIN_LAT ) / rows;
+
+        regionLat = new double[regionCount];
+        regionLon = new double[regionCount];
+        for( int r = 0; r < regionCount; r++ ) {
+            int c = r % cols;
+            int row = r / cols;
+            regionLon[r] = MIN_LON + ( c + 0.5 + 0.6 * ( rnd.nextDouble() - 0.5 ) ) * cellLon;
+            regionLat[r] = MIN_LAT + ( row + 0.5 + 0.6 * ( rnd.nextDouble() - 0.5 ) ) * cellLat;
+        }
+
+        // region sizes vary by a factor of three
+        double[] weight = new double[regionCount];
+        double total = 0;
+        for( int r = 0; r < regionCount; r++ ) {
+            weight[r] = 0.5 + rnd.nextDouble();
+            total = total + weight[r];
+        }
+
+        regionStart = new int[regionCount + 1];
+        int assigned = 0;
+        for( int r = 0; r < regionCount; r++ ) {
+            regionStart[r] = assigned;
+            int n = r == regionCount - 1 ? stationCount - assigned : Math.max( 2, (int) ( stationCount * weight[r] / total ) );
+            n = Math.min( n, stationCount - assigned - 2 * ( regionCount - r - 1 ) );
+            assigned = assigned + n;
+        }
+        regionStart[regionCount] = stationCount;
+
+        // stations: gaussian clusters around a few cities per region, numbered along the z-order curve
+        lat = new double[stationCount];
+        lon = new double[stationCount];
+
+        double sigmaLat = cellLat * 0.18;
+        double sigmaLon = cellLon * 0.18;
+
+        for( int r = 0; r < regionCount; r++ ) {
+
+            int from = regionStart[r];
+            int n = regionStart[r + 1] - from;
+
+            int cities = 3 + rnd.nextInt( 5 );
+            double[] cityLat = new double[cities];
+            double[] cityLon = new double[cities];
+            for( int c = 0; c < cities; c++ ) {
+                cityLat[c] = regionLat[r] + rnd.nextGaussian() * sigmaLat;
+                cityLon[c] = regionLon[r] + rnd.nextGaussian() * sigmaLon;
+            }
+
+            double[] tLat = new double[n];
+            double[] tLon = new double[n];
+            long[] keys = new long[n];
+
+            for( int k = 0; k < n; k++ ) {
+                int c = rnd.nextInt( cities );
+                tLat[k] = clamp( cityLat[c] + rnd.nextGaussian() * sigmaLat * 0.5, MIN_LAT, MAX_LAT );
+                tLon[k] = clamp( cityLon[c] + rnd.nextGaussian() * sigmaLon * 0.5, MIN_LON, MAX_LON );
+                keys[k] = ( morton( tLat[k], tLon[k] ) << 32 ) | k;
+            }
+
+            Arrays.sort( keys );
+
+            for( int k = 0; k < n; k++ ) {
+                int src = (int) ( keys[k] & 0xFFFFFFFFL );
+                lat[from + k] = round6( tLat[src] );
+                lon[from + k] = round6( tLon[src] );
+            }
+
+        }
+
+        // plants: attached to random stations, production roughly log-normal between 50 and 1500 MW
+        int plants = Math.max( 1, stationCount / stationsPerPlant );
+        plantStation = new int[plants];
+        plantProduction = new double[plants];
+        regionProduction = new double[regionCount];
+
+        for( int p = 0; p < plants; p++ ) {
+            plantStation[p] = rnd.nextInt( stationCount );
+            plantProduction[p] = Math.round( clamp( Math.exp( 5.5 + rnd.nextGaussian() * 0.8 ), 50, 1500 ) );
+            regionProduction[ regionOf( plantStation[p] ) ] += plantProduction[p];
+        }
+
+        regionConsumption = new double[regionCount];
+        for( int r = 0; r < regionCount; r++ ) {
+            regionConsumption[r] = Math.round( regionProduction[r] * ( 0.8 + 0.4 * rnd.nextDouble() ) );
+        }
+
+        laidOut = true;
+
+    }
+
+    /**
+     * Emits all segments in a deterministic order.
+     *
+     * @return number of segments emitted
+     */
+    public long segments(SegmentSink sink) throws IOException {
+
+        layout();
+
+        long emitted = 0;
+
+        // 1) chain inside each region
+        for( int r = 0; r < regionCount; r++ ) {
+            for( int i = regionStart[r]; i < regionStart[r + 1] - 1; i++ ) {
+                sink.segment( i, i + 1 );
+                emitted++;
+            }
+        }
+
+        // 2) tie lines between neighbouring regions
+        Set<Long> borders = new HashSet<>();
+        long tieLines = 0;
+        for( int r = 0; r < regionCount; r++ ) {
+            for( int other : nearestRegions( r, neighbourRegions ) ) {
+                long pair = Math.min( r, other ) * (long) regionCount + Math.max( r, other );
+                if ( !borders.add( pair ) )
+                    continue;
+                int[] a = closestStations( r, regionLat[other], regionLon[other], tieLinesPerBorder );
+                int[] b = closestStations( other, regionLat[r], regionLon[r], tieLinesPerBorder );
+                for( int k = 0; k < Math.min( a.length, b.length ); k++ ) {
+                    sink.segment( a[k], b[k] );
+                    emitted++;
+                    tieLines++;
+                }
+            }
+        }
+
+        // 3) extra links to stations a few steps further on the z-order curve, one per station and pass,
+        //    chosen by selection sampling so that exactly the missing number of links is produced.
+        long missing = links - emitted;
+        Random rnd = new Random( seed * 31 + 7 );
+
+        for( int pass = 0; missing > 0; pass++ ) {
+
+            int reach = 1 + ( pass + 1 ) * neighbourWindow;
+
+            long candidates = 0;
+            for( int r = 0; r < regionCount; r++ ) {
+                candidates = candidates + Math.max( 0, regionStart[r + 1] - regionStart[r] - reach );
+            }
+            if ( candidates == 0 )
+                break;
+
+            long wanted = Math.min( missing, candidates );
+            long seen = 0;
+
+            for( int r = 0; r < regionCount && wanted > 0; r++ ) {
+                int last = regionStart[r + 1] - reach;
+                for( int i = regionStart[r]; i < last && wanted > 0; i++ ) {
+                    if ( rnd.nextDouble() * ( candidates - seen ) < wanted ) {
+                        int j = i + 2 + pass * neighbourWindow + rnd.nextInt( neighbourWindow );
+                        sink.segment( i, j );
+                        emitted++;
+                        missing--;
+                        wanted--;
+                    }
+                    seen++;
+                }
+            }
+
+        }
+
+        System.out.println( "> Synthetic grid: " + emitted + " segments (" + tieLines + " tie lines) between " + stationCount + " stations" );
+
+        return emitted;
+
+    }
+
+    int regionOf(int station) {
+        int idx = Arrays.binarySearch( regionStart, station );
+        return idx >= 0 ? Math.min( idx, regionCount - 1 ) : -idx - 2;
+    }
+
+    int[] nearestRegions(int r, int k) {
+        Integer[] others = new Integer[regionCount - 1];
+        int n = 0;
+        for( int o = 0; o < regionCount; o++ ) {
+            if ( o != r )
+                others[n++] = o;
+        }
+        final int from = r;
+        Arrays.sort( others, ( a, b ) -> Double.compare( dist2( from, a ), dist2( from, b ) ) );
+        int[] result = new int[Math.min( k, others.length )];
+        for( int i = 0; i < result.length; i++ ) {
+            result[i] = others[i];
+        }
+        return result;
+    }
+
+    int[] closestStations(int r, double toLat, double toLon, int k) {
+
+        int from = regionStart[r];
+        int to = regionStart[r + 1];
+        k = Math.min( k, to - from );
+
+        int[] best = new int[k];
+        double[] bestD = new double[k];
+        Arrays.fill( bestD, Double.MAX_VALUE );
+
+        for( int i = from; i < to; i++ ) {
+            double d = ( lat[i] - toLat ) * ( lat[i] - toLat ) + ( lon[i] - toLon ) * ( lon[i] - toLon );
+            if ( d < bestD[k - 1] ) {
+                int pos = k - 1;
+                while ( pos > 0 && bestD[pos - 1] > d ) {
+                    bestD[pos] = bestD[pos - 1];
+                    best[pos] = best[pos - 1];
+                    pos--;
+                }
+                bestD[pos] = d;
+                best[pos] = i;
+            }
+        }
+
+        return best;
+
+    }
+
+    String[] stationFields(int i, int r) {
+        return new String[] { stationId( i ), countryCode( r ), countryCode( r ) + "-" + ( i + 1 ),
+                Double.toString( lat[i] ), Double.toString( lon[i] ), "-1", "0" };
+    }
+
+    String[] plantFields(int p) {
+        int s = plantStation[p];
+        int r = regionOf( s );
+        return new String[] { plantId( p ), countryCode( r ), "Plant-" + ( p + 1 ),
+                Double.toString( round6( lat[s] + 0.01 ) ), Double.toString( round6( lon[s] + 0.01 ) ),
+                Double.toString( plantProduction[p] ), stationId( s ) };
+    }
+
+    String[] regionFields(int r) {
+        double prod = regionProduction[r];
+        double cons = regionConsumption[r];
+        double imports = cons > prod ? cons - prod : 0;
+        double exports = prod > cons ? prod - cons : 0;
+        return new String[] { regionId( r ), countryCode( r ), "Region-" + countryCode( r ),
+                Double.toString( round6( regionLat[r] ) ), Double.toString( round6( regionLon[r] ) ),
+                Double.toString( prod ), Double.toString( cons ), Double.toString( imports ), Double.toString( exports ), "0" };
+    }
+
+    double dist2(int a, int b) {
+        double dLat = regionLat[a] - regionLat[b];
+        double dLon = regionLon[a] - regionLon[b];
+        return dLat * dLat + dLon * dLon;
+    }
+
+    static String join(String[] fields) {
+        StringBuilder sb = new StringBuilder();
+        for( int i = 0; i < fields.length; i++ ) {
+            if ( i > 0 )
+                sb.append( ',' );
+            sb.append( fields[i] );
+        }
+        return sb.append( '\n' ).toString();
+    }
+
+    static Writer writer(File f) throws IOException {
+        return new BufferedWriter( new OutputStreamWriter( new FileOutputStream( f ), StandardCharsets.UTF_8 ), 1 << 16 );
+    }
+
+    /**
+     * Interleaves the bits of the 16 bit quantized coordinates.
+     */
+    static long morton(double lat, double lon) {
+        int x = (int) ( ( lon - MIN_LON ) / ( MAX_LON - MIN_LON ) * 65535 );
+        int y = (int) ( ( lat - MIN_LAT ) / ( MAX_LAT - MIN_LAT ) * 65535 );
+        return spread( x ) | ( spread( y ) << 1 );
+    }
+
+    static long spread(int v) {
+        long x = v & 0xFFFFL;
+        x = ( x | ( x << 8 ) ) & 0x00FF00FFL;
+        x = ( x | ( x << 4 ) ) & 0x0F0F0F0FL;
+        x = ( x | ( x << 2 ) ) & 0x33333333L;
+        x = ( x | ( x << 1 ) ) & 0x55555555L;
+        return x;
+    }
+
+    static double clamp(double v, double min, double max) {
+        return Math.max( min, Math.min( max, v ) );
+    }
+
+    static double round6(double v) {
+        return Math.round( v * 1e6 ) / 1e6;
+    }
+
+}
@@ -0,0 +1,266 @@
+package kafka;
+
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.Histogram;
+import metrics.Metrics;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a Kafka producer and publishes records either blocking (one broker round trip per record)
+ * or pipelined with callbacks.
+ *
+ * In async mode the number of unacknowledged records is bounded by a semaphore, so the simulation
+ * can not run away from the broker. A call to flush() is the barrier which waits until every record
+ * sent so far is acknowledged or counted as an error.
+ *
+ * Retries are left to the (idempotent) producer, which retries a record until delivery.timeout.ms
+ * without duplicates and in order. A record which still fails is only counted and reported, a
+ * re-send from here would be a new record behind the later ones, a possible duplicate.
+ *
+ * send() may be called from several threads at once, flush() must not overlap with send().
+ *
+ * A publisher with a name reports to Metrics: <name>.records and <name>.bytes (acknowledged),
+ * <name>.errors, <name>.latency (send to acknowledgement), <name>.blocked (waits for an in-flight
+ * permit, only counted when the limit is reached) and the gauges <name>.inflight and <name>.retries
+ * (record-retry-total of the producer, for all topics which share it).
+ */
+public class AsyncPublisher<K, V> {
+
+    public static boolean DEFAULT_ASYNC = !"sync".equalsIgnoreCase( System.getProperty( "publish.mode", "async" ) );
+    public static int DEFAULT_MAX_IN_FLIGHT = Integer.getInteger( "publish.max.in.flight", 10000 );
+
+    final Producer<K, V> producer;
+
+    final boolean async;
+    final int maxInFlight;
+
+    final Semaphore inFlight;
+
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong acked = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+
+    // null without a name
+    final Histogram latency;
+    final Histogram blocked;
+    final Counter records;
+    final Counter bytes;
+    final Counter failed;
+
+    public AsyncPublisher(Producer<K, V> producer) {
+        this( producer, DEFAULT_ASYNC, DEFAULT_MAX_IN_FLIGHT );
+    }
+
+    public AsyncPublisher(Producer<K, V> producer, String name) {
+        this( producer, DEFAULT_ASYNC, DEFAULT_MAX_IN_FLIGHT, name );
+    }
+
+    public AsyncPublisher(Producer<K, V> producer, boolean async, int maxInFlight) {
+        this( producer, async, maxInFlight, null );
+    }
+
+    public AsyncPublisher(Producer<K, V> producer, boolean async, int maxInFlight, String name) {
+
+        this.producer = producer;
+        this.async = async;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore( maxInFlight );
+
+        if ( name != null ) {
+            latency = Metrics.histogram( name + ".latency" );
+            blocked = Metrics.histogram( name + ".blocked" );
+            records = Metrics.counter( name + ".records" );
+            bytes = Metrics.counter( name + ".bytes" );
+            failed = Metrics.counter( name + ".errors" );
+            Metrics.gauge( name + ".inflight", new Gauge() {
+                @Override
+                public double value() {
+                    return getInFlight();
+                }
+            });
+            Metrics.gauge( name + ".retries", new Gauge() {
+                @Override
+                public double value() {
+                    return getRetries();
+                }
+            });
+        }
+        else {
+            latency = null;
+            blocked = null;
+            records = null;
+            bytes = null;
+            failed = null;
+        }
+
+    }
+
+    public Producer<K, V> getProducer() {
+        return producer;
+    }
+
+    public void send(ProducerRecord<K, V> record) {
+
+        if ( async )
+            dispatch( record );
+        else
+            sendBlocking( record );
+
+    }
+
+    /**
+     * Barrier: returns when every record handed to send() so far has been acknowledged or failed
+     * permanently.
+     */
+    public void flush() {
+
+        if ( !async ) {
+            producer.flush();
+            return;
+        }
+
+        producer.flush();
+
+        // all permits back means all callbacks have been executed
+        inFlight.acquireUninterruptibly( maxInFlight );
+        inFlight.release( maxInFlight );
+
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getAcked() {
+        return acked.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * The retries of the producer (record-retry-total), of all topics which share it.
+     */
+    public long getRetries() {
+        for( Map.Entry<MetricName, ? extends Metric> e : producer.metrics().entrySet() ) {
+            if ( "record-retry-total".equals( e.getKey().name() ) && "producer-metrics".equals( e.getKey().group() ) )
+                return ( (Number) e.getValue().metricValue() ).longValue();
+        }
+        return 0;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public String stats() {
+        return "sent=" + sent.get() +
+                ", acked=" + acked.get() +
+                ", errors=" + errors.get() +
+                ", retries=" + getRetries() +
+                ", inFlight=" + getInFlight() +
+                ", mode=" + ( async ? "async" : "sync" );
+    }
+
+    private void dispatch(final ProducerRecord<K, V> record) {
+
+        if ( !inFlight.tryAcquire() ) {
+            long t0 = System.nanoTime();
+            inFlight.acquireUninterruptibly();
+            if ( blocked != null )
+                blocked.since( t0 );
+        }
+        sent.incrementAndGet();
+
+        final long t0 = latency == null ? 0 : System.nanoTime();
+
+        try {
+            producer.send( record, new Callback() {
+                @Override
+                public void onCompletion(RecordMetadata metadata, Exception exception) {
+                    if ( latency != null && exception == null )
+                        acknowledged( t0, metadata );
+                    completed( record, exception );
+                }
+            });
+        }
+        catch (KafkaException ex) {
+            // serialization errors or a closed producer - the callback will never be called
+            error();
+            inFlight.release();
+            ex.printStackTrace();
+        }
+
+    }
+
+    private void acknowledged(long t0, RecordMetadata metadata) {
+        latency.since( t0 );
+        records.inc();
+        if ( metadata != null )
+            bytes.add( Math.max( 0, metadata.serializedKeySize() ) + Math.max( 0, metadata.serializedValueSize() ) );
+    }
+
+    private void error() {
+        errors.incrementAndGet();
+        if ( failed != null )
+            failed.inc();
+    }
+
+    private void completed(ProducerRecord<K, V> record, Exception exception) {
+
+        try {
+            if ( exception == null ) {
+                acked.incrementAndGet();
+            }
+            else {
+                error();
+                System.err.println( "[PUBLISH ERROR] topic=" + record.topic() + " key=" + record.key() + " : " + exception );
+            }
+        }
+        finally {
+            inFlight.release();
+        }
+
+    }
+
+    private void sendBlocking(ProducerRecord<K, V> record) {
+
+        sent.incrementAndGet();
+
+        long t0 = System.nanoTime();
+
+        try {
+            RecordMetadata metadata = producer.send( record ).get();
+            acked.incrementAndGet();
+            if ( latency != null )
+                acknowledged( t0, metadata );
+        }
+        catch (ExecutionException ex) {
+            error();
+            System.err.println( "[PUBLISH ERROR] topic=" + record.topic() + " key=" + record.key() + " : " + ex.getCause() );
+        }
+        catch (InterruptedException ex) {
+            error();
+            Thread.currentThread().interrupt();
+        }
+        catch (KafkaException ex) {
+            error();
+            ex.printStackTrace();
+        }
+
+    }
+
+}
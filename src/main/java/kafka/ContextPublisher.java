@@ -0,0 +1,358 @@
+package kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import datamodel.poi.Node;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Publishes the context data of a compacted topic incrementally.
+ *
+ * A content hash of every record value is kept per key in a state file (one per topic, in
+ * -Dcontext.state.dir). On the next start only new and changed records are sent, keys which are no
+ * longer there get a tombstone. Hashing and sending run in parallel batches, the state file is
+ * written after the flush barrier and only if no record failed, so failed records are sent again.
+ *
+ * The state file also holds the bootstrap servers it was written for: pointed at another cluster,
+ * all records are sent again instead of being taken for unchanged.
+ *
+ * If a key occurs more than once, only the last record is sent (compaction keeps the last one
+ * anyway). After the topic was deleted or re-created run once with -Dcontext.full=true.
+ *
+ *    -Dcontext.state.dir=./context-state  -Dcontext.full=false
+ *    -Dcontext.batch.size=1000  -Dcontext.threads=<cores>
+ */
+public class ContextPublisher<V> {
+
+    public static String STATE_DIR = System.getProperty( "context.state.dir", "./context-state" );
+    public static boolean FULL = Boolean.getBoolean( "context.full" );
+    public static int BATCH_SIZE = Integer.getInteger( "context.batch.size", 1000 );
+    public static int THREADS = Integer.getInteger( "context.threads", Runtime.getRuntime().availableProcessors() );
+
+    /**
+     * The property of the state file with the cluster, record keys never start with '@'.
+     */
+    static final String CLUSTER = "@cluster";
+
+    static final ObjectMapper mapper = new ObjectMapper().configure( MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true );
+
+    public interface Key<V> {
+        String of(V value);
+    }
+
+    /**
+     * Stations, plants and regions are keyed by their id.
+     */
+    public static final Key<Node> NODE_ID = new Key<Node>() {
+        @Override
+        public String of(Node n) {
+            return n.id;
+        }
+    };
+
+    /**
+     * The outcome of one publish() call.
+     */
+    public static class Counts {
+
+        public int created;
+        public int changed;
+        public int unchanged;
+        public int deleted;
+        public long errors;
+        public long ms;
+
+        public int sent() {
+            return created + changed + deleted;
+        }
+
+        @Override
+        public String toString() {
+            return created + " new, " + changed + " changed, " + unchanged + " unchanged, " + deleted + " deleted, " +
+                    errors + " errors (" + ms + " ms)";
+        }
+
+    }
+
+    final String topic;
+    final AsyncPublisher<String, V> publisher;
+    final Key<? super V> key;
+    final File stateFile;
+    final String cluster;
+
+    public ContextPublisher(String topic, AsyncPublisher<String, V> publisher, Key<? super V> key) {
+        this( topic, publisher, key, new File( STATE_DIR, topic + ".hashes" ), ProducerRegistry.bootstrapServers() );
+    }
+
+    /**
+     * @param cluster identifies the cluster the state belongs to, e.g. the bootstrap servers
+     */
+    public ContextPublisher(String topic, AsyncPublisher<String, V> publisher, Key<? super V> key, File stateFile, String cluster) {
+        this.topic = topic;
+        this.publisher = publisher;
+        this.key = key;
+        this.stateFile = stateFile;
+        this.cluster = cluster == null ? "" : cluster;
+    }
+
+    /**
+     * Sends only the new and changed records of the list (since the last call or start) and
+     * tombstones for the keys which are gone. Returns after the flush barrier.
+     */
+    public Counts publish(final List<V> values) {
+
+        long t0 = System.currentTimeMillis();
+
+        Map<String, String> previous = FULL ? new HashMap<String, String>() : load( stateFile, cluster );
+
+        final int n = values.size();
+        final String[] keys = new String[n];
+        final String[] hashes = new String[n];
+
+        inBatches( n, new Batch() {
+            @Override
+            public void run(int from, int to) {
+                for( int i = from; i < to; i++ ) {
+                    V v = values.get( i );
+                    keys[i] = key.of( v );
+                    hashes[i] = hash( v );
+                }
+            }
+        });
+
+        // the last value of a key wins
+        Map<String, Integer> last = new HashMap<>( (int) ( n / 0.75f ) + 1 );
+        for( int i = 0; i < n; i++ ) {
+            if ( keys[i] != null )
+                last.put( keys[i], i );
+        }
+
+        Counts counts = new Counts();
+        Map<String, String> current = new HashMap<>( (int) ( last.size() / 0.75f ) + 1 );
+
+        int[] send = new int[last.size()];
+        int sends = 0;
+        for( int i = 0; i < n; i++ ) {
+
+            if ( keys[i] == null || last.get( keys[i] ) != i )
+                continue;
+
+            current.put( keys[i], hashes[i] );
+
+            String before = previous.get( keys[i] );
+            if ( before == null )
+                counts.created++;
+            else if ( !before.equals( hashes[i] ) )
+                counts.changed++;
+            else {
+                counts.unchanged++;
+                continue;
+            }
+            send[sends++] = i;
+
+        }
+
+        final List<String> gone = new ArrayList<>();
+        for( String k : previous.keySet() ) {
+            if ( !current.containsKey( k ) )
+                gone.add( k );
+        }
+        counts.deleted = gone.size();
+
+        long errors = publisher.getErrors();
+
+        final int[] indexes = send;
+        inBatches( sends, new Batch() {
+            @Override
+            public void run(int from, int to) {
+                for( int j = from; j < to; j++ ) {
+                    int i = indexes[j];
+                    publisher.send( new ProducerRecord<String, V>( topic, keys[i], values.get( i ) ) );
+                }
+            }
+        });
+
+        inBatches( gone.size(), new Batch() {
+            @Override
+            public void run(int from, int to) {
+                for( int j = from; j < to; j++ ) {
+                    publisher.send( new ProducerRecord<String, V>( topic, gone.get( j ), null ) );
+                }
+            }
+        });
+
+        publisher.flush();
+
+        counts.errors = publisher.getErrors() - errors;
+        if ( counts.errors == 0 ) {
+            if ( counts.sent() > 0 || FULL || !stateFile.exists() )
+                save( stateFile, current, cluster );
+        }
+        else {
+            System.err.println( "[CONTEXT] " + topic + " : " + counts.errors + " records failed, the state is not saved" );
+        }
+
+        counts.ms = System.currentTimeMillis() - t0;
+        return counts;
+
+    }
+
+    /**
+     * The SHA-256 of the JSON of the value (properties in alphabetical order), truncated to its first
+     * 128 bits, as 32 hex digits. Plenty to tell changed records apart, half the size in the state file.
+     */
+    static String hash(Object value) {
+
+        try {
+            MessageDigest md = MessageDigest.getInstance( "SHA-256" );
+            byte[] digest = md.digest( mapper.writeValueAsBytes( value ) );
+
+            StringBuilder sb = new StringBuilder( 32 );
+            for( int i = 0; i < 16; i++ ) {
+                sb.append( Character.forDigit( ( digest[i] >> 4 ) & 0xF, 16 ) );
+                sb.append( Character.forDigit( digest[i] & 0xF, 16 ) );
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException( "Can not hash " + value, e );
+        }
+
+    }
+
+    /**
+     * The hashes of the state file, none if it was written for another cluster.
+     */
+    static Map<String, String> load(File f, String cluster) {
+
+        Map<String, String> hashes = new HashMap<>();
+        if ( !f.canRead() )
+            return hashes;
+
+        Properties p = new Properties();
+        try ( InputStream in = new FileInputStream( f ) ) {
+            p.load( in );
+        }
+        catch (IOException e) {
+            System.err.println( "[CONTEXT] Can not read " + f.getAbsolutePath() + ", all records are sent : " + e );
+            return hashes;
+        }
+
+        String written = p.getProperty( CLUSTER );
+        if ( !cluster.equals( written ) ) {
+            System.out.println( "[CONTEXT] " + f.getName() + " was written for cluster [" + written + "], not [" + cluster + "], all records are sent" );
+            return hashes;
+        }
+
+        for( String k : p.stringPropertyNames() ) {
+            if ( !CLUSTER.equals( k ) )
+                hashes.put( k, p.getProperty( k ) );
+        }
+        return hashes;
+
+    }
+
+    /**
+     * Writes to a temporary file first, so a crash never leaves a partial state.
+     */
+    static void save(File f, Map<String, String> hashes, String cluster) {
+
+        Properties p = new Properties();
+        p.putAll( hashes );
+        p.setProperty( CLUSTER, cluster );
+
+        File dir = f.getAbsoluteFile().getParentFile();
+        File tmp = new File( dir, f.getName() + ".tmp" );
+
+        try {
+            Files.createDirectories( dir.toPath() );
+            try ( OutputStream out = new FileOutputStream( tmp ) ) {
+                p.store( out, "content hashes per key" );
+            }
+            Files.move( tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch (IOException e) {
+            System.err.println( "[CONTEXT] Can not write " + f.getAbsolutePath() + " : " + e );
+        }
+
+    }
+
+    interface Batch {
+        void run(int from, int to);
+    }
+
+    static void inBatches(int n, final Batch batch) {
+
+        int batches = ( n + BATCH_SIZE - 1 ) / BATCH_SIZE;
+
+        if ( batches <= 1 || THREADS <= 1 ) {
+            batch.run( 0, n );
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool( Math.min( THREADS, batches ), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "context-publisher" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>( batches );
+            for( int b = 0; b < batches; b++ ) {
+                final int from = b * BATCH_SIZE;
+                final int to = Math.min( n, from + BATCH_SIZE );
+                futures.add( pool.submit( new Runnable() {
+                    @Override
+                    public void run() {
+                        batch.run( from, to );
+                    }
+                }) );
+            }
+
+            for( Future<?> future : futures ) {
+                future.get();
+            }
+
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while publishing context data", e );
+        }
+        catch (ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException( e.getCause() );
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+    }
+
+}
@@ -1,9 +1,5 @@
 package kafka;
 
-import datamodel.graph_of_things.nodes.Station;
-import kafka.dataassets.producers.GridLinkProducer;
-import org.apache.kafka.clients.producer.Producer;
-
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -13,8 +9,6 @@ public class GenericProducerFactory {
 
     public static String namespace = "cp-tsdata.demo-2.";
 
-    public static Producer producer = null;
-
     public static Properties getClientProperties() {
 
         File f = new File( "./ccloud.props"  );
@@ -37,16 +31,22 @@ public class GenericProducerFactory {
 
     }
 
+    /**
+     * Barrier for all records sent so far, on all topics.
+     */
     public static void flush() {
 
-        producer.flush();
+        ProducerRegistry.flushAll();
+
+    }
 
+    public static String stats() {
+        return ProducerRegistry.stats();
     }
 
     public static void close() {
 
-        producer.flush();
-        producer.close();
+        ProducerRegistry.closeAll();
 
     }
 }
@@ -0,0 +1,110 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Properties;
+
+/**
+ * Named producer tunings. A topic picks a profile, all topics with the same profile (and value
+ * serializer) share one producer instance in the {@link ProducerRegistry}.
+ *
+ * Every setting can be overridden in ccloud.props with the profile prefix, e.g.
+ *
+ *    high-throughput.compression.type=zstd
+ *    high-throughput.linger.ms=50
+ */
+public enum ProducerProfile {
+
+    /**
+     * For the hot measurement topic: large batches, some linger, compression, idempotent writes.
+     */
+    HIGH_THROUGHPUT("high-throughput") {
+        @Override
+        Properties defaults() {
+            Properties p = new Properties();
+            p.put( ProducerConfig.LINGER_MS_CONFIG, "20" );
+            p.put( ProducerConfig.BATCH_SIZE_CONFIG, "262144" );
+            p.put( ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4" );
+            p.put( ProducerConfig.BUFFER_MEMORY_CONFIG, "67108864" );
+            p.put( ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true" );
+            p.put( ProducerConfig.ACKS_CONFIG, "all" );
+            p.put( ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "5" );
+            return p;
+        }
+    },
+
+    /**
+     * For the small context topics (regions, stations, plants, links) which are compacted tables:
+     * no linger, small batches, idempotent so a retry can not create a duplicate table update.
+     */
+    LOW_LATENCY("low-latency") {
+        @Override
+        Properties defaults() {
+            Properties p = new Properties();
+            p.put( ProducerConfig.LINGER_MS_CONFIG, "0" );
+            p.put( ProducerConfig.BATCH_SIZE_CONFIG, "16384" );
+            p.put( ProducerConfig.COMPRESSION_TYPE_CONFIG, "none" );
+            p.put( ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true" );
+            p.put( ProducerConfig.ACKS_CONFIG, "all" );
+            return p;
+        }
+        @Override
+        public String topicCleanupPolicy() {
+            return "compact";
+        }
+    };
+
+    private final String prefix;
+
+    ProducerProfile(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * The cleanup.policy the topics using this profile are expected to be created with.
+     */
+    public String topicCleanupPolicy() {
+        return "delete";
+    }
+
+    abstract Properties defaults();
+
+    /**
+     * Profile defaults, overridden by all "<prefix>.*" entries of the client properties.
+     */
+    Properties settings(Properties clientProperties) {
+
+        Properties p = defaults();
+
+        String pre = prefix + ".";
+        for( String k : clientProperties.stringPropertyNames() ) {
+            if ( k.startsWith( pre ) ) {
+                p.put( k.substring( pre.length() ), clientProperties.getProperty( k ) );
+            }
+        }
+
+        return p;
+
+    }
+
+    static boolean isProfileKey(String key) {
+        for( ProducerProfile profile : values() ) {
+            if ( key.startsWith( profile.prefix + "." ) )
+                return true;
+        }
+        return false;
+    }
+
+    public static ProducerProfile ofName(String name) {
+        for( ProducerProfile profile : values() ) {
+            if ( profile.name().equalsIgnoreCase( name ) || profile.prefix.equalsIgnoreCase( name ) )
+                return profile;
+        }
+        throw new IllegalArgumentException( "Unknown producer profile: " + name );
+    }
+
+}
@@ -0,0 +1,203 @@
+package kafka;
+
+import metrics.Gauge;
+import metrics.Metrics;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Owns all Kafka producers of the application.
+ *
+ * The client properties are read once, one producer (and therefore one set of broker connections
+ * and one metadata cache) is created per profile and value serializer, and every topic gets its own
+ * typed {@link AsyncPublisher} on top of the shared producer.
+ *
+ * The profile of a topic can be changed at runtime with -Dproducer.profile.<topic>=<profile>, where
+ * <topic> is the topic name without the namespace, e.g. -Dproducer.profile.grid-stations=high-throughput
+ *
+ * The publishers report to Metrics with the topic name without namespace, the fill level of the
+ * record buffer of each producer (buffer.memory) is the gauge producer.<profile>.<serializer>.buffer.used (%).
+ */
+public class ProducerRegistry {
+
+    public static String DEFAULT_KEY_SERIALIZER = "org.apache.kafka.common.serialization.StringSerializer";
+    public static String DEFAULT_VALUE_SERIALIZER = "io.confluent.kafka.serializers.KafkaJsonSerializer";
+
+    static Properties clientProperties = null;
+
+    static final Map<String, Producer<String, Object>> producers = new LinkedHashMap<>();
+    static final Map<String, AsyncPublisher<String, ?>> publishers = new LinkedHashMap<>();
+
+    static boolean shutdownHookInstalled = false;
+
+    public static <V> AsyncPublisher<String, V> publisher(String topic, ProducerProfile defaultProfile, String appId) {
+        return publisher( topic, defaultProfile, DEFAULT_VALUE_SERIALIZER, appId );
+    }
+
+    @SuppressWarnings("unchecked")
+    public static synchronized <V> AsyncPublisher<String, V> publisher(String topic, ProducerProfile defaultProfile, String valueSerializer, String appId) {
+
+        AsyncPublisher<String, ?> p = publishers.get( topic );
+
+        if ( p == null ) {
+
+            ProducerProfile profile = profileFor( topic, defaultProfile );
+
+            String producerKey = profile.getPrefix() + "|" + valueSerializer;
+
+            Producer<String, Object> producer = producers.get( producerKey );
+            if ( producer == null ) {
+                producer = new KafkaProducer<>( propertiesFor( profile, valueSerializer, appId ) );
+                producers.put( producerKey, producer );
+                bufferGauge( "producer." + profile.getPrefix() + "." + valueSerializer.substring( valueSerializer.lastIndexOf( '.' ) + 1 ), producer );
+                System.out.println( ">>> Created producer [" + producerKey + "]" );
+            }
+
+            p = new AsyncPublisher<>( producer, shortName( topic ) );
+            publishers.put( topic, p );
+
+            System.out.println( ">>> Topic " + topic + " uses producer profile " + profile.getPrefix() );
+
+            installShutdownHook();
+
+        }
+
+        return (AsyncPublisher<String, V>) p;
+
+    }
+
+    public static ProducerProfile profileFor(String topic, ProducerProfile defaultProfile) {
+
+        String override = System.getProperty( "producer.profile." + shortName( topic ) );
+
+        return override == null ? defaultProfile : ProducerProfile.ofName( override );
+
+    }
+
+    /**
+     * The topic name without the namespace.
+     */
+    public static String shortName(String topic) {
+        return topic.startsWith( GenericProducerFactory.namespace ) ? topic.substring( GenericProducerFactory.namespace.length() ) : topic;
+    }
+
+    /**
+     * Used part of the record buffer in percent, 100 means send() blocks (max.block.ms).
+     */
+    static void bufferGauge(String name, final Producer<String, Object> producer) {
+        Metrics.gauge( name + ".buffer.used", new Gauge() {
+            @Override
+            public double value() {
+                double available = Double.NaN;
+                double total = Double.NaN;
+                for( Map.Entry<MetricName, ? extends Metric> e : producer.metrics().entrySet() ) {
+                    if ( !"producer-metrics".equals( e.getKey().group() ) )
+                        continue;
+                    if ( "buffer-available-bytes".equals( e.getKey().name() ) )
+                        available = ( (Number) e.getValue().metricValue() ).doubleValue();
+                    else if ( "buffer-total-bytes".equals( e.getKey().name() ) )
+                        total = ( (Number) e.getValue().metricValue() ).doubleValue();
+                }
+                return total > 0 ? Math.round( 1000 * ( total - available ) / total ) / 10.0 : Double.NaN;
+            }
+        });
+    }
+
+    static synchronized Properties clientProperties() {
+        if ( clientProperties == null ) {
+            clientProperties = GenericProducerFactory.getClientProperties();
+        }
+        return clientProperties;
+    }
+
+    /**
+     * The bootstrap servers of the client properties, "" if there are none.
+     */
+    public static String bootstrapServers() {
+        return clientProperties().getProperty( ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "" );
+    }
+
+    static Properties propertiesFor(ProducerProfile profile, String valueSerializer, String appId) {
+
+        Properties base = clientProperties();
+
+        Properties props = new Properties();
+        for( String k : base.stringPropertyNames() ) {
+            if ( !ProducerProfile.isProfileKey( k ) )
+                props.put( k, base.getProperty( k ) );
+        }
+
+        props.putAll( profile.settings( base ) );
+
+        String clientId = props.getProperty( ProducerConfig.CLIENT_ID_CONFIG, appId );
+        props.put( ProducerConfig.CLIENT_ID_CONFIG, clientId + "-" + profile.getPrefix() );
+
+        props.put( ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, DEFAULT_KEY_SERIALIZER );
+        props.put( ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer );
+
+        return props;
+
+    }
+
+    public static synchronized void flushAll() {
+        for( AsyncPublisher<String, ?> p : publishers.values() ) {
+            p.flush();
+        }
+    }
+
+    public static synchronized String stats() {
+        StringBuilder sb = new StringBuilder();
+        for( Map.Entry<String, AsyncPublisher<String, ?>> e : publishers.entrySet() ) {
+            sb.append( e.getKey() ).append( " : " ).append( e.getValue().stats() ).append( "\n" );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Flushes all publishers and closes all producers. The registry can be used again afterwards.
+     */
+    public static synchronized void closeAll() {
+
+        for( AsyncPublisher<String, ?> p : publishers.values() ) {
+            try {
+                p.flush();
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        for( Producer<String, Object> producer : producers.values() ) {
+            producer.close( Duration.ofSeconds( 30 ) );
+        }
+
+        publishers.clear();
+        producers.clear();
+
+    }
+
+    private static void installShutdownHook() {
+
+        if ( shutdownHookInstalled )
+            return;
+
+        Runtime.getRuntime().addShutdownHook( new Thread( new Runnable() {
+            @Override
+            public void run() {
+                closeAll();
+            }
+        }, "producer-registry-shutdown" ) );
+
+        shutdownHookInstalled = true;
+
+    }
+
+}
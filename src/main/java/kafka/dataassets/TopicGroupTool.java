@@ -4,9 +4,12 @@ import datamodel.graph_of_things.nodes.PowerPlant;
 import datamodel.graph_of_things.nodes.Region;
 import datamodel.graph_of_things.nodes.Station;
 import datamodel.graph_of_things.relations.GridLink;
+import kafka.ContextPublisher;
 import kafka.dataassets.producers.*;
+import kafka.serde.LinkIdDictionary;
+import kafka.serde.SampleFormat;
 
-import java.util.Vector;
+import java.util.List;
 
 public class TopicGroupTool {
 
@@ -17,32 +20,48 @@ public class TopicGroupTool {
         PlantProducer.init( appID );
         StationProducer.init( appID );
         GridLinkProducer.init( appID );
+        LinkDictionaryProducer.init( appID );
 
     }
 
 
-    public static void storeLinkContextData(Vector<GridLink> gridLinks) {
+    /**
+     * The context topics are compacted, only changed records are sent, see ContextPublisher.
+     */
+    public static void storeLinkContextData(List<GridLink> gridLinks) {
+        report( GridLinkProducer.TOPIC, GridLinkProducer.publish( gridLinks ) );
+    }
+
+    /**
+     * Assigns the link ordinals for the binary sample format and publishes them once.
+     */
+    public static void storeLinkDictionary(List<GridLink> gridLinks) {
+        LinkIdDictionary dictionary = LinkIdDictionary.shared();
         for( GridLink link : gridLinks ) {
-            GridLinkProducer.sendSample( link );
+            dictionary.assign( link.id );
+        }
+        if ( PowerSampleProducer.format == SampleFormat.BINARY ) {
+            for( LinkIdDictionary.Entry e : dictionary.entries() ) {
+                LinkDictionaryProducer.sendSample( e );
+            }
+            LinkDictionaryProducer.flush();
         }
     }
 
-    public static void storeStationContextData(Vector<Station> stations) {
-        for( Station s : stations ) {
-            StationProducer.sendSample( s );
-        }
+    public static void storeStationContextData(List<Station> stations) {
+        report( StationProducer.TOPIC, StationProducer.publish( stations ) );
     }
 
-    public static void storeRegionContextData(Vector<Region> regions) {
-        for( Region r : regions ) {
-            RegionProducer.sendSample( r );
-        }
+    public static void storeRegionContextData(List<Region> regions) {
+        report( RegionProducer.TOPIC, RegionProducer.publish( regions ) );
     }
 
-    public static void storePlantContextData(Vector<PowerPlant> powerPlants) {
-        for( PowerPlant p : powerPlants ) {
-            PlantProducer.sendSample( p );
-        }
+    public static void storePlantContextData(List<PowerPlant> powerPlants) {
+        report( PlantProducer.TOPIC, PlantProducer.publish( powerPlants ) );
+    }
+
+    static void report( String topic, ContextPublisher.Counts counts ) {
+        System.out.println( "[CONTEXT] " + topic + " : " + counts );
     }
 
 }
@@ -0,0 +1,100 @@
+package kafka.dataassets.producers;
+
+import datamodel.graph_of_things.LinkContextCache;
+import datamodel.measurement.SampleBuffer;
+import kafka.AsyncPublisher;
+import kafka.GenericProducerFactory;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import kafka.serde.EnrichedSampleEncoder;
+import org.apache.kafka.clients.producer.*;
+import metrics.Histogram;
+import metrics.Metrics;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+/**
+ * Publishes the flow samples together with the context of their link (endpoints, countries,
+ * coordinates, regions) to a separate topic, see EnrichedSampleEncoder.
+ *
+ * The context comes from a LinkContextCache. refresh() replaces it when a new grid model version is
+ * published, ticks which are running keep the encoder they started with.
+ */
+public class EnrichedSampleProducer extends GenericProducerFactory {
+
+    static String TOPIC = namespace + "grid-link-flow-enriched";
+
+    static AsyncPublisher<String, byte[]> publisher = null;
+
+    static String[] linkIds = new String[0];
+    static LinkContextCache cache = null;
+
+    static volatile EnrichedSampleEncoder encoder = null;
+
+    static final Histogram encodeTime = Metrics.histogram( ProducerRegistry.shortName( TOPIC ) + ".encode" );
+
+    public static void init( String appId ) {
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.HIGH_THROUGHPUT, ByteArraySerializer.class.getName(), appId );
+    }
+
+    /**
+     * The link ids of the SampleBuffer ordinals.
+     */
+    public static synchronized void useLinks( String[] ids ) {
+        linkIds = ids;
+        rebuild();
+    }
+
+    /**
+     * Takes the context of a new grid model version.
+     */
+    public static synchronized void refresh( LinkContextCache c ) {
+        cache = c;
+        rebuild();
+        System.out.println( "> Link context version " + c.version() + " (" + c.size() + " links)" );
+    }
+
+    private static void rebuild() {
+        if ( cache != null )
+            encoder = new EnrichedSampleEncoder( linkIds, cache );
+    }
+
+    /**
+     * Publishes the slots [from, to) of the buffer, may be called from several threads.
+     */
+    public static void sendSamples( SampleBuffer buffer, int from, int to ) {
+
+        EnrichedSampleEncoder e = encoder;
+        if ( e == null )
+            return;
+
+        for( int i = from; i < to; i++ ) {
+
+            try {
+                byte[] value;
+                if ( ( i & PowerSampleProducer.ENCODE_SAMPLING_MASK ) == 0 ) {
+                    long t0 = System.nanoTime();
+                    value = e.encode( buffer, i );
+                    encodeTime.since( t0 );
+                }
+                else {
+                    value = e.encode( buffer, i );
+                }
+                publisher.send( new ProducerRecord<String,byte[]>( TOPIC, e.linkId( buffer.link[i] ), value ) );
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
+
+        }
+
+    }
+
+    public static void flush() {
+        publisher.flush();
+    }
+
+    public static String stats() {
+        return publisher.stats();
+    }
+
+}
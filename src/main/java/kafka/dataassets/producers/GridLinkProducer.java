@@ -1,49 +1,40 @@
 package kafka.dataassets.producers;
 
-
 import datamodel.graph_of_things.relations.GridLink;
+import kafka.AsyncPublisher;
+import kafka.ContextPublisher;
 import kafka.GenericProducerFactory;
-import org.apache.kafka.clients.producer.*;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
-import java.util.Properties;
+import java.util.List;
 
 public class GridLinkProducer extends GenericProducerFactory {
 
-    static String TOPIC = namespace + "grid-static-links";
+    public static String TOPIC = namespace + "grid-static-links";
 
-    // public static Producer<String, GridLink> producer = null;
+    static AsyncPublisher<String, GridLink> publisher = null;
+    static ContextPublisher<GridLink> context = null;
 
     public static void init( String appId ) {
-        Properties props = GenericProducerFactory.getClientProperties();
-        producer = createProducer( props, appId );
-    }
-
-    private static Producer<String, GridLink> createProducer(Properties props, String appId) {
-
-        if( props.get( ProducerConfig.CLIENT_ID_CONFIG ) == null )
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, appId);
-
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "io.confluent.kafka.serializers.KafkaJsonSerializer");
-
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-
-
-        return new KafkaProducer<>(props);
-
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.LOW_LATENCY, appId );
+        context = new ContextPublisher<>( TOPIC, publisher, new ContextPublisher.Key<GridLink>() {
+            @Override
+            public String of(GridLink l) {
+                return l.id;
+            }
+        });
     }
 
     public static void sendSample( GridLink s ) {
 
-        long time = System.currentTimeMillis();
-
         try {
 
-            RecordMetadata metadata = null;
-
             final ProducerRecord<String, GridLink> record =
                     new ProducerRecord<String, GridLink>(TOPIC, s.id, s );
 
-            producer.send(record).get();
+            publisher.send( record );
 
         }
         catch (Exception ex) {
@@ -52,4 +43,19 @@ public class GridLinkProducer extends GenericProducerFactory {
 
     };
 
+    /**
+     * See ContextPublisher.publish(List).
+     */
+    public static ContextPublisher.Counts publish( List<GridLink> all ) {
+        return context.publish( all );
+    }
+
+    public static void flush() {
+        publisher.flush();
+    }
+
+    public static String stats() {
+        return publisher.stats();
+    }
+
 }
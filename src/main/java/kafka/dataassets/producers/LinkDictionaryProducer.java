@@ -0,0 +1,47 @@
+package kafka.dataassets.producers;
+
+import kafka.AsyncPublisher;
+import kafka.GenericProducerFactory;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import kafka.serde.LinkIdDictionary;
+import org.apache.kafka.clients.producer.*;
+
+/**
+ * Publishes the link id dictionary used by the binary sample format, keyed by ordinal.
+ */
+public class LinkDictionaryProducer extends GenericProducerFactory {
+
+    public static String TOPIC = namespace + "grid-link-dictionary";
+
+    static AsyncPublisher<String, LinkIdDictionary.Entry> publisher = null;
+
+    public static void init( String appId ) {
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.LOW_LATENCY, appId );
+    }
+
+    public static void sendSample( LinkIdDictionary.Entry e ) {
+
+        try {
+
+            final ProducerRecord<String, LinkIdDictionary.Entry> record =
+                    new ProducerRecord<String, LinkIdDictionary.Entry>(TOPIC, e.ordinal + "", e );
+
+            publisher.send( record );
+
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+    }
+
+    public static void flush() {
+        publisher.flush();
+    }
+
+    public static String stats() {
+        return publisher.stats();
+    }
+
+}
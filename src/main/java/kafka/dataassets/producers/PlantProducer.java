@@ -1,36 +1,35 @@
 package kafka.dataassets.producers;
 
 import datamodel.graph_of_things.nodes.PowerPlant;
+import kafka.AsyncPublisher;
+import kafka.ContextPublisher;
 import kafka.GenericProducerFactory;
-import org.apache.kafka.clients.producer.*;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
-import java.util.Properties;
+import java.util.List;
 
 public class PlantProducer extends GenericProducerFactory {
 
-    static Properties props;
+    public static String TOPIC = namespace + "grid-plants";
 
-    static String TOPIC = namespace + "grid-plants";
-
-    // static Producer<String, PowerPlant> producer = null;
+    static AsyncPublisher<String, PowerPlant> publisher = null;
+    static ContextPublisher<PowerPlant> context = null;
 
     public static void init( String appId ) {
-        Properties props = GenericProducerFactory.getClientProperties();
-        producer = createProducer( props, appId );
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.LOW_LATENCY, appId );
+        context = new ContextPublisher<>( TOPIC, publisher, ContextPublisher.NODE_ID );
     }
 
     public static void sendSample( PowerPlant p ) {
 
-        long time = System.currentTimeMillis();
-
         try {
 
-            RecordMetadata metadata = null;
-
             final ProducerRecord<String, PowerPlant> record =
                     new ProducerRecord<String,PowerPlant>(TOPIC, p.id, p );
 
-            producer.send(record).get();
+            publisher.send( record );
 
         }
         catch (Exception ex) {
@@ -39,17 +38,19 @@ public class PlantProducer extends GenericProducerFactory {
 
     }
 
-    public static Producer<String, PowerPlant> createProducer(Properties props, String appID) {
-
-        if( props.get( ProducerConfig.CLIENT_ID_CONFIG ) == null )
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, appID);
-
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "io.confluent.kafka.serializers.KafkaJsonSerializer");
-
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
+    /**
+     * See ContextPublisher.publish(List).
+     */
+    public static ContextPublisher.Counts publish( List<PowerPlant> all ) {
+        return context.publish( all );
+    }
 
-        return new KafkaProducer<>(props);
+    public static void flush() {
+        publisher.flush();
+    }
 
+    public static String stats() {
+        return publisher.stats();
     }
 
 }
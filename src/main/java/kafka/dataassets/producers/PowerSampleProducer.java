@@ -2,37 +2,58 @@ package kafka.dataassets.producers;
 
 import datamodel.measurement.PowerFlowSample;
 
+import datamodel.measurement.SampleBuffer;
+import kafka.AsyncPublisher;
 import kafka.GenericProducerFactory;
-import org.apache.kafka.clients.producer.*;
-
-import java.util.Properties;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import kafka.serde.LinkIdDictionary;
+import kafka.serde.SampleEncoder;
+import kafka.serde.SampleFormat;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import metrics.Histogram;
+import metrics.Metrics;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 
 public class PowerSampleProducer extends GenericProducerFactory {
 
-    static Properties props;
-
     static String TOPIC = namespace + "grid-link-flow-data";
 
-    // static Producer<String, PowerFlowSample> producer = null;
+    /**
+     * The record values are encoded by the SampleEncoder of the format (same bytes as the format's
+     * serializer), so samples can be published straight from a SampleBuffer.
+     */
+    static AsyncPublisher<String, byte[]> publisher = null;
+
+    public static SampleFormat format = SampleFormat.configured();
+
+    static SampleEncoder encoder = format.encoder( new String[0], LinkIdDictionary.shared() );
+
+    /**
+     * Encoding time of every 64th record, timing each one would cost more than the encoding.
+     */
+    static final Histogram encodeTime = Metrics.histogram( ProducerRegistry.shortName( TOPIC ) + ".encode" );
+    static final int ENCODE_SAMPLING_MASK = 63;
 
     public static void init( String appId ) {
-        Properties props = GenericProducerFactory.getClientProperties();
-        producer = createProducer( props, appId );
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.HIGH_THROUGHPUT, ByteArraySerializer.class.getName(), appId );
     }
 
-    public static void sendSample( PowerFlowSample sample ) {
-
+    /**
+     * The link ids of the SampleBuffer ordinals, call this after the link dictionary is complete.
+     */
+    public static void useLinks( String[] linkIds ) {
+        encoder = format.encoder( linkIds, LinkIdDictionary.shared() );
+    }
 
-        long time = System.currentTimeMillis();
+    public static void sendSample( PowerFlowSample sample ) {
 
         try {
 
-            RecordMetadata metadata = null;
-
-            final ProducerRecord<String, PowerFlowSample> record =
-                    new ProducerRecord<String,PowerFlowSample>(TOPIC, sample.id, sample );
+            final ProducerRecord<String, byte[]> record =
+                    new ProducerRecord<String,byte[]>(TOPIC, sample.id, encoder.encode( sample ) );
 
-            producer.send(record).get();
+            publisher.send( record );
 
         }
         catch (Exception ex) {
@@ -41,23 +62,39 @@ public class PowerSampleProducer extends GenericProducerFactory {
 
     }
 
-    private static Producer<String, PowerFlowSample> createProducer(Properties props, String appId) {
+    /**
+     * Publishes the slots [from, to) of the buffer, may be called from several threads.
+     */
+    public static void sendSamples( SampleBuffer buffer, int from, int to ) {
+
+        for( int i = from; i < to; i++ ) {
+
+            try {
+                byte[] value;
+                if ( ( i & ENCODE_SAMPLING_MASK ) == 0 ) {
+                    long t0 = System.nanoTime();
+                    value = encoder.encode( buffer, i );
+                    encodeTime.since( t0 );
+                }
+                else {
+                    value = encoder.encode( buffer, i );
+                }
+                publisher.send( new ProducerRecord<String,byte[]>( TOPIC, encoder.linkId( buffer.link[i] ), value ) );
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
 
-        if( props.get( ProducerConfig.CLIENT_ID_CONFIG ) == null )
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, appId);
-
-
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "io.confluent.kafka.serializers.KafkaJsonSerializer");
-
-
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-
-
-        return new KafkaProducer<>(props);
+        }
 
     }
 
+    public static void flush() {
+        publisher.flush();
+    }
 
-
+    public static String stats() {
+        return publisher.stats();
+    }
 
 }
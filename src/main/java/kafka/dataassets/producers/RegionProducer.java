@@ -1,34 +1,35 @@
 package kafka.dataassets.producers;
 
 import datamodel.graph_of_things.nodes.Region;
+import kafka.AsyncPublisher;
+import kafka.ContextPublisher;
 import kafka.GenericProducerFactory;
-import org.apache.kafka.clients.producer.*;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
-import java.util.Properties;
+import java.util.List;
 
 public class RegionProducer extends GenericProducerFactory {
 
-    static Properties props;
+    public static String TOPIC = namespace + "grid-regions";
 
-    static String TOPIC = namespace + "grid-regions";
-
-    // static Producer<String, Region> producer = null;
+    static AsyncPublisher<String, Region> publisher = null;
+    static ContextPublisher<Region> context = null;
 
     public static void init( String appId ) {
-        Properties props = GenericProducerFactory.getClientProperties();
-        producer = createProducer( props, appId );
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.LOW_LATENCY, appId );
+        context = new ContextPublisher<>( TOPIC, publisher, ContextPublisher.NODE_ID );
     }
 
     public static void sendSample( Region r ) {
 
         try {
 
-            RecordMetadata metadata = null;
-
             final ProducerRecord<String, Region> record =
                     new ProducerRecord<String,Region>(TOPIC, r.id, r );
 
-            producer.send(record).get();
+            publisher.send( record );
 
         }
         catch (Exception ex) {
@@ -37,19 +38,19 @@ public class RegionProducer extends GenericProducerFactory {
 
     }
 
-    private static Producer<String, Region> createProducer(Properties props, String appID) {
-
-        if( props.get( ProducerConfig.CLIENT_ID_CONFIG ) == null )
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, appID);
-
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "io.confluent.kafka.serializers.KafkaJsonSerializer");
-
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-
-        return new KafkaProducer<>(props);
-
+    /**
+     * See ContextPublisher.publish(List).
+     */
+    public static ContextPublisher.Counts publish( List<Region> all ) {
+        return context.publish( all );
     }
 
+    public static void flush() {
+        publisher.flush();
+    }
 
+    public static String stats() {
+        return publisher.stats();
+    }
 
 }
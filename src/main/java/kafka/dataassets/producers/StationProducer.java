@@ -1,34 +1,35 @@
 package kafka.dataassets.producers;
 
 import datamodel.graph_of_things.nodes.Station;
+import kafka.AsyncPublisher;
+import kafka.ContextPublisher;
 import kafka.GenericProducerFactory;
-import org.apache.kafka.clients.producer.*;
+import kafka.ProducerProfile;
+import kafka.ProducerRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
-import java.util.Properties;
+import java.util.List;
 
 public class StationProducer extends GenericProducerFactory {
 
-    static Properties props;
+    public static String TOPIC = namespace + "grid-stations";
 
-    static String TOPIC = namespace + "grid-stations";
+    static AsyncPublisher<String, Station> publisher = null;
+    static ContextPublisher<Station> context = null;
 
     public static void init( String appId ) {
-        Properties props = GenericProducerFactory.getClientProperties();
-        producer = createProducer( props, appId );
+        publisher = ProducerRegistry.publisher( TOPIC, ProducerProfile.LOW_LATENCY, appId );
+        context = new ContextPublisher<>( TOPIC, publisher, ContextPublisher.NODE_ID );
     }
 
     public static void sendSample( Station s ) {
 
-        long time = System.currentTimeMillis();
-
         try {
 
-            RecordMetadata metadata = null;
-
             final ProducerRecord<String, Station> record =
                     new ProducerRecord<String,Station>(TOPIC, s.id, s );
 
-            producer.send(record).get();
+            publisher.send( record );
 
         }
         catch (Exception ex) {
@@ -37,18 +38,19 @@ public class StationProducer extends GenericProducerFactory {
 
     }
 
-    private static Producer<String, Station> createProducer(Properties props, String appId) {
-
-        if( props.get( ProducerConfig.CLIENT_ID_CONFIG ) == null )
-            props.put(ProducerConfig.CLIENT_ID_CONFIG, appId);
-
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "io.confluent.kafka.serializers.KafkaJsonSerializer");
-
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-
-        return new KafkaProducer<>(props);
+    /**
+     * See ContextPublisher.publish(List).
+     */
+    public static ContextPublisher.Counts publish( List<Station> all ) {
+        return context.publish( all );
+    }
 
+    public static void flush() {
+        publisher.flush();
     }
 
+    public static String stats() {
+        return publisher.stats();
+    }
 
 }
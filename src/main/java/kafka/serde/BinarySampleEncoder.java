@@ -0,0 +1,52 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed width records of PowerFlowSampleBinarySerializer, the dictionary ordinals of the links
+ * are looked up once when the encoder is created.
+ */
+public class BinarySampleEncoder extends SampleEncoder {
+
+    final LinkIdDictionary dictionary;
+    final int[] ordinals;
+
+    public BinarySampleEncoder(String[] linkIds, LinkIdDictionary dictionary) {
+
+        super( linkIds );
+
+        this.dictionary = dictionary;
+        this.ordinals = new int[linkIds.length];
+        for( int i = 0; i < linkIds.length; i++ ) {
+            ordinals[i] = dictionary.ordinalOf( linkIds[i] );
+        }
+
+    }
+
+    @Override
+    int maxRecordSize() {
+        return PowerFlowSampleBinarySerializer.RECORD_SIZE;
+    }
+
+    @Override
+    public void encode(SampleBuffer buffer, int slot, ByteBuffer out) {
+
+        int link = buffer.link[slot];
+        int ordinal = ordinals[link];
+        if ( ordinal < 0 )
+            throw new SerializationException( "Link id " + linkIds[link] + " is not in the link dictionary." );
+
+        PowerFlowSampleBinarySerializer.encode( out, ordinal, buffer.ts[slot], buffer.flow[slot] );
+
+    }
+
+    @Override
+    public byte[] encode(PowerFlowSample sample) {
+        return new PowerFlowSampleBinarySerializer( dictionary ).serialize( null, sample );
+    }
+
+}
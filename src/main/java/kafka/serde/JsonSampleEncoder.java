@@ -0,0 +1,147 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The JSON document KafkaJsonSerializer writes for a PowerFlowSample:
+ *
+ *    {"id":"ST1-ST2","ts":1600000000000,"flow":98.7}
+ *
+ * The part up to the timestamp is encoded once per link, the numbers are written through a reused
+ * StringBuilder, so they are formatted exactly like Jackson does (Double.toString).
+ */
+public class JsonSampleEncoder extends SampleEncoder {
+
+    static final byte[] FLOW = ",\"flow\":".getBytes( StandardCharsets.UTF_8 );
+    static final byte END = '}';
+
+    // longest number: -9223372036854775808 / -1.7976931348623157E308 / "-Infinity"
+    static final int MAX_NUMBERS = 2 * 24 + FLOW.length + 1;
+
+    final byte[][] prefixes;
+    final int maxRecordSize;
+
+    final ThreadLocal<StringBuilder> digits = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder( 32 );
+        }
+    };
+
+    public JsonSampleEncoder(String[] linkIds) {
+
+        super( linkIds );
+
+        this.prefixes = new byte[linkIds.length][];
+        int max = prefix( null ).length;
+        for( int i = 0; i < linkIds.length; i++ ) {
+            prefixes[i] = prefix( linkIds[i] );
+            max = Math.max( max, prefixes[i].length );
+        }
+        this.maxRecordSize = max + MAX_NUMBERS;
+
+    }
+
+    @Override
+    int maxRecordSize() {
+        return maxRecordSize;
+    }
+
+    @Override
+    public void encode(SampleBuffer buffer, int slot, ByteBuffer out) {
+        out.put( prefixes[ buffer.link[slot] ] );
+        numbers( buffer.ts[slot], buffer.flow[slot], out );
+        out.put( END );
+    }
+
+    @Override
+    public byte[] encode(PowerFlowSample sample) {
+
+        if ( sample == null )
+            return null;
+
+        byte[] prefix = prefix( sample.id );
+        ByteBuffer out = ByteBuffer.allocate( prefix.length + MAX_NUMBERS );
+        out.put( prefix );
+        numbers( sample.ts, sample.flow, out );
+        out.put( END );
+
+        byte[] bytes = new byte[out.position()];
+        out.flip();
+        out.get( bytes );
+        return bytes;
+
+    }
+
+    /**
+     * The timestamp and the flow value, without the closing brace.
+     */
+    void numbers(long ts, double flow, ByteBuffer out) {
+
+        StringBuilder sb = digits.get();
+        sb.setLength( 0 );
+        sb.append( ts );
+        ascii( sb, out );
+
+        out.put( FLOW );
+
+        sb.setLength( 0 );
+        if ( Double.isNaN( flow ) || Double.isInfinite( flow ) )
+            sb.append( '"' ).append( flow ).append( '"' );      // Jackson quotes non-numeric numbers
+        else
+            sb.append( flow );
+        ascii( sb, out );
+
+    }
+
+    private static void ascii(StringBuilder sb, ByteBuffer out) {
+        for( int i = 0; i < sb.length(); i++ ) {
+            out.put( (byte) sb.charAt( i ) );
+        }
+    }
+
+    static byte[] prefix(String id) {
+
+        StringBuilder sb = new StringBuilder( "{\"id\":" );
+        if ( id == null ) {
+            sb.append( "null" );
+        }
+        else {
+            sb.append( '"' );
+            escape( id, sb );
+            sb.append( '"' );
+        }
+        sb.append( ",\"ts\":" );
+
+        return sb.toString().getBytes( StandardCharsets.UTF_8 );
+
+    }
+
+    /**
+     * The escaping of Jackson's default JsonGenerator: quote, backslash and control characters.
+     */
+    static void escape(String s, StringBuilder sb) {
+        for( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            switch ( c ) {
+                case '"':  sb.append( "\\\"" ); break;
+                case '\\': sb.append( "\\\\" ); break;
+                case '\b': sb.append( "\\b" ); break;
+                case '\f': sb.append( "\\f" ); break;
+                case '\n': sb.append( "\\n" ); break;
+                case '\r': sb.append( "\\r" ); break;
+                case '\t': sb.append( "\\t" ); break;
+                default:
+                    if ( c < 0x20 )
+                        sb.append( String.format( "\\u%04X", (int) c ) );
+                    else
+                        sb.append( c );
+            }
+        }
+    }
+
+}
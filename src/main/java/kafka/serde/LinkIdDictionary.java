@@ -0,0 +1,159 @@
+package kafka.serde;
+
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the string ids of grid links (e.g. "1ST12345-2ST12345") to dense int ordinals, so that the
+ * binary sample format only has to carry 4 bytes per link id.
+ *
+ * The producer side assigns the ordinals and publishes every entry once to the dictionary topic,
+ * the consumer side loads that topic before it decodes samples.
+ */
+public class LinkIdDictionary {
+
+    static final LinkIdDictionary shared = new LinkIdDictionary();
+
+    /**
+     * The dictionary used by the serializer and deserializer instances Kafka creates by class name.
+     */
+    public static LinkIdDictionary shared() {
+        return shared;
+    }
+
+    final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    final List<String> ids = new ArrayList<>();
+
+    /**
+     * Returns the ordinal of the link id, assigns the next free ordinal for unknown ids.
+     */
+    public synchronized int assign(String id) {
+        Integer o = ordinals.get( id );
+        if ( o == null ) {
+            o = ids.size();
+            ids.add( id );
+            ordinals.put( id, o );
+        }
+        return o;
+    }
+
+    /**
+     * Registers an entry read from the dictionary topic.
+     */
+    public synchronized void register(int ordinal, String id) {
+        while ( ids.size() <= ordinal ) {
+            ids.add( null );
+        }
+        ids.set( ordinal, id );
+        ordinals.put( id, ordinal );
+    }
+
+    /**
+     * @return the ordinal or -1 if the id was never assigned
+     */
+    public int ordinalOf(String id) {
+        Integer o = ordinals.get( id );
+        return o == null ? -1 : o;
+    }
+
+    /**
+     * @return the link id or null if the ordinal is unknown
+     */
+    public synchronized String idOf(int ordinal) {
+        return ordinal >= 0 && ordinal < ids.size() ? ids.get( ordinal ) : null;
+    }
+
+    public int size() {
+        return ordinals.size();
+    }
+
+    public synchronized List<Entry> entries() {
+        List<Entry> l = new ArrayList<>( ids.size() );
+        for( int i = 0; i < ids.size(); i++ ) {
+            if ( ids.get( i ) != null )
+                l.add( new Entry( i, ids.get( i ) ) );
+        }
+        return l;
+    }
+
+    /**
+     * Reads the dictionary topic from the beginning up to the current end offsets.
+     *
+     * @param clientProperties connection settings, e.g. from ccloud.props
+     * @param topic the dictionary topic
+     */
+    public void loadFromTopic(Properties clientProperties, String topic) {
+
+        Properties props = new Properties();
+        props.putAll( clientProperties );
+        props.put( ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName() );
+        props.put( ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName() );
+        props.put( ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false" );
+
+        Gson gson = new Gson();
+
+        try ( KafkaConsumer<String, String> consumer = new KafkaConsumer<>( props ) ) {
+
+            List<TopicPartition> partitions = new ArrayList<>();
+            for( PartitionInfo pi : consumer.partitionsFor( topic ) ) {
+                partitions.add( new TopicPartition( topic, pi.partition() ) );
+            }
+
+            consumer.assign( partitions );
+            consumer.seekToBeginning( partitions );
+
+            Map<TopicPartition, Long> end = consumer.endOffsets( partitions );
+
+            while ( !reached( consumer, end ) ) {
+                ConsumerRecords<String, String> records = consumer.poll( Duration.ofMillis( 500 ) );
+                for( ConsumerRecord<String, String> r : records ) {
+                    if ( r.value() == null )
+                        continue;
+                    Entry e = gson.fromJson( r.value(), Entry.class );
+                    register( e.ordinal, e.id );
+                }
+            }
+
+        }
+
+        System.out.println( ">>> Loaded " + size() + " link ids from " + topic );
+
+    }
+
+    private static boolean reached(KafkaConsumer<String, String> consumer, Map<TopicPartition, Long> end) {
+        for( Map.Entry<TopicPartition, Long> e : end.entrySet() ) {
+            if ( consumer.position( e.getKey() ) < e.getValue() )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * One record of the dictionary topic.
+     */
+    public static class Entry {
+
+        public int ordinal;
+        public String id;
+
+        public Entry(int ordinal, String id) {
+            this.ordinal = ordinal;
+            this.id = id;
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes records written by {@link PowerFlowSampleBinarySerializer}.
+ *
+ * The link dictionary has to be loaded first (see {@link LinkIdDictionary#loadFromTopic}),
+ * samples for unknown ordinals get the id "#<ordinal>".
+ */
+public class PowerFlowSampleBinaryDeserializer implements Deserializer<PowerFlowSample> {
+
+    LinkIdDictionary dictionary = LinkIdDictionary.shared();
+
+    public PowerFlowSampleBinaryDeserializer() {
+    }
+
+    public PowerFlowSampleBinaryDeserializer(LinkIdDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public PowerFlowSample deserialize(String topic, byte[] data) {
+
+        if ( data == null )
+            return null;
+
+        if ( data.length != PowerFlowSampleBinarySerializer.RECORD_SIZE )
+            throw new SerializationException( "Unexpected record size " + data.length + " for a binary PowerFlowSample." );
+
+        ByteBuffer buffer = ByteBuffer.wrap( data );
+
+        byte version = buffer.get();
+        if ( version != PowerFlowSampleBinarySerializer.VERSION )
+            throw new SerializationException( "Unsupported binary PowerFlowSample version " + version );
+
+        int ordinal = buffer.getInt();
+        long ts = buffer.getLong();
+        double flow = buffer.getDouble();
+
+        String id = dictionary.idOf( ordinal );
+
+        return PowerFlowSample.of( id == null ? "#" + ordinal : id, ts, flow );
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed width encoding of a PowerFlowSample (21 bytes, big endian):
+ *
+ *    byte   : format version
+ *    int    : link ordinal from the {@link LinkIdDictionary}
+ *    long   : ts
+ *    double : flow
+ */
+public class PowerFlowSampleBinarySerializer implements Serializer<PowerFlowSample> {
+
+    public static final byte VERSION = 1;
+    public static final int RECORD_SIZE = 1 + 4 + 8 + 8;
+
+    LinkIdDictionary dictionary = LinkIdDictionary.shared();
+
+    public PowerFlowSampleBinarySerializer() {
+    }
+
+    public PowerFlowSampleBinarySerializer(LinkIdDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public byte[] serialize(String topic, PowerFlowSample sample) {
+
+        if ( sample == null )
+            return null;
+
+        int ordinal = dictionary.ordinalOf( sample.id );
+        if ( ordinal < 0 )
+            throw new SerializationException( "Link id " + sample.id + " is not in the link dictionary." );
+
+        byte[] bytes = new byte[RECORD_SIZE];
+        encode( ByteBuffer.wrap( bytes ), ordinal, sample.ts, sample.flow );
+        return bytes;
+
+    }
+
+    public static void encode(ByteBuffer buffer, int ordinal, long ts, double flow) {
+        buffer.put( VERSION );
+        buffer.putInt( ordinal );
+        buffer.putLong( ts );
+        buffer.putDouble( flow );
+    }
+
+}
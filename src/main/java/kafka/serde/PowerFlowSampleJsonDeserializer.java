@@ -0,0 +1,45 @@
+package kafka.serde;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import datamodel.measurement.PowerFlowSample;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads the JSON documents of the JSON sample format, {"id":..,"ts":..,"flow":..}. Additional
+ * fields (e.g. the context of an enriched sample) are ignored.
+ */
+public class PowerFlowSampleJsonDeserializer implements Deserializer<PowerFlowSample> {
+
+    static final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public PowerFlowSample deserialize(String topic, byte[] data) {
+
+        if ( data == null )
+            return null;
+
+        try {
+
+            JsonNode n = mapper.readTree( data );
+
+            JsonNode id = n.get( "id" );
+            JsonNode ts = n.get( "ts" );
+            JsonNode flow = n.get( "flow" );
+            if ( ts == null || flow == null )
+                throw new SerializationException( "Not a PowerFlowSample: " + n );
+
+            // NaN and Infinity are written as strings
+            return PowerFlowSample.of( id == null || id.isNull() ? null : id.asText(), ts.asLong(), flow.isTextual() ? Double.parseDouble( flow.asText() ) : flow.asDouble() );
+
+        }
+        catch (IOException e) {
+            throw new SerializationException( "Invalid JSON PowerFlowSample", e );
+        }
+
+    }
+
+}
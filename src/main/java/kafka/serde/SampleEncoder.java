@@ -0,0 +1,60 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes samples straight from a SampleBuffer into the wire format of a SampleFormat, the bytes
+ * are the same as the ones of the format's Kafka serializer.
+ *
+ * The link ordinals of the buffer are positions in the link id array given to the encoder. An
+ * encoder may be used by several threads, each thread gets its own scratch buffer.
+ */
+public abstract class SampleEncoder {
+
+    final String[] linkIds;
+
+    final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate( maxRecordSize() );
+        }
+    };
+
+    SampleEncoder(String[] linkIds) {
+        this.linkIds = linkIds;
+    }
+
+    public String linkId(int link) {
+        return linkIds[link];
+    }
+
+    /**
+     * Writes the sample in the given slot to out, nothing is allocated.
+     */
+    public abstract void encode(SampleBuffer buffer, int slot, ByteBuffer out);
+
+    /**
+     * For samples which are not in a buffer.
+     */
+    public abstract byte[] encode(PowerFlowSample sample);
+
+    /**
+     * The upper bound for the size of an encoded record of any of the links.
+     */
+    abstract int maxRecordSize();
+
+    /**
+     * @return the encoded sample as an array of its exact size (the record value handed to Kafka)
+     */
+    public byte[] encode(SampleBuffer buffer, int slot) {
+        ByteBuffer out = scratch.get();
+        out.clear();
+        encode( buffer, slot, out );
+        return Arrays.copyOf( out.array(), out.position() );
+    }
+
+}
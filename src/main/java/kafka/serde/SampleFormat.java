@@ -0,0 +1,62 @@
+package kafka.serde;
+
+import datamodel.measurement.PowerFlowSample;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Wire formats for the grid-link-flow-data topic, selected with -Dsample.format=json|binary.
+ */
+public enum SampleFormat {
+
+    /**
+     * Default, readable by ksqlDB with VALUE_FORMAT = 'JSON'.
+     */
+    JSON( "io.confluent.kafka.serializers.KafkaJsonSerializer", "io.confluent.kafka.serializers.KafkaJsonDeserializer" ),
+
+    /**
+     * Fixed width records, link ids resolved via the link dictionary topic.
+     */
+    BINARY( PowerFlowSampleBinarySerializer.class.getName(), PowerFlowSampleBinaryDeserializer.class.getName() );
+
+    public final String serializerClass;
+    public final String deserializerClass;
+
+    SampleFormat(String serializerClass, String deserializerClass) {
+        this.serializerClass = serializerClass;
+        this.deserializerClass = deserializerClass;
+    }
+
+    /**
+     * Encoder for samples in a SampleBuffer, the link ordinals of the buffer index linkIds.
+     */
+    public SampleEncoder encoder(String[] linkIds, LinkIdDictionary dictionary) {
+        return this == BINARY ? new BinarySampleEncoder( linkIds, dictionary ) : new JsonSampleEncoder( linkIds );
+    }
+
+    /**
+     * Serde for consumers of the topic (e.g. Kafka Streams), reading and writing the same bytes as
+     * the format's serializer.
+     */
+    public Serde<PowerFlowSample> serde(LinkIdDictionary dictionary) {
+
+        if ( this == BINARY )
+            return Serdes.serdeFrom( new PowerFlowSampleBinarySerializer( dictionary ), new PowerFlowSampleBinaryDeserializer( dictionary ) );
+
+        final SampleEncoder encoder = new JsonSampleEncoder( new String[0] );
+        Serializer<PowerFlowSample> serializer = new Serializer<PowerFlowSample>() {
+            @Override
+            public byte[] serialize(String topic, PowerFlowSample sample) {
+                return encoder.encode( sample );
+            }
+        };
+        return Serdes.serdeFrom( serializer, new PowerFlowSampleJsonDeserializer() );
+
+    }
+
+    public static SampleFormat configured() {
+        return valueOf( System.getProperty( "sample.format", "json" ).toUpperCase() );
+    }
+
+}
@@ -0,0 +1,167 @@
+package kafka.streams;
+
+import datamodel.graph_of_things.relations.GridLink;
+import kafka.GenericProducerFactory;
+import kafka.serde.LinkIdDictionary;
+import kafka.serde.SampleFormat;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyQueryMetadata;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.processor.TaskMetadata;
+import org.apache.kafka.streams.processor.ThreadMetadata;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the RegionTransferTopology in this process and answers interactive queries from its store.
+ *
+ * Only the partitions assigned to this instance are in the local store. With more than one instance
+ * (same application.id) the region pairs are spread over the instances: remote() finds the owner of
+ * a pair with KafkaStreams.queryMetadataForKey, its total can only be read there (queries are not
+ * forwarded). The newest window is the one of the local partitions.
+ *
+ *    -Dstreams.transfers=true  -Dstreams.window.ms=10000  -Dstreams.advance.ms=10000
+ *    -Dstreams.grace.ms=5000  -Dstreams.retention.ms=3600000  -Dstreams.state.dir=/tmp/kafka-streams
+ */
+public class RegionTransferService {
+
+    public static boolean enabled = Boolean.getBoolean( "streams.transfers" );
+
+    public static long WINDOW_MS = Long.getLong( "streams.window.ms", Long.getLong( "balance.window.ms", 10000 ) );
+    public static long ADVANCE_MS = Long.getLong( "streams.advance.ms", Long.getLong( "balance.advance.ms", WINDOW_MS ) );
+    public static long GRACE_MS = Long.getLong( "streams.grace.ms", 5000 );
+    public static long RETENTION_MS = Long.getLong( "streams.retention.ms", 3600000 );
+
+    static String TOPIC = GenericProducerFactory.namespace + "grid-link-flow-data";
+
+    final KafkaStreams streams;
+
+    volatile ReadOnlyWindowStore<String, Double> store = null;
+    volatile long newest = Long.MIN_VALUE;
+
+    public RegionTransferService(String appId, Topology topology) {
+
+        Properties props = GenericProducerFactory.getClientProperties();
+        props.put( StreamsConfig.APPLICATION_ID_CONFIG, GenericProducerFactory.namespace + appId + ".region-transfers" );
+        if ( System.getProperty( "streams.state.dir" ) != null )
+            props.put( StreamsConfig.STATE_DIR_CONFIG, System.getProperty( "streams.state.dir" ) );
+
+        this.streams = new KafkaStreams( topology, props );
+
+    }
+
+    /**
+     * Queries a store which is already there, e.g. the one of a TopologyTestDriver.
+     */
+    RegionTransferService(ReadOnlyWindowStore<String, Double> store) {
+        this.streams = null;
+        this.store = store;
+    }
+
+    /**
+     * The topology for the links of the grid, reading the configured sample format.
+     */
+    public static Topology topology(List<GridLink> links) {
+        return RegionTransferTopology.build( TOPIC, RegionTransferTopology.linkRegions( links ),
+                SampleFormat.configured().serde( LinkIdDictionary.shared() ), WINDOW_MS, ADVANCE_MS, GRACE_MS, RETENTION_MS );
+    }
+
+    public static RegionTransferService start(String appId, List<GridLink> links) throws InterruptedException {
+        RegionTransferService s = new RegionTransferService( appId, topology( links ) );
+        s.start( 60000 );
+        return s;
+    }
+
+    /**
+     * Starts the streams threads and waits until the state stores are restored.
+     */
+    public void start(long timeoutMs) throws InterruptedException {
+
+        streams.start();
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while( streams.state() != KafkaStreams.State.RUNNING ) {
+            if ( !streams.state().isRunningOrRebalancing() && streams.state() != KafkaStreams.State.CREATED )
+                throw new IllegalStateException( "Region transfer streams failed to start: " + streams.state() );
+            if ( System.currentTimeMillis() > deadline )
+                throw new IllegalStateException( "Region transfer streams not running after " + timeoutMs + " ms: " + streams.state() );
+            Thread.sleep( 100 );
+        }
+
+        System.out.println( "> Region transfers: " + WINDOW_MS + " ms windows every " + ADVANCE_MS + " ms in store " + RegionTransferTopology.STORE );
+
+    }
+
+    /**
+     * Where the pair is stored if it is not in the local store: host:port of the instance which holds
+     * it (if it has application.server set), "another instance" if not, "unavailable" while the
+     * streams rebalance.
+     *
+     * @return null if the pair is in the local store
+     */
+    public String remote(String fromCountry, String toCountry) {
+
+        if ( streams == null )
+            return null;
+
+        KeyQueryMetadata owner = streams.queryMetadataForKey( RegionTransferTopology.STORE,
+                RegionTransferTopology.key( fromCountry, toCountry ), Serdes.String().serializer() );
+        if ( owner == null || owner.getPartition() < 0 )
+            return "unavailable";
+
+        // the store partition is the partition of the repartition topic of the pairs
+        String repartition = RegionTransferTopology.PAIRS + "-repartition";
+        for( ThreadMetadata thread : streams.localThreadsMetadata() ) {
+            for( TaskMetadata task : thread.activeTasks() ) {
+                for( TopicPartition tp : task.topicPartitions() ) {
+                    if ( tp.partition() == owner.getPartition() && tp.topic().endsWith( repartition ) )
+                        return null;
+                }
+            }
+        }
+
+        HostInfo host = owner.getActiveHost();
+        return host == null || host.port() < 0 ? "another instance" : host.host() + ":" + host.port();
+
+    }
+
+    /**
+     * Only for a pair in the local store, see remote().
+     *
+     * @return the total of the pair in the latest complete window (see RegionTransferTopology.latestWindowStart),
+     * null if there is no flow in it (yet)
+     */
+    public Double latest(String fromCountry, String toCountry) {
+
+        ReadOnlyWindowStore<String, Double> s = store();
+
+        // stream time only moves forward, only the windows since the last query are scanned
+        newest = RegionTransferTopology.newestWindowStart( s, newest );
+        if ( newest == Long.MIN_VALUE )
+            return null;
+
+        return RegionTransferTopology.total( s, fromCountry, toCountry, RegionTransferTopology.latestWindowStart( newest, WINDOW_MS, ADVANCE_MS ) );
+
+    }
+
+    ReadOnlyWindowStore<String, Double> store() {
+        if ( store == null )
+            store = streams.store( StoreQueryParameters.fromNameAndType( RegionTransferTopology.STORE, QueryableStoreTypes.<String, Double>windowStore() ) );
+        return store;
+    }
+
+    public void close() {
+        if ( streams != null )
+            streams.close( Duration.ofSeconds( 30 ) );
+    }
+
+}
@@ -0,0 +1,176 @@
+package kafka.streams;
+
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KeyValueMapper;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Reducer;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.TimestampExtractor;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Windowed transfer totals per region pair, computed by Kafka Streams from grid-link-flow-data.
+ *
+ * Every sample is re-keyed by the region pair of its link ("BE->DE", the countries of source and
+ * target, a negative flow is counted in the other direction, like in RegionalBalance) and the
+ * flows are summed per pair in hopping windows on the sample timestamps. The sums are kept in the
+ * persistent window store STORE (RocksDB, with changelog) and can be read with interactive
+ * queries, see latest().
+ *
+ * The topology is plain, so it can be run offline with TopologyTestDriver.
+ */
+public class RegionTransferTopology {
+
+    public static final String STORE = "region-transfers";
+
+    public static final String SEPARATOR = "->";
+
+    /**
+     * The name of the re-keyed stream, its repartition topic is <application.id>-region-pairs-repartition.
+     */
+    public static final String PAIRS = "region-pairs";
+
+    /**
+     * The sample timestamp (the simulated time) instead of the time the record was produced.
+     */
+    public static class SampleTimestampExtractor implements TimestampExtractor {
+        @Override
+        public long extract(ConsumerRecord<Object, Object> record, long partitionTime) {
+            if ( record.value() instanceof PowerFlowSample )
+                return ( (PowerFlowSample) record.value() ).ts;
+            return record.timestamp();
+        }
+    }
+
+    /**
+     * The store key of a region pair.
+     */
+    public static String key(String fromCountry, String toCountry) {
+        return fromCountry + SEPARATOR + toCountry;
+    }
+
+    /**
+     * Source and target country per link id, from the regionContextTag of the links.
+     */
+    public static Map<String, String[]> linkRegions(List<GridLink> links) {
+        Map<String, String[]> regions = new HashMap<>( (int) ( links.size() / 0.75f ) + 1 );
+        for( GridLink l : links ) {
+            int arrow = l.regionContextTag.indexOf( SEPARATOR );
+            if ( arrow >= 0 )
+                regions.put( l.id, new String[] { l.regionContextTag.substring( 0, arrow ), l.regionContextTag.substring( arrow + SEPARATOR.length() ) } );
+        }
+        return regions;
+    }
+
+    /**
+     * @param linkRegions  source and target country per link id, samples of other links are dropped
+     * @param retentionMs  how long the windows stay queryable, at least windowMs + graceMs
+     */
+    public static Topology build(String topic, final Map<String, String[]> linkRegions, Serde<PowerFlowSample> sampleSerde,
+                                 long windowMs, long advanceMs, long graceMs, long retentionMs) {
+
+        StreamsBuilder builder = new StreamsBuilder();
+
+        builder.stream( topic, Consumed.with( Serdes.String(), sampleSerde ).withTimestampExtractor( new SampleTimestampExtractor() ) )
+                .flatMap( new KeyValueMapper<String, PowerFlowSample, Iterable<KeyValue<String, Double>>>() {
+                    @Override
+                    public Iterable<KeyValue<String, Double>> apply(String link, PowerFlowSample s) {
+
+                        String[] r = s == null ? null : linkRegions.get( s.id );
+                        if ( r == null || Double.isNaN( s.flow ) )
+                            return Collections.emptyList();
+
+                        if ( s.flow < 0 )
+                            return Collections.singletonList( KeyValue.pair( key( r[1], r[0] ), -s.flow ) );
+                        return Collections.singletonList( KeyValue.pair( key( r[0], r[1] ), s.flow ) );
+
+                    }
+                })
+                .groupByKey( Grouped.with( PAIRS, Serdes.String(), Serdes.Double() ) )
+                .windowedBy( TimeWindows.of( Duration.ofMillis( windowMs ) ).advanceBy( Duration.ofMillis( advanceMs ) ).grace( Duration.ofMillis( graceMs ) ) )
+                .reduce( new Reducer<Double>() {
+                    @Override
+                    public Double apply(Double a, Double b) {
+                        return a + b;
+                    }
+                }, Materialized.<String, Double, WindowStore<Bytes, byte[]>>as( STORE )
+                        .withKeySerde( Serdes.String() )
+                        .withValueSerde( Serdes.Double() )
+                        .withRetention( Duration.ofMillis( Math.max( retentionMs, windowMs + graceMs ) ) ) );
+
+        return builder.build();
+
+    }
+
+    /**
+     * The start of the newest window of all pairs in the store, the current stream time.
+     *
+     * @param since  a window start seen before, only newer windows are scanned
+     * @return since if there is no newer window
+     */
+    public static long newestWindowStart(ReadOnlyWindowStore<String, Double> store, long since) {
+
+        long newest = since;
+
+        KeyValueIterator<Windowed<String>, Double> it = store.fetchAll( Instant.ofEpochMilli( Math.max( 0, since ) ), Instant.ofEpochMilli( Long.MAX_VALUE / 2 ) );
+        try {
+            while( it.hasNext() ) {
+                newest = Math.max( newest, it.next().key.window().start() );
+            }
+        }
+        finally {
+            it.close();
+        }
+
+        return newest;
+
+    }
+
+    /**
+     * The total of the pair in the window which starts at windowStart.
+     *
+     * @return null if the pair has no flow in that window
+     */
+    public static Double total(ReadOnlyWindowStore<String, Double> store, String fromCountry, String toCountry, long windowStart) {
+        return store.fetch( key( fromCountry, toCountry ), windowStart );
+    }
+
+    /**
+     * The start of the latest complete window, the one which ends where the newest window starts
+     * (the newest pane, still filling), the same window RegionalBalance.snapshot() reports.
+     */
+    public static long latestWindowStart(long newestWindowStart, long windowMs, long advanceMs) {
+        return newestWindowStart - windowMs;
+    }
+
+    /**
+     * The total of the pair in the latest complete window of the whole store.
+     *
+     * @return null if the store is empty or the pair has no flow in that window
+     */
+    public static Double latest(ReadOnlyWindowStore<String, Double> store, String fromCountry, String toCountry, long windowMs, long advanceMs) {
+        long newest = newestWindowStart( store, Long.MIN_VALUE );
+        return newest == Long.MIN_VALUE ? null : total( store, fromCountry, toCountry, latestWindowStart( newest, windowMs, advanceMs ) );
+    }
+
+}
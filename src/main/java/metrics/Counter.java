@@ -0,0 +1,34 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic count, cheap to increment from many threads (LongAdder).
+ */
+public class Counter implements CounterMBean {
+
+    final String name;
+    final LongAdder adder = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void inc() {
+        adder.increment();
+    }
+
+    public void add(long n) {
+        adder.add( n );
+    }
+
+    public long count() {
+        return adder.sum();
+    }
+
+    @Override
+    public long getCount() {
+        return adder.sum();
+    }
+
+}
@@ -0,0 +1,7 @@
+package metrics;
+
+public interface CounterMBean {
+
+    long getCount();
+
+}
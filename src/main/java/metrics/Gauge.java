@@ -0,0 +1,10 @@
+package metrics;
+
+/**
+ * A value which is read when it is reported, e.g. the records in flight.
+ */
+public interface Gauge {
+
+    double value();
+
+}
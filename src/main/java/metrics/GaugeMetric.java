@@ -0,0 +1,30 @@
+package metrics;
+
+/**
+ * A registered Gauge.
+ */
+public class GaugeMetric implements GaugeMetricMBean {
+
+    final String name;
+    final Gauge gauge;
+
+    GaugeMetric(String name, Gauge gauge) {
+        this.name = name;
+        this.gauge = gauge;
+    }
+
+    public double value() {
+        try {
+            return gauge.value();
+        }
+        catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public double getValue() {
+        return value();
+    }
+
+}
@@ -0,0 +1,168 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in nanoseconds with log-linear buckets: every power of two is
+ * split into 8 buckets, so a percentile is off by at most 12.5 %. Recording a value is one bucket
+ * increment and two atomic adds, nothing is allocated.
+ *
+ * The buckets count since the start, a report interval is the difference of two snapshots.
+ */
+public class Histogram implements HistogramMBean {
+
+    static final int SUB_BITS = 3;
+    static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = ( 64 - SUB_BITS ) * SUB;
+
+    final String name;
+
+    final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+
+        if ( nanos < 0 )
+            nanos = 0;
+
+        buckets.incrementAndGet( bucket( nanos ) );
+        sum.addAndGet( nanos );
+
+        long m;
+        while ( nanos > ( m = max.get() ) && !max.compareAndSet( m, nanos ) );
+
+    }
+
+    /**
+     * Records the time since t0 (a System.nanoTime() value).
+     */
+    public void since(long t0) {
+        record( System.nanoTime() - t0 );
+    }
+
+    static int bucket(long v) {
+        if ( v < SUB )
+            return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros( v );
+        return ( e - SUB_BITS + 1 ) * SUB + (int) ( ( v >>> ( e - SUB_BITS ) ) & ( SUB - 1 ) );
+    }
+
+    static long lowerBound(int bucket) {
+        if ( bucket < SUB )
+            return bucket;
+        int e = bucket / SUB + SUB_BITS - 1;
+        return ( (long) SUB + bucket % SUB ) << ( e - SUB_BITS );
+    }
+
+    /**
+     * The middle of the bucket, the value reported for all values in it.
+     */
+    static long value(int bucket) {
+        if ( bucket < SUB )
+            return bucket;
+        long lower = lowerBound( bucket );
+        long width = 1L << ( bucket / SUB - 1 );
+        return lower + width / 2;
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for( int i = 0; i < BUCKETS; i++ ) {
+            counts[i] = buckets.get( i );
+            n = n + counts[i];
+        }
+        return new Snapshot( counts, n, sum.get(), max.get() );
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot().count;
+    }
+
+    @Override
+    public double getMean() {
+        return snapshot().mean();
+    }
+
+    @Override
+    public long get50thPercentile() {
+        return snapshot().percentile( 0.5 );
+    }
+
+    @Override
+    public long get99thPercentile() {
+        return snapshot().percentile( 0.99 );
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    public static class Snapshot {
+
+        final long[] counts;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * The values recorded after the earlier snapshot. The max is the one of the highest bucket.
+         */
+        public Snapshot since(Snapshot earlier) {
+
+            long[] d = new long[counts.length];
+            long n = 0;
+            int top = -1;
+            for( int i = 0; i < d.length; i++ ) {
+                d[i] = counts[i] - earlier.counts[i];
+                n = n + d[i];
+                if ( d[i] > 0 )
+                    top = i;
+            }
+
+            long m = top < 0 ? 0 : Math.min( max, top + 1 < BUCKETS ? lowerBound( top + 1 ) - 1 : Long.MAX_VALUE );
+            return new Snapshot( d, n, sum - earlier.sum, m );
+
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param q  0..1
+         */
+        public long percentile(double q) {
+
+            if ( count == 0 )
+                return 0;
+
+            long rank = Math.max( 1, (long) Math.ceil( q * count ) );
+            long seen = 0;
+            for( int i = 0; i < counts.length; i++ ) {
+                seen = seen + counts[i];
+                if ( seen >= rank )
+                    return Math.min( value( i ), max );
+            }
+            return max;
+
+        }
+
+    }
+
+}
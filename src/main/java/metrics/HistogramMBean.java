@@ -0,0 +1,18 @@
+package metrics;
+
+/**
+ * All values in nanoseconds, since the start.
+ */
+public interface HistogramMBean {
+
+    long getCount();
+
+    double getMean();
+
+    long get50thPercentile();
+
+    long get99thPercentile();
+
+    long getMax();
+
+}
@@ -0,0 +1,270 @@
+package metrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The counters, histograms and gauges of the application, by name.
+ *
+ * Every metric is registered as an MBean (domain "cp-tsdata", e.g. cp-tsdata:type=Histogram,name="grid-link-flow-data.latency")
+ * and the reporter prints one compact line per interval with the rates and percentiles of that
+ * interval, only for the metrics which changed:
+ *
+ *    [METRICS] 10.0s grid-link-flow-data.records=15.2k/s grid-link-flow-data.bytes=1.3MB/s grid-link-flow-data.latency=p50 4.2ms p99 18ms max 21ms ...
+ *
+ * Names ending with ".bytes" are reported as bytes per second.
+ *
+ *    -Dmetrics.interval.ms=10000 (0 = no log line)  -Dmetrics.jmx=true
+ */
+public class Metrics {
+
+    public static long INTERVAL_MS = Long.getLong( "metrics.interval.ms", 10000 );
+    public static boolean JMX = Boolean.parseBoolean( System.getProperty( "metrics.jmx", "true" ) );
+
+    public static final String DOMAIN = "cp-tsdata";
+
+    static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    static final ConcurrentMap<String, GaugeMetric> gauges = new ConcurrentHashMap<>();
+
+    static ScheduledExecutorService reporter = null;
+
+    // the state at the last report
+    static long lastReport = System.nanoTime();
+    static final Map<String, Long> lastCounts = new ConcurrentHashMap<>();
+    static final Map<String, Histogram.Snapshot> lastSnapshots = new ConcurrentHashMap<>();
+
+    public static Counter counter(String name) {
+        Counter c = counters.get( name );
+        if ( c == null ) {
+            Counter created = new Counter( name );
+            c = counters.putIfAbsent( name, created );
+            if ( c == null ) {
+                c = created;
+                register( "Counter", name, c );
+            }
+        }
+        return c;
+    }
+
+    public static Histogram histogram(String name) {
+        Histogram h = histograms.get( name );
+        if ( h == null ) {
+            Histogram created = new Histogram( name );
+            h = histograms.putIfAbsent( name, created );
+            if ( h == null ) {
+                h = created;
+                register( "Histogram", name, h );
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Registers the gauge, replaces a gauge with the same name.
+     */
+    public static void gauge(String name, Gauge gauge) {
+        GaugeMetric g = new GaugeMetric( name, gauge );
+        if ( gauges.put( name, g ) != null )
+            unregister( "Gauge", name );
+        register( "Gauge", name, g );
+    }
+
+    static ObjectName objectName(String type, String name) throws Exception {
+        return new ObjectName( DOMAIN + ":type=" + type + ",name=" + ObjectName.quote( name ) );
+    }
+
+    static void register(String type, String name, Object mbean) {
+
+        if ( !JMX )
+            return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = objectName( type, name );
+            if ( server.isRegistered( on ) )
+                server.unregisterMBean( on );
+            server.registerMBean( mbean, on );
+        }
+        catch (Exception e) {
+            System.err.println( "[METRICS] Can not register " + type + " " + name + " : " + e );
+        }
+
+    }
+
+    static void unregister(String type, String name) {
+
+        if ( !JMX )
+            return;
+
+        try {
+            ObjectName on = objectName( type, name );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if ( server.isRegistered( on ) )
+                server.unregisterMBean( on );
+        }
+        catch (Exception e) {
+            System.err.println( "[METRICS] Can not unregister " + type + " " + name + " : " + e );
+        }
+
+    }
+
+    /**
+     * Starts the periodic log line (daemon thread), does nothing if the interval is 0 or it runs.
+     */
+    public static synchronized void startReporter() {
+
+        if ( reporter != null || INTERVAL_MS <= 0 )
+            return;
+
+        reporter = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "metrics-reporter" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+
+        report();
+
+        reporter.scheduleAtFixedRate( new Runnable() {
+            @Override
+            public void run() {
+                String line = report();
+                if ( line != null )
+                    System.out.println( line );
+            }
+        }, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS );
+
+    }
+
+    public static synchronized void stopReporter() {
+        if ( reporter != null ) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * The line for the interval since the last call, null if nothing changed.
+     */
+    public static synchronized String report() {
+
+        long now = System.nanoTime();
+        double seconds = Math.max( 1e-9, ( now - lastReport ) / 1e9 );
+        lastReport = now;
+
+        StringBuilder sb = new StringBuilder();
+
+        for( Map.Entry<String, Counter> e : new TreeMap<>( counters ).entrySet() ) {
+
+            long count = e.getValue().count();
+            Long before = lastCounts.put( e.getKey(), count );
+            long delta = count - ( before == null ? 0 : before );
+            if ( delta == 0 )
+                continue;
+
+            sb.append( ' ' ).append( e.getKey() ).append( '=' );
+            if ( e.getKey().endsWith( ".bytes" ) )
+                sb.append( bytes( delta / seconds ) ).append( "/s" );
+            else
+                sb.append( number( delta / seconds ) ).append( "/s" );
+
+        }
+
+        for( Map.Entry<String, Histogram> e : new TreeMap<>( histograms ).entrySet() ) {
+
+            Histogram.Snapshot s = e.getValue().snapshot();
+            Histogram.Snapshot before = lastSnapshots.put( e.getKey(), s );
+            Histogram.Snapshot interval = before == null ? s : s.since( before );
+            if ( interval.count == 0 )
+                continue;
+
+            sb.append( ' ' ).append( e.getKey() ).append( "=p50 " ).append( nanos( interval.percentile( 0.5 ) ) )
+              .append( " p99 " ).append( nanos( interval.percentile( 0.99 ) ) )
+              .append( " max " ).append( nanos( interval.max ) );
+
+        }
+
+        if ( sb.length() == 0 )
+            return null;
+
+        for( Map.Entry<String, GaugeMetric> e : new TreeMap<>( gauges ).entrySet() ) {
+            sb.append( ' ' ).append( e.getKey() ).append( '=' ).append( number( e.getValue().value() ) );
+        }
+
+        return String.format( Locale.ROOT, "[METRICS] %.1fs", seconds ) + sb;
+
+    }
+
+    /**
+     * All metrics since the start, one per line.
+     */
+    public static String summary() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for( Map.Entry<String, Counter> e : new TreeMap<>( counters ).entrySet() ) {
+            sb.append( e.getKey() ).append( " : " ).append( e.getValue().count() ).append( "\n" );
+        }
+
+        for( Map.Entry<String, Histogram> e : new TreeMap<>( histograms ).entrySet() ) {
+            Histogram.Snapshot s = e.getValue().snapshot();
+            sb.append( e.getKey() ).append( " : n=" ).append( s.count )
+              .append( " mean=" ).append( nanos( (long) s.mean() ) )
+              .append( " p50=" ).append( nanos( s.percentile( 0.5 ) ) )
+              .append( " p90=" ).append( nanos( s.percentile( 0.9 ) ) )
+              .append( " p99=" ).append( nanos( s.percentile( 0.99 ) ) )
+              .append( " max=" ).append( nanos( s.max ) ).append( "\n" );
+        }
+
+        for( Map.Entry<String, GaugeMetric> e : new TreeMap<>( gauges ).entrySet() ) {
+            sb.append( e.getKey() ).append( " : " ).append( number( e.getValue().value() ) ).append( "\n" );
+        }
+
+        return sb.toString();
+
+    }
+
+    static String number(double v) {
+        if ( Double.isNaN( v ) )
+            return "n/a";
+        if ( v >= 1e6 )
+            return String.format( Locale.ROOT, "%.1fM", v / 1e6 );
+        if ( v >= 1e4 )
+            return String.format( Locale.ROOT, "%.1fk", v / 1e3 );
+        if ( v == Math.rint( v ) )
+            return String.valueOf( (long) v );
+        return String.format( Locale.ROOT, "%.1f", v );
+    }
+
+    static String bytes(double v) {
+        if ( v >= 1 << 20 )
+            return String.format( Locale.ROOT, "%.1fMB", v / ( 1 << 20 ) );
+        if ( v >= 1 << 10 )
+            return String.format( Locale.ROOT, "%.1fkB", v / ( 1 << 10 ) );
+        return String.format( Locale.ROOT, "%.0fB", v );
+    }
+
+    static String nanos(long ns) {
+        if ( ns >= 1000000000L )
+            return String.format( Locale.ROOT, "%.2fs", ns / 1e9 );
+        if ( ns >= 1000000L )
+            return String.format( Locale.ROOT, "%.1fms", ns / 1e6 );
+        if ( ns >= 1000L )
+            return String.format( Locale.ROOT, "%.1fus", ns / 1e3 );
+        return ns + "ns";
+    }
+
+}
@@ -0,0 +1,402 @@
+package tool;
+
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Import / export totals per region and per region pair, computed from the simulated link flows
+ * as they are emitted.
+ *
+ * The endpoints of every link are mapped to regions once (by the country codes in the
+ * regionContextTag of the link), so a sample costs a few array updates. A positive flow goes from
+ * the source to the target of the link, a negative one the other way. Flows between stations of
+ * the same region are counted as internal.
+ *
+ * Windows are aligned on the epoch: a window of windowMs starts every advanceMs (tumbling if both
+ * are equal, hopping if the advance is smaller). The samples are summed in panes of advanceMs,
+ * a snapshot adds up the panes of one window. Samples older than the oldest kept pane are counted
+ * as late and dropped.
+ *
+ *    -Dbalance.window.ms=10000  -Dbalance.advance.ms=10000
+ */
+public class RegionalBalance {
+
+    public static long DEFAULT_WINDOW_MS = Long.getLong( "balance.window.ms", 10000 );
+    public static long DEFAULT_ADVANCE_MS = Long.getLong( "balance.advance.ms", DEFAULT_WINDOW_MS );
+
+    final String[] regionIds;
+    final int regions;
+
+    final int[] source;                 // per link ordinal: region index, -1 if not mapped
+    final int[] target;
+    final Map<String, Integer> linkOrdinals;
+
+    final long windowMs;
+    final long advanceMs;
+
+    final Pane[] panes;
+    long newestPane = Long.MIN_VALUE;
+
+    long late = 0;
+    long unmapped = 0;
+
+    final ThreadLocal<Pane> local = new ThreadLocal<Pane>() {
+        @Override
+        protected Pane initialValue() {
+            return new Pane( regions );
+        }
+    };
+
+    public RegionalBalance(List<Region> regions, List<GridLink> links) {
+        this( regions, links, DEFAULT_WINDOW_MS, DEFAULT_ADVANCE_MS );
+    }
+
+    /**
+     * @param links  the link list of the simulation, the position of a link is its ordinal in a SampleBuffer
+     */
+    public RegionalBalance(List<Region> regions, List<GridLink> links, long windowMs, long advanceMs) {
+
+        if ( advanceMs <= 0 || windowMs < advanceMs || windowMs % advanceMs != 0 )
+            throw new IllegalArgumentException( "The window (" + windowMs + " ms) must be a multiple of the advance (" + advanceMs + " ms)." );
+
+        this.windowMs = windowMs;
+        this.advanceMs = advanceMs;
+
+        this.regions = regions.size();
+        this.regionIds = new String[this.regions];
+
+        Map<String, Integer> byCountry = new HashMap<>();
+        for( int r = 0; r < this.regions; r++ ) {
+            regionIds[r] = regions.get( r ).country;
+            byCountry.put( regions.get( r ).country, r );
+        }
+
+        this.source = new int[links.size()];
+        this.target = new int[links.size()];
+        this.linkOrdinals = new HashMap<>( (int) ( links.size() / 0.75f ) + 1 );
+        for( int i = 0; i < links.size(); i++ ) {
+            // "<source country>-><target country>"
+            GridLink l = links.get( i );
+            int arrow = l.regionContextTag.indexOf( "->" );
+            Integer a = arrow < 0 ? null : byCountry.get( l.regionContextTag.substring( 0, arrow ) );
+            Integer b = arrow < 0 ? null : byCountry.get( l.regionContextTag.substring( arrow + 2 ) );
+            source[i] = a == null ? -1 : a;
+            target[i] = b == null ? -1 : b;
+            linkOrdinals.put( l.id, i );
+        }
+
+        // the panes of one window plus the one which is being filled next
+        this.panes = new Pane[(int) ( windowMs / advanceMs ) + 1];
+        for( int p = 0; p < panes.length; p++ ) {
+            panes[p] = new Pane( this.regions );
+        }
+
+    }
+
+    /**
+     * Adds the slots [from, to) of a buffer, may be called by several threads at once. The sums
+     * are built thread locally and merged once per pane.
+     */
+    public void add(SampleBuffer buffer, int from, int to) {
+
+        Pane acc = local.get();
+        acc.reset( Long.MIN_VALUE );
+
+        for( int i = from; i < to; i++ ) {
+
+            long pane = Math.floorDiv( buffer.ts[i], advanceMs );
+            if ( pane != acc.number ) {
+                merge( acc );
+                acc.reset( pane );
+            }
+
+            acc.add( source[ buffer.link[i] ], target[ buffer.link[i] ], buffer.flow[i] );
+
+        }
+
+        merge( acc );
+
+    }
+
+    public synchronized void add(PowerFlowSample sample) {
+
+        Integer link = linkOrdinals.get( sample.id );
+        if ( link == null || source[link] < 0 || target[link] < 0 ) {
+            unmapped++;
+            return;
+        }
+
+        Pane pane = pane( Math.floorDiv( sample.ts, advanceMs ) );
+        if ( pane == null ) {
+            late++;
+            return;
+        }
+
+        pane.add( source[link], target[link], sample.flow );
+
+    }
+
+    /**
+     * The latest complete window, the one which ends where the newest pane starts. The newest pane
+     * is still filling, a window with it would be averaged over ticks which did not come yet.
+     * Empty until the first window is complete.
+     */
+    public synchronized Snapshot snapshot() {
+        if ( newestPane == Long.MIN_VALUE )
+            return new Snapshot( this, 0, windowMs );
+        return snapshot( newestPane * advanceMs );
+    }
+
+    /**
+     * The window [end - windowMs, end), end is aligned to the advance.
+     */
+    public synchronized Snapshot snapshot(long end) {
+
+        long endPane = Math.floorDiv( end, advanceMs );
+        long firstPane = endPane - windowMs / advanceMs;
+
+        Snapshot s = new Snapshot( this, firstPane * advanceMs, endPane * advanceMs );
+        for( Pane p : panes ) {
+            if ( p.number >= firstPane && p.number < endPane )
+                s.add( p );
+        }
+        s.late = late;
+        s.unmapped = unmapped;
+        return s;
+
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public long getAdvanceMs() {
+        return advanceMs;
+    }
+
+    private synchronized void merge(Pane acc) {
+
+        if ( acc.samples == 0 && acc.unmapped == 0 )
+            return;
+
+        unmapped = unmapped + acc.unmapped;
+
+        Pane pane = pane( acc.number );
+        if ( pane == null )
+            late = late + acc.samples;
+        else
+            pane.add( acc );
+
+    }
+
+    /**
+     * @return the ring slot of the pane, recycled if it held an older pane, null if the pane is too old
+     */
+    private Pane pane(long number) {
+
+        if ( newestPane != Long.MIN_VALUE && number <= newestPane - panes.length )
+            return null;
+
+        if ( number > newestPane )
+            newestPane = number;
+
+        Pane p = panes[ (int) Math.floorMod( number, (long) panes.length ) ];
+        if ( p.number != number )
+            p.reset( number );
+        return p;
+
+    }
+
+    static class Pane {
+
+        final int regions;
+
+        long number = Long.MIN_VALUE;
+        long samples = 0;
+        long unmapped = 0;
+
+        final double[] exports;
+        final double[] imports;
+        final double[] internal;
+        final double[] transfers;       // [from * regions + to]
+
+        Pane(int regions) {
+            this.regions = regions;
+            this.exports = new double[regions];
+            this.imports = new double[regions];
+            this.internal = new double[regions];
+            this.transfers = new double[regions * regions];
+        }
+
+        void reset(long number) {
+            this.number = number;
+            this.samples = 0;
+            this.unmapped = 0;
+            Arrays.fill( exports, 0 );
+            Arrays.fill( imports, 0 );
+            Arrays.fill( internal, 0 );
+            Arrays.fill( transfers, 0 );
+        }
+
+        void add(int a, int b, double flow) {
+
+            if ( a < 0 || b < 0 ) {
+                unmapped++;
+                return;
+            }
+
+            samples++;
+
+            if ( flow < 0 ) {
+                int t = a;
+                a = b;
+                b = t;
+                flow = -flow;
+            }
+
+            if ( a == b ) {
+                internal[a] += flow;
+            }
+            else {
+                exports[a] += flow;
+                imports[b] += flow;
+                transfers[a * regions + b] += flow;
+            }
+
+        }
+
+        void add(Pane p) {
+            samples += p.samples;
+            for( int r = 0; r < regions; r++ ) {
+                exports[r] += p.exports[r];
+                imports[r] += p.imports[r];
+                internal[r] += p.internal[r];
+            }
+            for( int k = 0; k < transfers.length; k++ ) {
+                transfers[k] += p.transfers[k];
+            }
+        }
+
+    }
+
+    /**
+     * The totals of one window, a copy which does not change any more. A total is the sum of the
+     * samples, MW per tick added up over the ticks of the window (MW x ticks); average() turns it
+     * into the mean flow in MW.
+     */
+    public static class Snapshot {
+
+        public final long start;
+        public final long end;
+
+        final String[] regionIds;
+        final Pane totals;
+
+        long late = 0;
+        long unmapped = 0;
+
+        Snapshot(RegionalBalance balance, long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.regionIds = balance.regionIds;
+            this.totals = new Pane( balance.regions );
+            this.totals.reset( 0 );
+        }
+
+        void add(Pane p) {
+            totals.add( p );
+        }
+
+        /**
+         * Ticks in the window.
+         */
+        public double ticks() {
+            return (double) ( end - start ) / PowerFlowSample.TICK_MS;
+        }
+
+        /**
+         * The mean flow in MW over the window of a total of this snapshot.
+         */
+        public double average(double total) {
+            return total / ticks();
+        }
+
+        public int regionCount() {
+            return regionIds.length;
+        }
+
+        /**
+         * @return the country code of the region
+         */
+        public String region(int r) {
+            return regionIds[r];
+        }
+
+        public double exports(int r) {
+            return totals.exports[r];
+        }
+
+        public double imports(int r) {
+            return totals.imports[r];
+        }
+
+        public double internal(int r) {
+            return totals.internal[r];
+        }
+
+        /**
+         * Exports minus imports.
+         */
+        public double net(int r) {
+            return totals.exports[r] - totals.imports[r];
+        }
+
+        /**
+         * The flow from region a to region b.
+         */
+        public double transfer(int a, int b) {
+            return totals.transfers[a * regionIds.length + b];
+        }
+
+        public long samples() {
+            return totals.samples;
+        }
+
+        public long lateSamples() {
+            return late;
+        }
+
+        public long unmappedSamples() {
+            return unmapped;
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder();
+            sb.append( String.format( Locale.ROOT, "Window [%d, %d) : %d samples in %.0f ticks (late %d, unmapped %d), average MW%n", start, end, totals.samples, ticks(), late, unmapped ) );
+            sb.append( String.format( "  %-8s %14s %14s %14s %14s%n", "region", "exports", "imports", "net", "internal" ) );
+            for( int r = 0; r < regionIds.length; r++ ) {
+                sb.append( String.format( Locale.ROOT, "  %-8s %14.1f %14.1f %14.1f %14.1f%n", regionIds[r], average( exports( r ) ), average( imports( r ) ), average( net( r ) ), average( internal( r ) ) ) );
+            }
+            for( int a = 0; a < regionIds.length; a++ ) {
+                for( int b = 0; b < regionIds.length; b++ ) {
+                    if ( transfer( a, b ) != 0 )
+                        sb.append( String.format( Locale.ROOT, "  %s->%s %14.1f%n", regionIds[a], regionIds[b], average( transfer( a, b ) ) ) );
+                }
+            }
+            return sb.toString();
+
+        }
+
+    }
+
+}
@@ -1,6 +1,12 @@
 package tool;
 
+import datamodel.graph_of_things.GridGraph;
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.LinkContextCache;
+import datamodel.graph_of_things.NodeRegistry;
+import datamodel.graph_of_things.TopologyIndex;
 import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
 import datamodel.poi.POIData;
 import datamodel.graph_of_things.nodes.Region;
 import datamodel.graph_of_things.nodes.PowerPlant;
@@ -8,14 +14,30 @@ import datamodel.graph_of_things.nodes.Station;
 import datamodel.graph_of_things.relations.GridLink;
 import dataprovider.CSVFileRepository;
 import dataprovider.GridDataProvider;
+import dataprovider.SyntheticGridGenerator;
+import kafka.GenericProducerFactory;
 import kafka.dataassets.TopicGroupTool;
 import kafka.dataassets.producers.*;
+import kafka.streams.RegionTransferService;
+import metrics.Histogram;
+import metrics.Metrics;
+import tool.flow.ContingencyAnalysis;
+import tool.flow.DCPowerFlow;
 import tool.geojson.GeoJSONExporter;
+import tool.geojson.TileExporter;
+import tool.live.LiveFlows;
+import tool.live.LiveStateServer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class SimulationScenario {
@@ -23,22 +45,39 @@ public class SimulationScenario {
     static public String appID = "demo3";
 
     /**
-     * Data from CSV files.
+     * The grid (nodes from the CSV files or the generator, the segments and the derived links) as
+     * an immutable snapshot. Readers take the current one with getModel() and iterate it without
+     * locks, edits publish the next version with update().
      */
-    static public Vector<PowerPlant> powerPlants  = new Vector<PowerPlant>();
-    static public Vector<Station>    stations     = new Vector<Station>();
-    static public Vector<Region>     regions      = new Vector<Region>();
+    static final AtomicReference<GridModel> model = new AtomicReference<>( GridModel.empty() );
 
     /**
-     * Static data defined for the demo
+     * Print every simulated sample, -Dsimulation.echo.samples=true (creates a sample per record, for
+     * small grids and debugging only).
      */
-    static public Vector<String>     segments     = new Vector<String>();
+    static public boolean echoSamples = Boolean.getBoolean( "simulation.echo.samples" );
 
+    /**
+     * Publish every sample a second time with the context of its link (endpoints, countries,
+     * coordinates, regions) to the enriched topic, -Dsimulation.enrich=true
+     */
+    static public boolean enrichSamples = Boolean.getBoolean( "simulation.enrich" );
 
     /**
-     * Derived data - calculated for the analysis process.
+     * Where the link flows come from: "noise" around the average flow of every link, or "dc" for a
+     * DC power flow from the plant production and region consumption, -Dsimulation.flows=dc
      */
-    static public Vector<GridLink>   gridLinks     = new Vector<GridLink>();
+    static public String flowModel = System.getProperty( "simulation.flows", "noise" );
+
+    /**
+     * Windowed region-to-region transfers from the Kafka Streams app, -Dstreams.transfers=true
+     */
+    static public RegionTransferService transfers = null;
+
+    /**
+     * Import / export totals of the simulated flows per region, updated while the samples are emitted.
+     */
+    static public RegionalBalance balance = null;
 
     /**
      * GeoTools Quickstart demo application. Prompts the user for a shapefile and displays its
@@ -51,16 +90,48 @@ public class SimulationScenario {
 
         System.out.println( "> Read model files from: " + CSVFileRepository.repoPath );
 
-        powerPlants = CSVFileRepository.getPowerPlantsFromRepository();
-        stations = CSVFileRepository.getStationsFromRepository();
-        regions = CSVFileRepository.getRegionsFromRepository();
-        segments = GridDataProvider.getSegments();
+        int syntheticLinks = Integer.getInteger( "grid.synthetic.links", 0 );
+
+        if ( syntheticLinks > 0 ) {
+
+            /**
+             *   Generated grid for scale tests instead of the CSV files.
+             */
+            SyntheticGridGenerator.SyntheticGrid grid =
+                    new SyntheticGridGenerator( syntheticLinks, Long.getLong( "grid.synthetic.seed", 42 ) ).generate();
+
+            setModel( GridModel.build( grid.regions, grid.stations, grid.powerPlants, grid.segments ) );
+
+        }
+        else {
+
+            setModel( GridModel.build(
+                    CSVFileRepository.getRegionsFromRepository(),
+                    CSVFileRepository.getStationsFromRepository(),
+                    CSVFileRepository.getPowerPlantsFromRepository(),
+                    GridDataProvider.getSegments( CSVFileRepository.repoPath ) ) );
+
+        }
+
+        GridModel grid = getModel();
+
+        /**
+         *   Islands of the grid: links between them can not carry flow.
+         */
+        GridGraph graph = grid.graph();
+        System.out.println( "> Grid graph: " + graph + ", " + graph.components() + ", " + graph.degrees() );
 
         /**
          *   This is the network layer which represents the reality (simulation setup).
          */
         GeoJSONExporter.generateGrid();
 
+        /**
+         *   The same as z/x/y tiles for the browser, -Dexport.tiles=true
+         */
+        if ( TileExporter.enabled )
+            TileExporter.refresh( grid );
+
         /**
          *   This is the network layer which represents the analysis results.
          */
@@ -70,52 +141,213 @@ public class SimulationScenario {
          *   Provide data via topics in Confluent cloud.
          */
         TopicGroupTool.configureProducer(appID);
+        Metrics.startReporter();
 
-        TopicGroupTool.storeRegionContextData( regions );
-        TopicGroupTool.storeStationContextData( stations );
-        TopicGroupTool.storePlantContextData( powerPlants );
-        TopicGroupTool.storeLinkContextData( gridLinks );
+        if ( enrichSamples )
+            EnrichedSampleProducer.init( appID );
+
+        TopicGroupTool.storeRegionContextData( grid.regions() );
+        TopicGroupTool.storeStationContextData( grid.stations() );
+        TopicGroupTool.storePlantContextData( grid.powerPlants() );
+        TopicGroupTool.storeLinkContextData( grid.gridLinks() );
+        TopicGroupTool.storeLinkDictionary( grid.gridLinks() );
 
         System.out.println( "> Now we have to define the streams and tables in KSQLDB. " );
 
-        simulateFlow();
+        /**
+         *   The region transfer totals, aggregated by Kafka Streams instead of ksqlDB.
+         */
+        if ( RegionTransferService.enabled )
+            transfers = RegionTransferService.start( appID, grid.gridLinks() );
+
+        try {
+
+            simulateFlow( grid );
+
+            /**
+             *   The region links again, now with the simulated transfer totals.
+             */
+            GeoJSONExporter.generateRegionLinks();
+
+        }
+        finally {
+            if ( transfers != null )
+                transfers.close();
+        }
+
+        System.out.println( GenericProducerFactory.stats() );
+        Metrics.stopReporter();
+        System.out.println( Metrics.summary() );
+        GenericProducerFactory.close();
 
         System.out.println( "> Show GeoJSON data in browser: https://utahemre.github.io/geojsontest.html " );
 
     }
 
 
-    private static void simulateFlow() {
+    /**
+     * Runs the ticks on one version of the grid, edits published meanwhile are used by the next run.
+     */
+    private static void simulateFlow(GridModel grid) throws Exception {
+
+        final TickEngine engine = new TickEngine( grid.gridLinks() );
 
-        int z = 0;
+        DCPowerFlow dc = null;
+        if ( "dc".equalsIgnoreCase( flowModel ) ) {
+            dc = new DCPowerFlow( grid );
+            engine.useFlowModel( dc );
+        }
 
-        while ( z < 10 ) {
+        /**
+         * N-1 screening of the flows every few ticks, -Dcontingency.every=10
+         */
+        ContingencyAnalysis n1 = null;
+        if ( ContingencyAnalysis.EVERY > 0 ) {
+            if ( dc != null )
+                n1 = new ContingencyAnalysis( grid, dc );
+            else
+                System.out.println( "> Contingency analysis needs the DC power flow (-Dsimulation.flows=dc), it is off." );
+        }
+        final ContingencyAnalysis contingency = n1;
+        final double[] demand = n1 != null ? dc.demand() : null;
+
+        // the sweep runs beside the ticks on a copy of their flows, while it runs no other one starts
+        final ExecutorService screening = contingency != null ? Executors.newSingleThreadExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "contingency" );
+                t.setDaemon( true );
+                return t;
+            }
+        }) : null;
+        final AtomicBoolean screeningBusy = new AtomicBoolean();
 
-            System.out.println( "[ITERATION] -> " + z);
-            for (GridLink sl : gridLinks) {
+        // one reused buffer for all ticks, the samples of a tick are never objects
+        final SampleBuffer buffer = new SampleBuffer( grid.linkCount() );
+        final String[] linkIds = engine.linkIds();
 
-                PowerFlowSample sample = sl.newSample(z);
+        PowerSampleProducer.useLinks( linkIds );
 
-                System.out.println(sample);
+        if ( enrichSamples )
+            EnrichedSampleProducer.useLinks( linkIds );
 
-                PowerSampleProducer.sendSample( sample );
+        balance = new RegionalBalance( grid.regions(), grid.gridLinks() );
 
-            }
-            PowerSampleProducer.flush();
-            z++;
-            System.out.println( "[-------------------]");
-            System.out.println( "");
+        /**
+         * This is a validation of the static flows, predefined in our setup.
+         */
+        calcBalanceForRegion( grid.regions() );
 
-            /**
-             * This is a validation of the static flows, predefined in our setup.
-             */
-            calcBalanceForRegion( regions );
+        /**
+         * The flows for the map viewers, -Dlive.server=true
+         */
+        final LiveFlows live = LiveStateServer.enabled ? new LiveFlows( linkIds ) : null;
+        final LiveStateServer server = live != null ? LiveStateServer.start( live ) : null;
+
+        final TickEngine.BufferSink publish = new TickEngine.BufferSink() {
+            @Override
+            public void samples(SampleBuffer buffer, int from, int to) {
+
+                if ( echoSamples ) {
+                    for( int i = from; i < to; i++ ) {
+                        System.out.println( buffer.toSample( i, linkIds[ buffer.link[i] ] ) );
+                    }
+                }
+
+                PowerSampleProducer.sendSamples( buffer, from, to );
+
+                if ( enrichSamples )
+                    EnrichedSampleProducer.sendSamples( buffer, from, to );
+
+                balance.add( buffer, from, to );
+
+                if ( live != null )
+                    live.add( buffer, from, to );
+
+            }
+        };
+
+        // where the time of a tick goes: creating and sending the samples, waiting for the acks
+        final Histogram generate = Metrics.histogram( "tick.generate" );
+        final Histogram flush = Metrics.histogram( "tick.flush" );
+
+        TickScheduler scheduler = new TickScheduler();
+
+        // in real time mode the sample timestamps start now
+        if ( scheduler.isPaced() )
+            PowerFlowSample.t0 = System.currentTimeMillis();
+
+        try {
+
+            scheduler.run( new TickScheduler.Tick() {
+                @Override
+                public void run(int z) {
+
+                    System.out.println( "[ITERATION] -> " + z);
+
+                    // returns when all workers are done with this tick
+                    long t0 = System.nanoTime();
+                    engine.tick( z, buffer, publish );
+                    generate.since( t0 );
+
+                    // barrier: all samples of this tick are acknowledged before the next tick starts
+                    t0 = System.nanoTime();
+                    PowerSampleProducer.flush();
+                    flush.since( t0 );
+                    System.out.println( "[PUBLISHED] -> " + PowerSampleProducer.stats() );
+
+                    if ( enrichSamples ) {
+                        EnrichedSampleProducer.flush();
+                        System.out.println( "[ENRICHED]  -> " + EnrichedSampleProducer.stats() );
+                    }
+
+                    if ( live != null )
+                        System.out.println( "[LIVE]      -> " + live.tick( z ) + " links changed, " + server.clientCount() + " clients" );
+
+                    System.out.println( "[-------------------]");
+                    System.out.println( "");
+
+                    /**
+                     * The balance of the simulated flows in the latest complete window.
+                     */
+                    System.out.println( balance.snapshot() );
+
+                    if ( contingency != null && z % ContingencyAnalysis.EVERY == 0 ) {
+                        if ( screeningBusy.compareAndSet( false, true ) ) {
+                            final double[] flows = engine.flows().clone();
+                            final double[] load = demand.clone();
+                            screening.execute( new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        System.out.println( contingency.run( flows, load ) );
+                                    }
+                                    finally {
+                                        screeningBusy.set( false );
+                                    }
+                                }
+                            });
+                        }
+                        else {
+                            System.out.println( "> N-1: the sweep of an earlier tick still runs, tick " + z + " is skipped" );
+                        }
+                    }
+
+                }
+            });
 
         }
+        finally {
+            engine.close();
+            if ( screening != null )
+                screening.shutdown();
+            if ( server != null )
+                server.close();
+        }
 
     }
 
-    private static void calcBalanceForRegion(Vector<Region> regions) {
+    private static void calcBalanceForRegion(List<Region> regions) {
         double totalProd = 0;
         double totalCons = 0;
         double totalExp = 0;
@@ -135,7 +367,7 @@ public class SimulationScenario {
     public static List<POIData> getPPTAsPOI() {
 
         ArrayList<POIData> l = new ArrayList<>();
-        for( PowerPlant s : powerPlants ) {
+        for( PowerPlant s : getModel().powerPlants() ) {
 
             l.add(s.asPoi());
 
@@ -148,7 +380,7 @@ public class SimulationScenario {
     public static List<POIData> getStationAsPOI() {
 
         ArrayList<POIData> l = new ArrayList<>();
-        for( Station s : stations ) {
+        for( Station s : getModel().stations() ) {
 
             l.add(s.asPoi());
 
@@ -162,7 +394,7 @@ public class SimulationScenario {
     public static Collection getRegionsAsPOI() {
 
         ArrayList<POIData> l = new ArrayList<>();
-        for( Region s : regions ) {
+        for( Region s : getModel().regions() ) {
 
             l.add(s.asPoi());
 
@@ -171,20 +403,120 @@ public class SimulationScenario {
         return l ;
     }
 
+    /**
+     * The average transfer in MW from region id to region id1 in the latest complete window: from the Kafka
+     * Streams store if it runs, otherwise from the in-process balance, "n/a" before the simulation.
+     * Both sum the samples of the window, the sum is divided by the ticks in the window. "n/a" if
+     * the pair had no flow in the window, or is held by another streams instance (with its host).
+     */
     public static String getTotalFor(String id, String id1) {
-        return "42";
+
+        Region from = getRegionWithID( id );
+        Region to = getRegionWithID( id1 );
+        if ( from == null || to == null )
+            return "n/a";
+
+        if ( transfers != null ) {
+            String remote = transfers.remote( from.country, to.country );
+            if ( remote != null )
+                return "n/a (" + remote + ")";
+            Double total = transfers.latest( from.country, to.country );
+            if ( total == null )
+                return "n/a";
+            double ticks = (double) RegionTransferService.WINDOW_MS / PowerFlowSample.TICK_MS;
+            return String.format( Locale.ROOT, "%.1f MW", total / ticks );
+        }
+
+        if ( balance != null ) {
+            RegionalBalance.Snapshot s = balance.snapshot();
+            // the balance counts a country for its last region, like its link mapping does
+            int a = -1;
+            int b = -1;
+            for( int r = 0; r < s.regionCount(); r++ ) {
+                if ( s.region( r ).equals( from.country ) )
+                    a = r;
+                if ( s.region( r ).equals( to.country ) )
+                    b = r;
+            }
+            if ( a >= 0 && b >= 0 && s.samples() > 0 )
+                return String.format( Locale.ROOT, "%.1f MW", s.average( s.transfer( a, b ) ) );
+        }
+
+        return "n/a";
+
     }
 
-    public static Station getStationWithID(String linkedToStation) {
-        for( Station s : stations ) {
-            if ( s.id.equals( linkedToStation ) ) {
-                return s;
+    public static GridModel getModel() {
+        return model.get();
+    }
+
+    /**
+     * Publishes a new version of the grid, readers see it with their next getModel().
+     */
+    public static void setModel(GridModel grid) {
+        model.set( grid );
+        published( grid );
+    }
+
+    /**
+     * Applies the edit to the current model and publishes the result. If another edit was published
+     * in between, the edit is applied again to the newer version.
+     */
+    public static GridModel update(GridModel.Edit edit) {
+        while( true ) {
+            GridModel current = model.get();
+            GridModel next = edit.apply( current );
+            if ( model.compareAndSet( current, next ) ) {
+                published( next );
+                return next;
             }
         }
-        return null;
     }
 
-    public static void collectStationLink(GridLink sl) {
-        gridLinks.add( sl );
+    /**
+     * Everything derived from the model outside of it is refreshed here, always from the newest
+     * version, so concurrent publications can't leave an older one behind.
+     */
+    private static synchronized void published(GridModel grid) {
+        System.out.println( "> Published " + grid );
+        if ( enrichSamples )
+            EnrichedSampleProducer.refresh( LinkContextCache.of( model.get() ) );
+        if ( TileExporter.hasTiles() ) {
+            try {
+                TileExporter.refresh( model.get() );
+            }
+            catch (IOException e) {
+                System.err.println( "> Tiles not updated: " + e );
+            }
+        }
+    }
+
+    public static TopologyIndex getTopology() {
+        return getModel().topology();
+    }
+
+    public static NodeRegistry<Station> getStationRegistry() {
+        return getModel().stationRegistry();
     }
+
+    public static NodeRegistry<PowerPlant> getPlantRegistry() {
+        return getModel().plantRegistry();
+    }
+
+    public static NodeRegistry<Region> getRegionRegistry() {
+        return getModel().regionRegistry();
+    }
+
+    public static Station getStationWithID(String linkedToStation) {
+        return getModel().station( linkedToStation );
+    }
+
+    public static PowerPlant getPlantWithID(String id) {
+        return getModel().powerPlant( id );
+    }
+
+    public static Region getRegionWithID(String id) {
+        return getModel().region( id );
+    }
+
 }
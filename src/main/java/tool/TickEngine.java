@@ -0,0 +1,260 @@
+package tool;
+
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import datamodel.measurement.SampleBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the samples of one simulation tick on several cores.
+ *
+ * The links are split into one contiguous partition per worker. Every partition owns a
+ * SplittableRandom stream split off a seeded root stream, so the same seed and thread count give
+ * the same samples in every run. tick() returns only after all partitions are done, this is the
+ * barrier before the producer flush and the balance checks.
+ *
+ * The sink is called from the worker threads, samples of one link always come from the same
+ * thread in tick order. With a SampleBuffer the samples are written into primitive arrays instead
+ * of PowerFlowSample objects, and the tick allocates nothing per sample.
+ *
+ * With a FlowModel the flows of a tick are computed by the model first (e.g. a power flow over
+ * the whole grid), the workers only hand them to the sink.
+ *
+ *    -Dsimulation.threads=8  -Dsimulation.seed=42
+ */
+public class TickEngine {
+
+    public static int DEFAULT_THREADS = Integer.getInteger( "simulation.threads", Runtime.getRuntime().availableProcessors() );
+    public static long DEFAULT_SEED = Long.getLong( "simulation.seed", 42 );
+
+    /**
+     * Partitions smaller than this are not worth a thread.
+     */
+    static final int MIN_LINKS_PER_WORKER = 1024;
+
+    public interface SampleSink {
+        void sample(PowerFlowSample sample);
+    }
+
+    /**
+     * Receives the slots [from, to) of a SampleBuffer, once per partition and tick.
+     */
+    public interface BufferSink {
+        void samples(SampleBuffer buffer, int from, int to);
+    }
+
+    /**
+     * Computes the flows of all links of a tick at once (e.g. DCPowerFlow), instead of the noise of
+     * every link on its own. Called once per tick before the workers start.
+     */
+    public interface FlowModel {
+        void flows(int index, double[] flows);
+    }
+
+    final GridLink[] links;
+    final int[] bounds;                 // partition p : links[ bounds[p] .. bounds[p+1] )
+    final SplittableRandom[] streams;
+
+    final ExecutorService pool;
+
+    FlowModel model = null;
+    double[] flows = null;              // of the current tick, with a flow model
+
+    public TickEngine(List<GridLink> links) {
+        this( links, DEFAULT_THREADS, DEFAULT_SEED );
+    }
+
+    public TickEngine(List<GridLink> links, int threads, long seed) {
+
+        // a plain array, Vector.get() would synchronize on every access
+        this.links = links.toArray( new GridLink[0] );
+
+        int workers = Math.max( 1, Math.min( threads, this.links.length / MIN_LINKS_PER_WORKER ) );
+
+        this.bounds = new int[workers + 1];
+        for( int p = 0; p <= workers; p++ ) {
+            bounds[p] = (int) ( (long) this.links.length * p / workers );
+        }
+
+        SplittableRandom root = new SplittableRandom( seed );
+        this.streams = new SplittableRandom[workers];
+        for( int p = 0; p < workers; p++ ) {
+            streams[p] = root.split();
+        }
+
+        // the calling thread works on the last partition
+        this.pool = workers > 1 ? Executors.newFixedThreadPool( workers - 1, new WorkerThreadFactory() ) : null;
+
+        System.out.println( "> TickEngine: " + this.links.length + " links, " + workers + " worker(s), seed=" + seed );
+
+    }
+
+    public int getWorkers() {
+        return streams.length;
+    }
+
+    /**
+     * Takes the flows from the model from the next tick on, the model must have the links of this
+     * engine in the same order.
+     */
+    public TickEngine useFlowModel(FlowModel model) {
+        this.model = model;
+        this.flows = new double[links.length];
+        return this;
+    }
+
+    public String[] linkIds() {
+        String[] ids = new String[links.length];
+        for( int i = 0; i < links.length; i++ ) {
+            ids[i] = links[i].id;
+        }
+        return ids;
+    }
+
+    /**
+     * The flows of the last tick from the flow model, null without one.
+     */
+    public double[] flows() {
+        return flows;
+    }
+
+    /**
+     * Creates one sample per link for the given tick.
+     *
+     * @return the number of samples
+     */
+    public int tick(final int index, final SampleSink sink) {
+
+        if ( model != null )
+            model.flows( index, flows );
+
+        return execute( index, new Partition() {
+            @Override
+            public void run(int partition) {
+                SplittableRandom random = streams[partition];
+                for( int i = bounds[partition]; i < bounds[partition + 1]; i++ ) {
+                    if ( model != null )
+                        sink.sample( new PowerFlowSample( links[i].id, index, flows[i] ) );
+                    else
+                        sink.sample( links[i].newSample( index, random ) );
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Creates one sample per link for the given tick in the buffer, slot i is the sample of link i.
+     * Nothing is allocated per sample. Each worker hands its slots to the sink (may be null) as
+     * soon as they are complete.
+     *
+     * @return the number of samples
+     */
+    public int tick(final int index, final SampleBuffer buffer, final BufferSink sink) {
+
+        if ( buffer.capacity() < links.length )
+            throw new IllegalArgumentException( "The buffer holds " + buffer.capacity() + " samples, the grid has " + links.length + " links." );
+
+        final long ts = PowerFlowSample.tsOf( index );
+
+        if ( model != null )
+            model.flows( index, flows );
+
+        int n = execute( index, new Partition() {
+            @Override
+            public void run(int partition) {
+                SplittableRandom random = streams[partition];
+                int from = bounds[partition];
+                int to = bounds[partition + 1];
+                if ( model != null ) {
+                    for( int i = from; i < to; i++ ) {
+                        buffer.set( i, i, ts, flows[i] );
+                    }
+                }
+                else {
+                    for( int i = from; i < to; i++ ) {
+                        buffer.set( i, i, ts, links[i].nextFlow( random ) );
+                    }
+                }
+                if ( sink != null )
+                    sink.samples( buffer, from, to );
+            }
+        });
+
+        buffer.setSize( n );
+        return n;
+
+    }
+
+    interface Partition {
+        void run(int partition);
+    }
+
+    /**
+     * Runs all partitions, the last one in the calling thread, and waits for all of them.
+     */
+    private int execute(int index, final Partition task) {
+
+        int workers = streams.length;
+
+        List<Future<?>> running = new ArrayList<>( workers - 1 );
+        for( int p = 0; p < workers - 1; p++ ) {
+            final int partition = p;
+            running.add( pool.submit( new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.run( partition );
+                    return null;
+                }
+            }));
+        }
+
+        task.run( workers - 1 );
+
+        // barrier
+        for( Future<?> f : running ) {
+            try {
+                f.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted in tick " + index, e );
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException( "Tick " + index + " failed", e.getCause() );
+            }
+        }
+
+        return links.length;
+
+    }
+
+    public void close() {
+        if ( pool != null )
+            pool.shutdown();
+    }
+
+    static class WorkerThreadFactory implements ThreadFactory {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread( r, "tick-worker-" + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+
+    }
+
+}
@@ -0,0 +1,197 @@
+package tool;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Releases simulation ticks on a wall-clock schedule.
+ *
+ * One tick stands for one second of simulated time (see PowerFlowSample.ts). The period between
+ * ticks is 1 s divided by the speed-up factor, or 1 s divided by the rate if a rate is given. A
+ * period of 0 means unpaced, the ticks run back to back as fast as they can.
+ *
+ * If a tick starts after its due time, it is reported with its lag. When the schedule is behind
+ * by more than one period, CATCH_UP runs the late ticks back to back until the schedule is met
+ * again. SKIP drops them, and the samples show a gap in time.
+ *
+ * The duration and lag of every tick go to the histograms tick.duration and tick.lag.
+ *
+ *    -Dsimulation.speedup=1        real time (0: unpaced, default)
+ *    -Dsimulation.rate=5           ticks per second, overrides the speed-up
+ *    -Dsimulation.ticks=10         number of ticks, 0 runs until stopped or the duration ends
+ *    -Dsimulation.duration=3600    wall-clock seconds, 0 = no limit
+ *    -Dsimulation.lag.policy=catch-up|skip
+ */
+public class TickScheduler {
+
+    public enum LagPolicy {
+
+        CATCH_UP, SKIP;
+
+        public static LagPolicy ofName(String name) {
+            return valueOf( name.trim().toUpperCase().replace( '-', '_' ) );
+        }
+
+    }
+
+    public static double DEFAULT_SPEEDUP = Double.parseDouble( System.getProperty( "simulation.speedup", "0" ) );
+    public static double DEFAULT_RATE = Double.parseDouble( System.getProperty( "simulation.rate", "0" ) );
+    public static int DEFAULT_TICKS = Integer.getInteger( "simulation.ticks", 10 );
+    public static long DEFAULT_DURATION = Long.getLong( "simulation.duration", 0 );
+    public static LagPolicy DEFAULT_LAG_POLICY = LagPolicy.ofName( System.getProperty( "simulation.lag.policy", "catch-up" ) );
+
+    public interface Tick {
+        void run(int index) throws Exception;
+    }
+
+    final long periodNanos;
+    final int ticks;
+    final long durationNanos;
+    final LagPolicy policy;
+
+    final Histogram durations = Metrics.histogram( "tick.duration" );
+    final Histogram lags = Metrics.histogram( "tick.lag" );
+    final Counter skips = Metrics.counter( "tick.skipped" );
+
+    volatile boolean stopped = false;
+
+    int executed = 0;
+    int skipped = 0;
+    long maxLagNanos = 0;
+    long totalLagNanos = 0;
+
+    public TickScheduler() {
+        this( periodOf( DEFAULT_RATE, DEFAULT_SPEEDUP ), DEFAULT_TICKS, DEFAULT_DURATION, DEFAULT_LAG_POLICY );
+    }
+
+    /**
+     * @param periodNanos  wall-clock time per tick, 0 = unpaced
+     * @param ticks        number of ticks, 0 = unlimited
+     * @param durationSec  wall-clock limit in seconds, 0 = unlimited
+     */
+    public TickScheduler(long periodNanos, int ticks, long durationSec, LagPolicy policy) {
+        this.periodNanos = periodNanos;
+        this.ticks = ticks;
+        this.durationNanos = TimeUnit.SECONDS.toNanos( durationSec );
+        this.policy = policy;
+    }
+
+    /**
+     * @return the tick period in ns for a rate (ticks per second) or a speed-up factor, 0 if neither is set
+     */
+    public static long periodOf(double rate, double speedup) {
+        if ( rate > 0 )
+            return (long) ( 1e9 / rate );
+        if ( speedup > 0 )
+            return (long) ( 1e9 / speedup );
+        return 0;
+    }
+
+    public boolean isPaced() {
+        return periodNanos > 0;
+    }
+
+    /**
+     * Runs the ticks in the calling thread. Returns when all ticks are done, the duration is over
+     * or stop() was called.
+     */
+    public void run(Tick tick) throws Exception {
+
+        System.out.println( "> TickScheduler: " + describe() );
+
+        long start = System.nanoTime();
+        int index = 0;
+
+        while ( !stopped && ( ticks <= 0 || index < ticks ) ) {
+
+            long due = start + index * periodNanos;
+            long now = System.nanoTime();
+
+            if ( durationNanos > 0 && Math.max( now, due ) - start >= durationNanos )
+                break;
+
+            if ( now < due ) {
+                sleepUntil( due );
+                if ( stopped )
+                    break;
+            }
+            else if ( policy == LagPolicy.SKIP && periodNanos > 0 && now - due >= periodNanos ) {
+                int behind = (int) ( ( now - due ) / periodNanos );
+                if ( ticks > 0 )
+                    behind = Math.min( behind, ticks - index );
+                skipped = skipped + behind;
+                skips.add( behind );
+                System.out.println( "[SCHEDULE] -> skipped ticks " + index + ".." + ( index + behind - 1 ) );
+                index = index + behind;
+                continue;
+            }
+
+            long lag = isPaced() ? Math.max( 0, System.nanoTime() - due ) : 0;
+            maxLagNanos = Math.max( maxLagNanos, lag );
+            totalLagNanos = totalLagNanos + lag;
+
+            long t0 = System.nanoTime();
+            tick.run( index );
+            long took = System.nanoTime() - t0;
+
+            executed++;
+            durations.record( took );
+            if ( isPaced() )
+                lags.record( lag );
+
+            if ( isPaced() )
+                System.out.println( String.format( "[SCHEDULE] -> tick=%d lag=%.1f ms took=%.1f ms", index, lag / 1e6, took / 1e6 ) );
+
+            index++;
+
+        }
+
+        System.out.println( "> TickScheduler: " + stats() );
+
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public int getExecuted() {
+        return executed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public double getMaxLagMillis() {
+        return maxLagNanos / 1e6;
+    }
+
+    public String stats() {
+        return "executed=" + executed +
+                ", skipped=" + skipped +
+                ", maxLag=" + String.format( "%.1f", maxLagNanos / 1e6 ) + " ms" +
+                ", avgLag=" + String.format( "%.1f", executed == 0 ? 0.0 : totalLagNanos / 1e6 / executed ) + " ms";
+    }
+
+    String describe() {
+        return ( isPaced() ? "period=" + String.format( "%.1f", periodNanos / 1e6 ) + " ms, policy=" + policy : "unpaced" ) +
+                ", ticks=" + ( ticks > 0 ? String.valueOf( ticks ) : "unlimited" ) +
+                ( durationNanos > 0 ? ", duration=" + TimeUnit.NANOSECONDS.toSeconds( durationNanos ) + " s" : "" );
+    }
+
+    private void sleepUntil(long due) {
+        long wait;
+        while ( ( wait = due - System.nanoTime() ) > 0 ) {
+            LockSupport.parkNanos( wait );
+            if ( Thread.currentThread().isInterrupted() ) {
+                stop();
+                return;
+            }
+        }
+    }
+
+}
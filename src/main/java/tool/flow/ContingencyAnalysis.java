@@ -0,0 +1,466 @@
+package tool.flow;
+
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.relations.GridLink;
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * N-1 screening: every link of the grid trips in turn, what happens to the flows of a tick?
+ *
+ * The outages are linear updates of the DC power flow of DCPowerFlow, they share its factorised
+ * susceptance matrix, nothing is factorised again:
+ *
+ *  - a link between the buses m and n: with the angles dtheta of B dtheta = e_m - e_n the transfer
+ *    m -> n shifts ptdf_l = b_l * ( dtheta_i - dtheta_j ) onto link l, and ptdf_k onto the link
+ *    itself. Without link k its flow f_k takes the other paths, link l gets
+ *    f_l + ptdf_l / ( 1 - ptdf_k ) * f_k (the line outage distribution factors)
+ *  - a bridge (the only link between two parts of an island, found by one DFS from the slack bus):
+ *    the part without the slack bus is disconnected, its links carry nothing, its load is not
+ *    served, and the rest loses what came over the bridge at the bridge end
+ *  - a plant link: the production of the plant is lost at its station, the slack bus takes it up
+ *
+ * Each outage is one forward and one backward substitution plus one pass over the links. The
+ * outages are screened by a fork-join pool, each task with its own work arrays.
+ *
+ * A station link is rated so that it runs at contingency.loading of its rating with the nominal
+ * production and load, at least contingency.rating.min MW. An outage overloads a link if the flow
+ * exceeds the rating and grew. Outages are ranked by the MW at risk: the demand of the tick they
+ * disconnect plus the flow above the ratings.
+ *
+ *    -Dcontingency.every=0  -Dcontingency.loading=0.6  -Dcontingency.rating.min=100  -Dcontingency.top=20
+ */
+public class ContingencyAnalysis {
+
+    /**
+     * A full screening every that many ticks (with -Dsimulation.flows=dc), 0 is off.
+     */
+    public static int EVERY = Integer.getInteger( "contingency.every", 0 );
+    public static double LOADING = Double.parseDouble( System.getProperty( "contingency.loading", "0.6" ) );
+    public static double RATING_MIN = Double.parseDouble( System.getProperty( "contingency.rating.min", "100" ) );
+    public static int TOP = Integer.getInteger( "contingency.top", 20 );
+
+    /**
+     * Outages per task.
+     */
+    static final int GRAIN = 32;
+
+    static final byte NONE = 0, LINE = 1, BRIDGE = 2, PLANT = 3;
+    static final String[] TYPES = { "-", "line", "bridge", "plant" };
+
+    final DCPowerFlow flow;
+    final int links;
+    final int rows;
+    final String[] ids;
+
+    final double[] rating;          // per link, 0 if not monitored (plant links)
+
+    // one DFS per island from its slack bus
+    final int[] disc;               // per bus: its position in DFS order
+    final int[] subtree;            // per bus: buses in its DFS subtree
+    final int[] cut;                // per link: for a bridge the bus below it (away from the slack), else -1
+    final int[] order;              // the buses in DFS order
+
+    final Histogram sweep = Metrics.histogram( "contingency.sweep" );
+
+    public ContingencyAnalysis(GridModel grid, DCPowerFlow flow) {
+
+        this.flow = flow;
+        this.links = flow.links;
+        this.rows = flow.ldl.size();
+
+        List<GridLink> linkList = grid.gridLinks();
+        this.ids = new String[links];
+        for( int l = 0; l < links; l++ ) {
+            ids[l] = linkList.get( l ).id;
+        }
+
+        // the ratings from the flows with nominal production and load
+        double[] nominal = new double[links];
+        flow.flows( flow.production, flow.load, nominal );
+        this.rating = new double[links];
+        for( int l = 0; l < links; l++ ) {
+            if ( flow.susceptance[l] > 0 )
+                rating[l] = Math.max( RATING_MIN, Math.abs( nominal[l] ) / LOADING );
+        }
+
+        int buses = flow.buses;
+
+        // the links of every bus
+        int[] offsets = new int[buses + 1];
+        for( int l = 0; l < links; l++ ) {
+            if ( flow.susceptance[l] > 0 ) {
+                offsets[flow.from[l] + 1]++;
+                offsets[flow.to[l] + 1]++;
+            }
+        }
+        for( int b = 0; b < buses; b++ ) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] incident = new int[offsets[buses]];
+        int[] fill = Arrays.copyOf( offsets, buses );
+        for( int l = 0; l < links; l++ ) {
+            if ( flow.susceptance[l] > 0 ) {
+                incident[fill[flow.from[l]]++] = l;
+                incident[fill[flow.to[l]]++] = l;
+            }
+        }
+
+        // bridges by Tarjan's low links, iterative (a radial grid is deep), parallel links are no bridges
+        this.disc = new int[buses];
+        this.subtree = new int[buses];
+        this.cut = new int[links];
+        Arrays.fill( disc, -1 );
+        Arrays.fill( cut, -1 );
+        int[] low = new int[buses];
+        int[] parentLink = new int[buses];
+        int[] stack = new int[buses];
+        this.order = new int[buses];
+        int[] next = fill;
+        System.arraycopy( offsets, 0, next, 0, buses );
+        int time = 0;
+
+        for( int i = 0; i < flow.islands; i++ ) {
+
+            int root = flow.slack[i];
+            int top = 0;
+            stack[top++] = root;
+            disc[root] = low[root] = time;
+            order[time++] = root;
+            parentLink[root] = -1;
+
+            while( top > 0 ) {
+                int v = stack[top - 1];
+                if ( next[v] < offsets[v + 1] ) {
+                    int l = incident[next[v]++];
+                    if ( l == parentLink[v] )
+                        continue;
+                    int u = flow.from[l] == v ? flow.to[l] : flow.from[l];
+                    if ( disc[u] < 0 ) {
+                        disc[u] = low[u] = time;
+                        order[time++] = u;
+                        parentLink[u] = l;
+                        stack[top++] = u;
+                    }
+                    else {
+                        low[v] = Math.min( low[v], disc[u] );
+                    }
+                }
+                else {
+                    top--;
+                    subtree[v] = time - disc[v];
+                    int l = parentLink[v];
+                    if ( l >= 0 ) {
+                        int p = flow.from[l] == v ? flow.to[l] : flow.from[l];
+                        low[p] = Math.min( low[p], low[v] );
+                        if ( low[v] > disc[p] )
+                            cut[l] = v;
+                    }
+                }
+            }
+
+        }
+
+        int bridges = 0;
+        for( int l = 0; l < links; l++ ) {
+            if ( cut[l] >= 0 )
+                bridges++;
+        }
+        System.out.println( "> Contingency analysis: " + links + " links, " + bridges + " bridges between parts of an island" );
+
+    }
+
+    /**
+     * Screens the outage of every link for the given flows, with the demand of the last tick of the
+     * DCPowerFlow. Only while no other tick runs, see run(double[], double[]).
+     */
+    public Report run(double[] flows) {
+        return run( flows, flow.demand );
+    }
+
+    /**
+     * Screens the outage of every link for the given flows (of the links of the DCPowerFlow) and the
+     * demand per bus of the same tick, which a bridge outage leaves unserved. Both arrays are read
+     * during the sweep, they must not change before it returns.
+     */
+    public Report run(double[] flows, double[] demand) {
+
+        long t0 = System.nanoTime();
+
+        Results r = new Results( links, flow.buses );
+        for( int t = 0; t < order.length; t++ ) {
+            r.loadBefore[t + 1] = r.loadBefore[t] + demand[order[t]];
+        }
+        ForkJoinPool.commonPool().invoke( new Sweep( flows, r, 0, links ) );
+
+        sweep.since( t0 );
+        return new Report( r, System.nanoTime() - t0 );
+
+    }
+
+    /**
+     * The outcome of every outage, each written by exactly one task.
+     */
+    static final class Results {
+
+        final byte[] type;
+        final int[] overloads;
+        final int[] worst;              // the link with the highest loading, -1 if none is monitored
+        final double[] worstLoading;
+        final int[] disconnected;
+        final double[] unserved;
+        final double[] excess;
+        final double[] loadBefore;      // demand of the buses before a DFS position
+
+        Results(int n, int buses) {
+            type = new byte[n];
+            overloads = new int[n];
+            worst = new int[n];
+            worstLoading = new double[n];
+            disconnected = new int[n];
+            unserved = new double[n];
+            excess = new double[n];
+            loadBefore = new double[buses + 1];
+        }
+
+        double atRisk(int k) {
+            return unserved[k] + excess[k];
+        }
+
+    }
+
+    final class Sweep extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final double[] flows;
+        final Results results;
+        final int from, to;
+
+        Sweep(double[] flows, Results results, int from, int to) {
+            this.flows = flows;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if ( to - from > GRAIN ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new Sweep( flows, results, from, mid ), new Sweep( flows, results, mid, to ) );
+                return;
+            }
+
+            double[] rhs = new double[rows];
+            double[] x = new double[rows];
+            double[] work = new double[rows];
+            double[] dtheta = new double[flow.buses];
+
+            for( int k = from; k < to; k++ ) {
+                screen( k, flows, results, rhs, x, work, dtheta );
+            }
+
+        }
+
+    }
+
+    void screen(int k, double[] flows, Results r, double[] rhs, double[] x, double[] work, double[] dtheta) {
+
+        r.worst[k] = -1;
+
+        double scale;
+        int below = -1;                 // the first bus of the disconnected part
+
+        if ( flow.plantOf[k] >= 0 ) {
+            int bus = flow.plantBus[flow.plantOf[k]];
+            if ( bus < 0 )
+                return;
+            r.type[k] = PLANT;
+            Arrays.fill( rhs, 0 );
+            add( rhs, bus, -flows[k] );
+            scale = 1;
+        }
+        else if ( flow.susceptance[k] == 0 ) {
+            return;
+        }
+        else if ( cut[k] >= 0 ) {
+            r.type[k] = BRIDGE;
+            below = cut[k];
+            int above = flow.from[k] == below ? flow.to[k] : flow.from[k];
+            // what came over the bridge into the part with the slack bus is gone
+            double over = flow.from[k] == below ? flows[k] : -flows[k];
+            Arrays.fill( rhs, 0 );
+            add( rhs, above, -over );
+            scale = 1;
+            r.disconnected[k] = subtree[below];
+            r.unserved[k] = r.loadBefore[disc[below] + subtree[below]] - r.loadBefore[disc[below]];
+        }
+        else {
+            r.type[k] = LINE;
+            Arrays.fill( rhs, 0 );
+            add( rhs, flow.from[k], 1 );
+            add( rhs, flow.to[k], -1 );
+            scale = Double.NaN;         // after the solve
+        }
+
+        flow.ldl.solve( rhs, x, work );
+        for( int b = 0; b < flow.buses; b++ ) {
+            int i = flow.row[b];
+            dtheta[b] = i >= 0 ? x[i] : 0;
+        }
+
+        if ( r.type[k] == LINE ) {
+            double ptdf = flow.susceptance[k] * ( dtheta[flow.from[k]] - dtheta[flow.to[k]] );
+            scale = flows[k] / ( 1 - ptdf );
+        }
+
+        int first = below < 0 ? 0 : disc[below];
+        int end = below < 0 ? 0 : first + subtree[below];
+
+        for( int l = 0; l < links; l++ ) {
+
+            if ( l == k || rating[l] == 0 )
+                continue;
+
+            int i = flow.from[l], j = flow.to[l];
+            if ( disc[i] >= first && disc[i] < end )
+                continue;               // disconnected, carries nothing
+
+            double after = Math.abs( flows[l] + scale * flow.susceptance[l] * ( dtheta[i] - dtheta[j] ) );
+            double loading = after / rating[l];
+            if ( loading > r.worstLoading[k] ) {
+                r.worstLoading[k] = loading;
+                r.worst[k] = l;
+            }
+            if ( after > rating[l] && after > Math.abs( flows[l] ) ) {
+                r.overloads[k]++;
+                r.excess[k] += after - rating[l];
+            }
+
+        }
+
+    }
+
+    void add(double[] rhs, int bus, double value) {
+        int i = flow.row[bus];
+        if ( i >= 0 )
+            rhs[i] += value;
+    }
+
+    /**
+     * The screened outages, ranked by MW at risk.
+     */
+    public final class Report {
+
+        final Results results;
+        final long nanos;
+        final List<Integer> ranked;
+
+        Report(final Results results, long nanos) {
+
+            this.results = results;
+            this.nanos = nanos;
+
+            List<Integer> critical = new ArrayList<>();
+            for( int k = 0; k < links; k++ ) {
+                if ( results.overloads[k] > 0 || results.disconnected[k] > 0 )
+                    critical.add( k );
+            }
+            Collections.sort( critical, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int c = Double.compare( results.atRisk( b ), results.atRisk( a ) );
+                    return c != 0 ? c : Double.compare( results.worstLoading[b], results.worstLoading[a] );
+                }
+            });
+            this.ranked = critical;
+
+        }
+
+        /**
+         * The outages which overload a link or disconnect stations, the worst first.
+         */
+        public List<Integer> ranked() {
+            return ranked;
+        }
+
+        public int screened() {
+            int n = 0;
+            for( byte t : results.type ) {
+                if ( t != NONE )
+                    n++;
+            }
+            return n;
+        }
+
+        public int withOverloads() {
+            int n = 0;
+            for( int o : results.overloads ) {
+                if ( o > 0 )
+                    n++;
+            }
+            return n;
+        }
+
+        public int islanding() {
+            int n = 0;
+            for( int d : results.disconnected ) {
+                if ( d > 0 )
+                    n++;
+            }
+            return n;
+        }
+
+        public String linkId(int k) {
+            return ids[k];
+        }
+
+        public int overloads(int k) {
+            return results.overloads[k];
+        }
+
+        public int disconnected(int k) {
+            return results.disconnected[k];
+        }
+
+        public double atRisk(int k) {
+            return results.atRisk( k );
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder();
+            sb.append( String.format( Locale.ROOT, "> N-1: %d outages screened in %.1f ms, %d overload links, %d disconnect stations%n",
+                    screened(), nanos / 1e6, withOverloads(), islanding() ) );
+
+            if ( ranked.isEmpty() )
+                return sb.toString().trim();
+
+            sb.append( String.format( Locale.ROOT, "  %4s  %-28s %-6s %12s %9s %9s  %-28s %8s%n",
+                    "rank", "outage", "type", "at risk", "overloads", "stations", "worst link", "loading" ) );
+            for( int i = 0; i < Math.min( TOP, ranked.size() ); i++ ) {
+                int k = ranked.get( i );
+                int w = results.worst[k];
+                sb.append( String.format( Locale.ROOT, "  %4d  %-28s %-6s %9.1f MW %9d %9d  %-28s %7.1f%%%n",
+                        i + 1, ids[k], TYPES[results.type[k]], results.atRisk( k ), results.overloads[k], results.disconnected[k],
+                        w < 0 ? "-" : ids[w], 100 * results.worstLoading[k] ) );
+            }
+            return sb.toString().trim();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,385 @@
+package tool.flow;
+
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.SpatialIndex;
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+import metrics.Histogram;
+import metrics.Metrics;
+import tool.TickEngine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Link flows from a DC power flow instead of noise around a fixed value, so that the flows of a
+ * tick satisfy Kirchhoff's laws for the generation and load of that tick.
+ *
+ * The stations are the buses. A plant feeds its production into the station of its plant link, the
+ * consumption of a region is shared equally by the stations of its country. The reactance of a
+ * station link grows with its length, its susceptance is b = 1 / ( flow.x.per.km * km ). With the
+ * bus angles theta from
+ *
+ *    B theta = P          (B: susceptance matrix, P: injection = generation - load per bus)
+ *
+ * a link carries b * ( theta[source] - theta[target] ), a plant link the production of its plant.
+ *
+ * Every connected island gets a slack bus (the one with the most links) with theta = 0, it takes
+ * up what generation and load of the island do not cover; this is the import / export of the grid
+ * which calcBalanceForRegion shows as excess. Without the slack rows B is positive definite, it
+ * is factorised once (SparseLDL), every tick is one forward and one backward substitution.
+ *
+ * Per tick the production of every plant and the load of every station vary by up to
+ * +/- flow.noise (a fraction), drawn from a seeded stream, so a run is reproducible.
+ *
+ *    -Dsimulation.flows=dc  -Dflow.x.per.km=0.3  -Dflow.noise=0.1
+ */
+public class DCPowerFlow implements TickEngine.FlowModel {
+
+    public static double X_PER_KM = Double.parseDouble( System.getProperty( "flow.x.per.km", "0.3" ) );
+    public static double NOISE = Double.parseDouble( System.getProperty( "flow.noise", "0.1" ) );
+
+    /**
+     * Shorter links get the reactance of this length.
+     */
+    static final double MIN_KM = 1.0;
+
+    final int buses;
+    final int plants;
+    final int links;
+
+    final int[] from;               // per link: source bus, -1 for a plant link
+    final int[] to;                 // per link: target bus
+    final double[] susceptance;     // per link, 0 for plant links and links without a bus pair
+    final int[] plantOf;            // per link: plant ordinal of a plant link, else -1
+
+    final int[] plantBus;           // per plant: its bus, -1 if the plant has no link
+    final double[] production;      // per plant
+    final double[] load;            // per bus
+
+    final int islands;
+    final int[] island;             // per bus
+    final int[] slack;              // per island: its slack bus
+    final int[] row;                // per bus: row in B, -1 for slack buses
+
+    final SparseLDL ldl;
+    final long factorisedNanos;
+
+    final SplittableRandom random;
+    final Histogram solve = Metrics.histogram( "flow.solve" );
+
+    // reused by every tick
+    final double[] generation;
+    final double[] demand;
+    final double[] injection;
+    final double[] theta;
+    final double[] rhs;
+    final double[] x;
+    final double[] work;
+
+    double slackTotal = 0;
+
+    public DCPowerFlow(GridModel grid) {
+        this( grid, TickEngine.DEFAULT_SEED );
+    }
+
+    public DCPowerFlow(GridModel grid, long seed) {
+
+        List<Station> stations = grid.stations();
+        List<PowerPlant> plantList = grid.powerPlants();
+        List<GridLink> linkList = grid.gridLinks();
+
+        this.buses = stations.size();
+        this.plants = plantList.size();
+        this.links = linkList.size();
+        this.random = new SplittableRandom( seed );
+
+        Map<Node, Integer> busOf = new IdentityHashMap<>();
+        for( int b = 0; b < buses; b++ ) {
+            busOf.put( stations.get( b ), b );
+        }
+        Map<Node, Integer> plantOrdinal = new IdentityHashMap<>();
+        for( int p = 0; p < plants; p++ ) {
+            plantOrdinal.put( plantList.get( p ), p );
+        }
+
+        // links, plants and islands
+        this.from = new int[links];
+        this.to = new int[links];
+        this.susceptance = new double[links];
+        this.plantOf = new int[links];
+        this.plantBus = new int[plants];
+        this.production = new double[plants];
+        Arrays.fill( plantBus, -1 );
+
+        int[] parent = new int[buses];
+        int[] degree = new int[buses];
+        for( int b = 0; b < buses; b++ ) {
+            parent[b] = b;
+        }
+
+        for( int l = 0; l < links; l++ ) {
+
+            GridLink link = linkList.get( l );
+            Integer p = plantOrdinal.get( link.source() );
+            Integer t = busOf.get( link.target() );
+            to[l] = t == null ? -1 : t;
+
+            if ( p != null ) {
+                from[l] = -1;
+                plantOf[l] = p;
+                plantBus[p] = to[l];
+                production[p] = plantList.get( p ).production;
+                continue;
+            }
+
+            Integer s = busOf.get( link.source() );
+            from[l] = s == null ? -1 : s;
+            plantOf[l] = -1;
+            if ( from[l] < 0 || to[l] < 0 || from[l] == to[l] )
+                continue;
+
+            Node a = link.source();
+            Node b = link.target();
+            double km = Math.max( MIN_KM, SpatialIndex.distanceKm( a.lat, a.lon, b.lat, b.lon ) );
+            susceptance[l] = 1.0 / ( X_PER_KM * km );
+
+            degree[from[l]]++;
+            degree[to[l]]++;
+            parent[find( parent, from[l] )] = find( parent, to[l] );
+
+        }
+
+        // one slack bus per island, the one with the most links
+        this.island = new int[buses];
+        Map<Integer, Integer> islandOfRoot = new HashMap<>();
+        int[] best = new int[buses];
+        int count = 0;
+        for( int b = 0; b < buses; b++ ) {
+            int root = find( parent, b );
+            Integer i = islandOfRoot.get( root );
+            if ( i == null ) {
+                i = count++;
+                islandOfRoot.put( root, i );
+                best[i] = b;
+            }
+            island[b] = i;
+            if ( degree[b] > degree[best[i]] )
+                best[i] = b;
+        }
+        this.islands = count;
+        this.slack = Arrays.copyOf( best, islands );
+
+        this.row = new int[buses];
+        int rows = 0;
+        for( int b = 0; b < buses; b++ ) {
+            row[b] = slack[island[b]] == b ? -1 : rows++;
+        }
+
+        // the load of a region on the stations of its country
+        this.load = new double[buses];
+        Map<String, Integer> stationsPerCountry = new HashMap<>();
+        for( Station s : stations ) {
+            Integer n = stationsPerCountry.get( s.country );
+            stationsPerCountry.put( s.country, n == null ? 1 : n + 1 );
+        }
+        Map<String, Double> consumption = new HashMap<>();
+        double unserved = 0;
+        for( Region r : grid.regions() ) {
+            if ( stationsPerCountry.containsKey( r.country ) ) {
+                Double c = consumption.get( r.country );
+                consumption.put( r.country, ( c == null ? 0 : c ) + r.consumption );
+            }
+            else {
+                unserved = unserved + r.consumption;
+            }
+        }
+        for( int b = 0; b < buses; b++ ) {
+            Double c = consumption.get( stations.get( b ).country );
+            if ( c != null )
+                load[b] = c / stationsPerCountry.get( stations.get( b ).country );
+        }
+
+        // B without the slack rows, both triangles in compressed columns
+        int[] Ap = new int[rows + 1];
+        for( int b = 0; b < buses; b++ ) {
+            if ( row[b] >= 0 )
+                Ap[row[b] + 1]++;                   // diagonal
+        }
+        for( int l = 0; l < links; l++ ) {
+            if ( susceptance[l] > 0 && row[from[l]] >= 0 && row[to[l]] >= 0 ) {
+                Ap[row[from[l]] + 1]++;
+                Ap[row[to[l]] + 1]++;
+            }
+        }
+        for( int r = 0; r < rows; r++ ) {
+            Ap[r + 1] += Ap[r];
+        }
+
+        int[] Ai = new int[Ap[rows]];
+        double[] Ax = new double[Ap[rows]];
+        int[] next = Arrays.copyOf( Ap, rows );
+        double[] diagonal = new double[buses];
+        for( int l = 0; l < links; l++ ) {
+            if ( susceptance[l] == 0 )
+                continue;
+            diagonal[from[l]] += susceptance[l];
+            diagonal[to[l]] += susceptance[l];
+            int i = row[from[l]], j = row[to[l]];
+            if ( i >= 0 && j >= 0 ) {
+                Ai[next[i]] = j;
+                Ax[next[i]++] = -susceptance[l];
+                Ai[next[j]] = i;
+                Ax[next[j]++] = -susceptance[l];
+            }
+        }
+        for( int b = 0; b < buses; b++ ) {
+            int i = row[b];
+            if ( i >= 0 ) {
+                Ai[next[i]] = i;
+                Ax[next[i]++] = diagonal[b];
+            }
+        }
+
+        long t0 = System.nanoTime();
+        this.ldl = new SparseLDL( rows, Ap, Ai, Ax );
+        this.factorisedNanos = System.nanoTime() - t0;
+
+        this.generation = new double[plants];
+        this.demand = new double[buses];
+        this.injection = new double[buses];
+        this.theta = new double[buses];
+        this.rhs = new double[rows];
+        this.x = new double[rows];
+        this.work = new double[rows];
+
+        double totalGeneration = 0;
+        for( int p = 0; p < plants; p++ ) {
+            if ( plantBus[p] >= 0 )
+                totalGeneration = totalGeneration + production[p];
+        }
+        double totalLoad = 0;
+        for( int b = 0; b < buses; b++ ) {
+            totalLoad = totalLoad + load[b];
+        }
+
+        System.out.println( String.format( Locale.ROOT,
+                "> DC power flow: %d buses, %d islands, B %d rows with %d entries, L %d entries, factorised in %.1f ms",
+                buses, islands, rows, Ap[rows], ldl.nonZeros(), factorisedNanos / 1e6 ) );
+        System.out.println( String.format( Locale.ROOT,
+                "> DC power flow: generation %.1f MW, load %.1f MW, the slack buses take up %.1f MW%s",
+                totalGeneration, totalLoad, totalGeneration - totalLoad,
+                unserved > 0 ? String.format( Locale.ROOT, " (%.1f MW load of regions without stations ignored)", unserved ) : "" ) );
+
+    }
+
+    static int find(int[] parent, int b) {
+        while( parent[b] != b ) {
+            parent[b] = parent[parent[b]];
+            b = parent[b];
+        }
+        return b;
+    }
+
+    /**
+     * The flows of one tick: production and load with noise, then the power flow.
+     */
+    @Override
+    public void flows(int index, double[] flows) {
+
+        for( int p = 0; p < plants; p++ ) {
+            generation[p] = production[p] * ( 1 + NOISE * ( 2 * random.nextDouble() - 1 ) );
+        }
+        for( int b = 0; b < buses; b++ ) {
+            demand[b] = load[b] * ( 1 + NOISE * ( 2 * random.nextDouble() - 1 ) );
+        }
+
+        long t0 = System.nanoTime();
+        flows( generation, demand, flows );
+        solve.since( t0 );
+
+    }
+
+    /**
+     * The link flows for the given production per plant and load per bus.
+     */
+    public void flows(double[] generation, double[] demand, double[] flows) {
+
+        for( int b = 0; b < buses; b++ ) {
+            injection[b] = -demand[b];
+        }
+        for( int p = 0; p < plants; p++ ) {
+            if ( plantBus[p] >= 0 )
+                injection[plantBus[p]] += generation[p];
+        }
+
+        angles( injection, theta );
+
+        for( int l = 0; l < links; l++ ) {
+            if ( plantOf[l] >= 0 )
+                flows[l] = generation[plantOf[l]];
+            else if ( susceptance[l] > 0 )
+                flows[l] = susceptance[l] * ( theta[from[l]] - theta[to[l]] );
+            else
+                flows[l] = 0;
+        }
+
+    }
+
+    /**
+     * The bus angles for the injections (generation - load per bus), 0 at the slack buses.
+     */
+    public void angles(double[] injection, double[] theta) {
+
+        double total = 0;
+        for( int b = 0; b < buses; b++ ) {
+            if ( row[b] >= 0 )
+                rhs[row[b]] = injection[b];
+            total = total + injection[b];
+        }
+        slackTotal = total;
+
+        ldl.solve( rhs, x, work );
+
+        for( int b = 0; b < buses; b++ ) {
+            theta[b] = row[b] >= 0 ? x[row[b]] : 0;
+        }
+
+    }
+
+    /**
+     * What the slack buses took up in the last solve, positive if the grid produced more than it
+     * consumed (an export).
+     */
+    public double slack() {
+        return slackTotal;
+    }
+
+    /**
+     * The demand per bus of the last tick, overwritten by the next one.
+     */
+    public double[] demand() {
+        return demand;
+    }
+
+    public int busCount() {
+        return buses;
+    }
+
+    public int islandCount() {
+        return islands;
+    }
+
+    public SparseLDL factor() {
+        return ldl;
+    }
+
+}
@@ -0,0 +1,276 @@
+package tool.flow;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * LDL' factorisation of a sparse symmetric positive definite matrix, for many solves with the same
+ * matrix.
+ *
+ * The rows are reordered by minimum degree first, so that eliminating a node adds few new entries
+ * (fill-in) to L; for grid-like graphs L stays a small multiple of the matrix. The factorisation is
+ * the up-looking LDL' of T. Davis ("Algorithm 849: A concise sparse Cholesky factorization
+ * package"): the elimination tree gives the pattern of every row of L, then the rows are computed
+ * one after the other. A solve is one forward and one backward substitution, O(nnz(L)), and
+ * allocates nothing.
+ *
+ * The matrix is given in compressed columns with both triangles (a symmetric pattern), rows within
+ * a column in any order, duplicates are added up.
+ */
+public final class SparseLDL {
+
+    final int n;
+    final int[] perm;           // perm[k] : the row of the matrix which is row k of L
+    final int[] inverse;        // inverse[perm[k]] == k
+
+    final int[] Lp;             // columns of L (strictly below the diagonal)
+    final int[] Li;
+    final double[] Lx;
+    final double[] D;
+
+    /**
+     * @throws IllegalArgumentException if the matrix is singular (not positive definite)
+     */
+    public SparseLDL(int n, int[] Ap, int[] Ai, double[] Ax) {
+
+        this.n = n;
+        this.perm = minimumDegree( n, Ap, Ai );
+        this.inverse = new int[n];
+        for( int k = 0; k < n; k++ ) {
+            inverse[perm[k]] = k;
+        }
+
+        // symbolic: elimination tree and column counts of L
+        int[] parent = new int[n];
+        int[] lnz = new int[n];
+        int[] flag = new int[n];
+        for( int k = 0; k < n; k++ ) {
+            parent[k] = -1;
+            flag[k] = k;
+            int kk = perm[k];
+            for( int p = Ap[kk]; p < Ap[kk + 1]; p++ ) {
+                int i = inverse[Ai[p]];
+                if ( i < k ) {
+                    for( ; flag[i] != k; i = parent[i] ) {
+                        if ( parent[i] == -1 )
+                            parent[i] = k;
+                        lnz[i]++;
+                        flag[i] = k;
+                    }
+                }
+            }
+        }
+
+        this.Lp = new int[n + 1];
+        for( int k = 0; k < n; k++ ) {
+            Lp[k + 1] = Lp[k] + lnz[k];
+        }
+        this.Li = new int[Lp[n]];
+        this.Lx = new double[Lp[n]];
+        this.D = new double[n];
+
+        // numeric: row k of L from the rows before it
+        double[] y = new double[n];
+        int[] pattern = new int[n];
+        for( int k = 0; k < n; k++ ) {
+
+            y[k] = 0;
+            int top = n;
+            flag[k] = k;
+            lnz[k] = 0;
+            int kk = perm[k];
+
+            for( int p = Ap[kk]; p < Ap[kk + 1]; p++ ) {
+                int i = inverse[Ai[p]];
+                if ( i <= k ) {
+                    y[i] += Ax[p];
+                    int len = 0;
+                    for( ; flag[i] != k; i = parent[i] ) {
+                        pattern[len++] = i;
+                        flag[i] = k;
+                    }
+                    while( len > 0 ) {
+                        pattern[--top] = pattern[--len];
+                    }
+                }
+            }
+
+            D[k] = y[k];
+            y[k] = 0;
+            for( ; top < n; top++ ) {
+                int i = pattern[top];
+                double yi = y[i];
+                y[i] = 0;
+                int end = Lp[i] + lnz[i];
+                int p;
+                for( p = Lp[i]; p < end; p++ ) {
+                    y[Li[p]] -= Lx[p] * yi;
+                }
+                double lki = yi / D[i];
+                D[k] -= lki * yi;
+                Li[p] = k;
+                Lx[p] = lki;
+                lnz[i]++;
+            }
+
+            if ( !( D[k] > 0 ) )
+                throw new IllegalArgumentException( "Matrix not positive definite at row " + perm[k] + " (D=" + D[k] + ")" );
+
+        }
+
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * The entries of L below the diagonal.
+     */
+    public int nonZeros() {
+        return Lp[n];
+    }
+
+    /**
+     * Solves A x = b.
+     *
+     * @param work  n values, overwritten
+     */
+    public void solve(double[] b, double[] x, double[] work) {
+
+        for( int k = 0; k < n; k++ ) {
+            work[k] = b[perm[k]];
+        }
+
+        for( int j = 0; j < n; j++ ) {
+            double wj = work[j];
+            if ( wj != 0 ) {
+                for( int p = Lp[j]; p < Lp[j + 1]; p++ ) {
+                    work[Li[p]] -= Lx[p] * wj;
+                }
+            }
+        }
+
+        for( int j = 0; j < n; j++ ) {
+            work[j] /= D[j];
+        }
+
+        for( int j = n - 1; j >= 0; j-- ) {
+            double wj = work[j];
+            for( int p = Lp[j]; p < Lp[j + 1]; p++ ) {
+                wj -= Lx[p] * work[Li[p]];
+            }
+            work[j] = wj;
+        }
+
+        for( int k = 0; k < n; k++ ) {
+            x[perm[k]] = work[k];
+        }
+
+    }
+
+    /**
+     * Minimum degree ordering on the elimination graph: the node with the fewest neighbours is
+     * eliminated next and its neighbours become a clique. Ties go to the lower index, so the order
+     * is the same in every run.
+     */
+    static int[] minimumDegree(int n, int[] Ap, int[] Ai) {
+
+        int[][] adj = new int[n][];
+        int[] deg = new int[n];
+        for( int j = 0; j < n; j++ ) {
+            int[] a = new int[Ap[j + 1] - Ap[j]];
+            int size = 0;
+            for( int p = Ap[j]; p < Ap[j + 1]; p++ ) {
+                if ( Ai[p] != j )
+                    a[size++] = Ai[p];
+            }
+            Arrays.sort( a, 0, size );
+            adj[j] = a;
+            deg[j] = unique( a, size );
+        }
+
+        boolean[] eliminated = new boolean[n];
+        PriorityQueue<Long> queue = new PriorityQueue<>( Math.max( 1, n ) );
+        for( int j = 0; j < n; j++ ) {
+            queue.add( key( deg[j], j ) );
+        }
+
+        int[] order = new int[n];
+        int[] merged = new int[16];
+        int k = 0;
+
+        while( k < n ) {
+
+            long top = queue.poll();
+            int v = (int) top;
+            if ( eliminated[v] || deg[v] != (int) ( top >>> 32 ) )
+                continue;               // an outdated entry
+
+            eliminated[v] = true;
+            order[k++] = v;
+
+            int[] nv = adj[v];
+            int dv = deg[v];
+
+            for( int a = 0; a < dv; a++ ) {
+
+                int u = nv[a];
+
+                // adj[u] = adj[u] - v + adj[v] - u, both sorted
+                int[] nu = adj[u];
+                int du = deg[u];
+                if ( merged.length < du + dv )
+                    merged = new int[2 * ( du + dv )];
+
+                int size = 0, i = 0, j = 0;
+                while( i < du || j < dv ) {
+                    int x;
+                    if ( j >= dv || ( i < du && nu[i] < nv[j] ) )
+                        x = nu[i++];
+                    else if ( i >= du || nv[j] < nu[i] )
+                        x = nv[j++];
+                    else {
+                        x = nu[i++];
+                        j++;
+                    }
+                    if ( x != v && x != u )
+                        merged[size++] = x;
+                }
+
+                if ( nu.length < size )
+                    nu = new int[Math.max( size, 2 * nu.length )];
+                System.arraycopy( merged, 0, nu, 0, size );
+                adj[u] = nu;
+                if ( deg[u] != size ) {
+                    deg[u] = size;
+                    queue.add( key( size, u ) );
+                }
+
+            }
+
+            adj[v] = null;
+
+        }
+
+        return order;
+
+    }
+
+    static long key(int degree, int node) {
+        return ( (long) degree << 32 ) | node;
+    }
+
+    /**
+     * Removes repeated values of the sorted a[0 .. size), returns the new size.
+     */
+    static int unique(int[] a, int size) {
+        int u = 0;
+        for( int i = 0; i < size; i++ ) {
+            if ( u == 0 || a[u - 1] != a[i] )
+                a[u++] = a[i];
+        }
+        return u;
+    }
+
+}
@@ -0,0 +1,466 @@
+package tool.geojson;
+
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.relations.InterNodeLink;
+import datamodel.poi.Node;
+import datamodel.poi.POIData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Writes GeoJSON features straight into a reusable StringBuilder, without object trees and without
+ * string concatenation.
+ *
+ * The features have the same content as before (OrgJsonService for POIs, the concatenated strings
+ * of the links), only the key order and the number format can differ: integral coordinates are
+ * written without ".0" (like org.json), non finite numbers as null. Strings are escaped, also the
+ * ones which were concatenated before.
+ *
+ * Features written one after the other are comma separated, so the buffer can be handed to
+ * GeoJSONStreamWriter.features() as is. encodeAll() encodes a large list in parallel chunks and
+ * writes the chunks in list order, the output does not depend on the number of threads.
+ */
+public final class GeoJSONEncoder {
+
+    /**
+     * Features per chunk in encodeAll().
+     */
+    public static int CHUNK_SIZE = Integer.getInteger( "export.chunk.size", 512 );
+
+    static final ThreadLocal<GeoJSONEncoder> LOCAL = new ThreadLocal<GeoJSONEncoder>() {
+        @Override
+        protected GeoJSONEncoder initialValue() {
+            return new GeoJSONEncoder( 512 );
+        }
+    };
+
+    final StringBuilder sb;
+    int features = 0;
+
+    public GeoJSONEncoder() {
+        this( 4096 );
+    }
+
+    public GeoJSONEncoder(int capacity) {
+        this.sb = new StringBuilder( capacity );
+    }
+
+    /**
+     * The empty encoder of this thread, for one feature at a time. Take the result with toString()
+     * before the encoder is used again.
+     */
+    public static GeoJSONEncoder local() {
+        return LOCAL.get().reset();
+    }
+
+    public GeoJSONEncoder reset() {
+        sb.setLength( 0 );
+        features = 0;
+        return this;
+    }
+
+    public CharSequence buffer() {
+        return sb;
+    }
+
+    public int featureCount() {
+        return features;
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    /*
+     * Features
+     */
+
+    /**
+     * A point feature with name, image and the properties of the POI (same as OrgJsonService).
+     */
+    public GeoJSONEncoder poi(POIData p) {
+        return poi( p, p.getLongitude(), p.getLatitude(), -1 );
+    }
+
+    /**
+     * The POI at another position, coordinates with at most the given decimals (-1: all).
+     */
+    public GeoJSONEncoder poi(POIData p, double lon, double lat, int decimals) {
+
+        Properties props = p.getProperties();
+
+        beginFeature();
+
+        if ( p.getId() != null ) {
+            key( "id" );
+            string( p.getId() );
+            sb.append( ',' );
+        }
+
+        key( "geometry" );
+        sb.append( "{\"type\":\"Point\",\"coordinates\":" );
+        position( lon, lat, decimals );
+        sb.append( "}," );
+
+        // the POI properties win over name and image, as with JSONObject.put
+        key( "properties" );
+        sb.append( '{' );
+        boolean first = true;
+        if ( p.getName() != null && !props.containsKey( "name" ) ) {
+            first = property( first, "name", p.getName() );
+        }
+        if ( !props.containsKey( "image" ) ) {
+            first = property( first, "image", p.getType().getImageFile() );
+        }
+        Enumeration<Object> keys = props.keys();
+        while ( keys.hasMoreElements() ) {
+            Object k = keys.nextElement();
+            Object v = props.get( k );
+            if ( k instanceof String && v instanceof String )
+                first = property( first, (String) k, (String) v );
+        }
+        sb.append( '}' );
+
+        return endFeature();
+
+    }
+
+    /**
+     * The POIs as one FeatureCollection.
+     */
+    public static String featureCollection(List<POIData> pois) {
+        GeoJSONEncoder e = new GeoJSONEncoder( 256 * pois.size() + 64 );
+        e.sb.append( "{\"type\":\"FeatureCollection\",\"features\":[" );
+        for( POIData p : pois ) {
+            e.poi( p );
+        }
+        e.sb.append( "]}" );
+        return e.toString();
+    }
+
+    /**
+     * A line between the two nodes of a link, shifted by its visual offset, with the popupContent
+     * "<linkType>: (<source name>=><target id>)".
+     */
+    public GeoJSONEncoder link(InterNodeLink l) {
+
+        Node a = l.source();
+        Node b = l.target();
+        double offset = l.visualOffset();
+
+        beginFeature();
+        key( "geometry" );
+        sb.append( "{\"type\":\"LineString\",\"coordinates\":[" );
+        position( a.lon - offset, a.lat + offset, -1 );
+        sb.append( ',' );
+        position( b.lon - offset, b.lat + offset, -1 );
+        sb.append( "]}," );
+
+        key( "properties" );
+        sb.append( "{\"popupContent\":\"" );
+        escape( l.linkType() );
+        sb.append( ": (" );
+        escape( a.name );
+        sb.append( "=>" );
+        escape( b.id );
+        sb.append( ")\"}" );
+
+        return endFeature();
+
+    }
+
+    /**
+     * The transfer line between two regions, shifted by offset, with the popupContent
+     * "Transfer: (<country>=><country>) <total>".
+     */
+    public GeoJSONEncoder regionLink(Region r1, Region r2, double offset, String total) {
+
+        beginFeature();
+        key( "geometry" );
+        sb.append( "{\"type\":\"LineString\",\"coordinates\":[" );
+        position( r1.lon - offset, r1.lat + offset, -1 );
+        sb.append( ',' );
+        position( r2.lon - offset, r2.lat + offset, -1 );
+        sb.append( "]}," );
+
+        key( "properties" );
+        sb.append( "{\"popupContent\":\"Transfer: (" );
+        escape( r1.country );
+        sb.append( "=>" );
+        escape( r2.country );
+        sb.append( ") " );
+        escape( total );
+        sb.append( "\"}" );
+
+        return endFeature();
+
+    }
+
+    /**
+     * A LineString of one part or a MultiLineString, the parts as interleaved lon,lat arrays.
+     * Rounded points which repeat the one before are dropped, parts with less than two points too.
+     *
+     * @param properties  alternating keys and string values
+     * @return false (nothing written) if no part is left
+     */
+    public boolean lines(List<double[]> parts, int decimals, String... properties) {
+
+        int mark = sb.length();
+        int marked = features;
+
+        beginFeature();
+        key( "geometry" );
+        sb.append( "{\"type\":\"MultiLineString\",\"coordinates\":[" );
+        int typeAt = sb.length() - "MultiLineString\",\"coordinates\":[".length();
+
+        int written = 0;
+        int singleStart = -1;
+        for( double[] part : parts ) {
+
+            int partStart = sb.length();
+            if ( written > 0 )
+                sb.append( ',' );
+            int open = sb.length();
+            sb.append( '[' );
+
+            int points = 0;
+            double lastLon = Double.NaN, lastLat = Double.NaN;
+            for( int i = 0; i + 1 < part.length; i += 2 ) {
+                double lon = decimals < 0 ? part[i] : round( part[i], decimals );
+                double lat = decimals < 0 ? part[i + 1] : round( part[i + 1], decimals );
+                if ( lon == lastLon && lat == lastLat )
+                    continue;
+                if ( points > 0 )
+                    sb.append( ',' );
+                position( lon, lat, -1 );
+                lastLon = lon;
+                lastLat = lat;
+                points++;
+            }
+
+            if ( points < 2 ) {
+                sb.setLength( partStart );
+                continue;
+            }
+            sb.append( ']' );
+            if ( written == 0 )
+                singleStart = open;
+            written++;
+
+        }
+
+        if ( written == 0 ) {
+            sb.setLength( mark );
+            features = marked;
+            return false;
+        }
+
+        if ( written == 1 ) {
+            // a LineString: drop "Multi" and the outer brackets
+            String line = sb.substring( singleStart );
+            sb.setLength( typeAt );
+            sb.append( "LineString\",\"coordinates\":" ).append( line );
+        }
+        else {
+            sb.append( ']' );
+        }
+        sb.append( "}," );
+
+        key( "properties" );
+        sb.append( '{' );
+        boolean first = true;
+        for( int i = 0; i + 1 < properties.length; i += 2 ) {
+            first = property( first, properties[i], properties[i + 1] );
+        }
+        sb.append( '}' );
+
+        endFeature();
+        return true;
+
+    }
+
+    /*
+     * Building blocks
+     */
+
+    public GeoJSONEncoder beginFeature() {
+        if ( features > 0 )
+            sb.append( ',' );
+        sb.append( "{\"type\":\"Feature\"," );
+        return this;
+    }
+
+    public GeoJSONEncoder endFeature() {
+        sb.append( '}' );
+        features++;
+        return this;
+    }
+
+    public GeoJSONEncoder key(String k) {
+        sb.append( '"' );
+        escape( k );
+        sb.append( "\":" );
+        return this;
+    }
+
+    boolean property(boolean first, String k, String v) {
+        if ( !first )
+            sb.append( ',' );
+        key( k );
+        string( v );
+        return false;
+    }
+
+    public GeoJSONEncoder string(String v) {
+        if ( v == null ) {
+            sb.append( "null" );
+            return this;
+        }
+        sb.append( '"' );
+        escape( v );
+        sb.append( '"' );
+        return this;
+    }
+
+    /**
+     * Appends JSON as is, e.g. brackets and separators of other documents.
+     */
+    public GeoJSONEncoder raw(CharSequence json) {
+        sb.append( json );
+        return this;
+    }
+
+    public GeoJSONEncoder raw(char c) {
+        sb.append( c );
+        return this;
+    }
+
+    void position(double lon, double lat, int decimals) {
+        sb.append( '[' );
+        number( decimals < 0 ? lon : round( lon, decimals ) );
+        sb.append( ',' );
+        number( decimals < 0 ? lat : round( lat, decimals ) );
+        sb.append( ']' );
+    }
+
+    /**
+     * Shortest form of Double.toString, integral values without ".0", null if not finite.
+     */
+    public GeoJSONEncoder number(double v) {
+        if ( Double.isNaN( v ) || Double.isInfinite( v ) )
+            sb.append( "null" );
+        else if ( v == (long) v && Math.abs( v ) < 1e15 )
+            sb.append( (long) v );
+        else
+            sb.append( v );
+        return this;
+    }
+
+    static double round(double v, int decimals) {
+        double f = Math.pow( 10, decimals );
+        return Math.round( v * f ) / f;
+    }
+
+    static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    void escape(String s) {
+
+        if ( s == null ) {
+            sb.append( "null" );
+            return;
+        }
+
+        int n = s.length();
+        for( int i = 0; i < n; i++ ) {
+            char c = s.charAt( i );
+            switch ( c ) {
+                case '"':  sb.append( "\\\"" ); break;
+                case '\\': sb.append( "\\\\" ); break;
+                case '\n': sb.append( "\\n" ); break;
+                case '\r': sb.append( "\\r" ); break;
+                case '\t': sb.append( "\\t" ); break;
+                case '\b': sb.append( "\\b" ); break;
+                case '\f': sb.append( "\\f" ); break;
+                default:
+                    if ( c < 0x20 || c == '\u2028' || c == '\u2029' )
+                        sb.append( "\\u" ).append( HEX[c >> 12] ).append( HEX[( c >> 8 ) & 0xF] ).append( HEX[( c >> 4 ) & 0xF] ).append( HEX[c & 0xF] );
+                    else
+                        sb.append( c );
+            }
+        }
+
+    }
+
+    /*
+     * Parallel encoding
+     */
+
+    public interface FeatureSource<T> {
+        void encode(T item, GeoJSONEncoder encoder) throws Exception;
+    }
+
+    /**
+     * Encodes the items in chunks of CHUNK_SIZE on the common fork-join pool and writes the chunks in
+     * list order. Only a window of chunks is held in memory at a time.
+     */
+    public static <T> void encodeAll(final List<T> items, final FeatureSource<T> source, GeoJSONStreamWriter w) throws IOException {
+
+        int chunks = ( items.size() + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+        int window = Math.max( 1, ForkJoinPool.getCommonPoolParallelism() * 4 );
+
+        for( int first = 0; first < chunks; first += window ) {
+
+            int last = Math.min( chunks, first + window );
+
+            final GeoJSONEncoder[] encoded = new GeoJSONEncoder[last - first];
+            final Exception[] failed = new Exception[1];
+
+            List<RecursiveAction> tasks = new ArrayList<>( encoded.length );
+            for( int c = first; c < last; c++ ) {
+                final int slot = c - first;
+                final int from = c * CHUNK_SIZE;
+                final int to = Math.min( items.size(), from + CHUNK_SIZE );
+                tasks.add( new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        GeoJSONEncoder e = new GeoJSONEncoder( 256 * ( to - from ) );
+                        try {
+                            for( int i = from; i < to; i++ ) {
+                                source.encode( items.get( i ), e );
+                            }
+                        }
+                        catch (Exception ex) {
+                            synchronized ( failed ) {
+                                failed[0] = ex;
+                            }
+                        }
+                        encoded[slot] = e;
+                    }
+                });
+            }
+
+            if ( encoded.length == 1 )
+                tasks.get( 0 ).invoke();
+            else
+                ForkJoinTask.invokeAll( tasks );
+
+            if ( failed[0] != null )
+                throw failed[0] instanceof IOException ? (IOException) failed[0] : new IOException( failed[0] );
+
+            for( GeoJSONEncoder e : encoded ) {
+                w.features( e.buffer(), e.featureCount() );
+            }
+
+        }
+
+    }
+
+}
@@ -1,5 +1,7 @@
 package tool.geojson;
 
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.TopologyIndex;
 import datamodel.graph_of_things.nodes.PowerPlant;
 import datamodel.graph_of_things.nodes.Region;
 import datamodel.graph_of_things.nodes.Station;
@@ -7,7 +9,8 @@ import datamodel.graph_of_things.relations.GridLink;
 import tool.SimulationScenario;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class GeoJSONExporter {
 
@@ -36,96 +39,114 @@ public class GeoJSONExporter {
     }
     */
 
-    public static String generateRegionLinks() throws Exception {
+    /**
+     * Write the exports gzip compressed (files get the suffix .gz), -Dexport.gzip=true
+     */
+    public static boolean gzip = Boolean.getBoolean( "export.gzip" );
 
-        FileWriter fw = new FileWriter( out2 );
+    public static File generateRegionLinks() throws Exception {
 
-        StringBuffer sb = new StringBuffer( "{ \"type\": \"FeatureCollection\",\"features\": [ " );
+        GeoJSONStreamWriter w = new GeoJSONStreamWriter( out2, gzip );
+        GeoJSONEncoder e = GeoJSONEncoder.local();
 
-        double delta = 0.02;
-        double offset = 0.0;
+        try {
 
-        for(Region r1 : SimulationScenario.regions ) {
-            for (Region r2 : SimulationScenario.regions) {
-                if( r1.id != r2.id ) {
-                     int a = Integer.parseInt( r1.id );
-                     int b = Integer.parseInt( r2.id );
+            double delta = 0.02;
+            double offset = 0.0;
 
-                     if( a > b ) {
-                         offset = -1.0 * delta;
-                     }
-                     else
-                         offset = 1.0 * delta;
+            List<Region> regions = SimulationScenario.getModel().regions();
 
+            for(Region r1 : regions ) {
+                for (Region r2 : regions) {
+                    if( r1.id != r2.id ) {
+                         int a = Integer.parseInt( r1.id );
+                         int b = Integer.parseInt( r2.id );
 
-                     System.out.println(RegionLink.getAsGeoJSON(r1, r2, offset));
-                     sb.append( RegionLink.getAsGeoJSON(r1, r2, offset ) + "," ) ;
+                         if( a > b ) {
+                             offset = -1.0 * delta;
+                         }
+                         else
+                             offset = 1.0 * delta;
 
+                         e.regionLink( r1, r2, offset, SimulationScenario.getTotalFor( r1.id, r2.id ) );
+
+                    }
                 }
             }
-        }
 
-        String s = sb.toString().substring(0,sb.toString().length()-1);
-        s = s + " ] }";
+            w.features( e.buffer(), e.featureCount() );
+            w.close();
 
-        fw.write( s );
-        fw.close();
+        }
+        finally {
+            w.abort();
+        }
 
-        return s;
+        System.out.println( "> Wrote " + w.getFeatureCount() + " region links to " + w.getTarget() );
 
-    }
+        return w.getTarget();
 
-    public static void generateGrid() throws Exception {
+    }
 
-            FileWriter fw = new FileWriter( out3 );
+    /**
+     * Writes the links of the current grid model, the links are not created here, so exporting again
+     * gives the same features and the same links. The features are encoded in parallel
+     * (GeoJSONEncoder.encodeAll) and written in this order: the links starting at a station, the
+     * station, and at the end every power plant with the link to its station.
+     */
+    public static File generateGrid() throws Exception {
 
-            StringBuffer sb = new StringBuffer( "{ \"type\": \"FeatureCollection\",\"features\": [ " );
+            GeoJSONStreamWriter w = new GeoJSONStreamWriter( out3, gzip );
 
-            double delta = 0.02;
-            double offset = 0.0;
+            try {
 
-            for(Station s1 : SimulationScenario.stations ) {
-                for (Station s2 : SimulationScenario.stations) {
+                final GridModel grid = SimulationScenario.getModel();
+                TopologyIndex topology = grid.topology();
 
-                    if( SimulationScenario.segments.contains( s1.id+"-"+s2.id ) ) {
+                List<Object> items = new ArrayList<>( grid.gridLinks().size() + topology.stationCount() );
 
-                        GridLink sl = new GridLink( s1, s2, 0, 100, 0.1, "STATIONLINK" );
+                for( int i = 0; i < topology.stationCount(); i++ ) {
 
-                        String geojson = sl.getAsGeoJSON();
-                        System.out.println( geojson );
-                        sb.append( geojson + "," ) ;
+                    // only the segments starting at the station, in station order
+                    for( int k = topology.firstTarget( i ); k < topology.endTarget( i ); k++ ) {
+                        items.add( grid.stationLink( k ) );
+                    }
+                    items.add( topology.station( i ) );
+                }
 
+                items.addAll( grid.powerPlants() );
+
+                GeoJSONEncoder.encodeAll( items, new GeoJSONEncoder.FeatureSource<Object>() {
+                    @Override
+                    public void encode(Object item, GeoJSONEncoder e) {
+                        if ( item instanceof GridLink ) {
+                            e.link( (GridLink) item );
+                        }
+                        else if ( item instanceof Station ) {
+                            e.poi( ( (Station) item ).asPoi() );
+                        }
+                        else {
+                            PowerPlant p = (PowerPlant) item;
+                            e.poi( p.asPoi() );
+                            GridLink l = grid.plantLink( p );
+                            if ( l != null )
+                                e.link( l );
+                        }
+                    }
+                }, w );
 
-                        SimulationScenario.collectStationLink( sl );
+                w.close();
 
-                    }
-                }
-                sb.append( s1.getGeoJSONStringForPOI() + ", ");
             }
-
-            for(PowerPlant p : SimulationScenario.powerPlants ) {
-                sb.append( p.getGeoJSONStringForPOI() + ", " );
+            finally {
+                w.abort();
             }
 
-            String s = sb.toString().substring(0,sb.toString().length()-1);
-            s = s + " ] }";
+            System.out.println( "> Wrote " + w.getFeatureCount() + " grid features to " + w.getTarget() );
 
-            fw.write( s );
-            fw.close();
+            return w.getTarget();
 
         }
 
 
 }
-
-class RegionLink {
-
-    static String getAsGeoJSON( Region r1, Region r2, double offset ){
-
-        return"{ \"type\": \"Feature\", \"geometry\": { \"type\": \"LineString\", \"coordinates\" : [ "+
-                "[" + (r1.lon - offset) + "," + (r1.lat + offset) + "], [ " + (r2.lon - offset) + ", " + (r2.lat + offset) + "] "
-                + " ] }, \"properties\": { \"popupContent\": \"Transfer: ("+r1.country+ "=>" + r2.country + ")" + SimulationScenario.getTotalFor(r1.id,r2.id) + "\" } }";
-
-    }
-}
-
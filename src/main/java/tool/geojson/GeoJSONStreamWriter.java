@@ -0,0 +1,174 @@
+package tool.geojson;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a GeoJSON FeatureCollection feature by feature, so memory use does not depend on the size
+ * of the collection.
+ *
+ * The features go into a temporary file next to the target, close() finishes the collection and
+ * renames the temporary file to the target (atomically where the file system supports it), so
+ * readers never see a half written file. If writing fails, call abort() to remove the temporary file.
+ */
+public class GeoJSONStreamWriter implements Closeable {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    final Path target;
+    final Path tmp;
+    final Writer out;
+
+    long features = 0;
+    final char[] chars = new char[8192];
+    boolean done = false;
+
+    /**
+     * @param target the final file, ".gz" is appended if gzip is true
+     */
+    public GeoJSONStreamWriter(File target, boolean gzip) throws IOException {
+
+        this.target = gzip ? new File( target.getPath() + ".gz" ).toPath() : target.toPath();
+
+        Path dir = this.target.toAbsolutePath().getParent();
+        Files.createDirectories( dir );
+
+        // not Files.createTempFile: its files are rw------- and keep that after the move, this one follows the umask
+        Path t;
+        FileChannel channel;
+        while( true ) {
+            t = dir.resolve( "." + this.target.getFileName() + "." + Long.toHexString( ThreadLocalRandom.current().nextLong() ) + ".tmp" );
+            try {
+                channel = FileChannel.open( t, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+                break;
+            }
+            catch (FileAlreadyExistsException e) {
+                // taken, next name
+            }
+        }
+        this.tmp = t;
+
+        OutputStream os = Channels.newOutputStream( channel );
+        if ( gzip )
+            os = new GZIPOutputStream( os, BUFFER_SIZE );
+
+        this.out = new BufferedWriter( new OutputStreamWriter( os, StandardCharsets.UTF_8 ), BUFFER_SIZE );
+
+        out.write( "{ \"type\": \"FeatureCollection\",\"features\": [ " );
+
+    }
+
+    /**
+     * Appends one feature (or several, already comma separated).
+     */
+    public void feature(String geojson) throws IOException {
+        if ( features > 0 )
+            out.write( "," );
+        out.write( geojson );
+        features++;
+    }
+
+    /**
+     * Appends the comma separated features of an encoder buffer, see GeoJSONEncoder.
+     */
+    public void features(CharSequence encoded, int count) throws IOException {
+
+        if ( count == 0 )
+            return;
+        if ( features > 0 )
+            out.write( "," );
+
+        if ( encoded instanceof StringBuilder ) {
+            // copied in slices, not into one more String
+            StringBuilder sb = (StringBuilder) encoded;
+            for( int from = 0; from < sb.length(); from += chars.length ) {
+                int to = Math.min( sb.length(), from + chars.length );
+                sb.getChars( from, to, chars, 0 );
+                out.write( chars, 0, to - from );
+            }
+        }
+        else {
+            out.write( encoded.toString() );
+        }
+
+        features = features + count;
+
+    }
+
+    public long getFeatureCount() {
+        return features;
+    }
+
+    public File getTarget() {
+        return target.toFile();
+    }
+
+    /**
+     * Completes the collection and moves it to the target file.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if ( done )
+            return;
+        done = true;
+
+        try {
+            out.write( " ] }" );
+            out.close();
+        }
+        catch (IOException e) {
+            Files.deleteIfExists( tmp );
+            throw e;
+        }
+
+        try {
+            Files.move( tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING );
+        }
+
+    }
+
+    /**
+     * Drops the partial output, the target file stays untouched.
+     */
+    public void abort() {
+
+        if ( done )
+            return;
+        done = true;
+
+        try {
+            out.close();
+        }
+        catch (IOException ignore) {
+        }
+
+        try {
+            Files.deleteIfExists( tmp );
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+}
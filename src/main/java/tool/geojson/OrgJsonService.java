@@ -8,6 +8,10 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * GeoJSON with org.json object trees. The exports use GeoJSONEncoder, this class is kept to read
+ * GeoJSON (asPois) and as the reference in GeoJsonBenchmark.
+ */
 public class OrgJsonService {
 
     public static String asGeoJson(POIData poi) throws Exception {
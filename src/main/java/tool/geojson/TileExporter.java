@@ -0,0 +1,787 @@
+package tool.geojson;
+
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+import datamodel.poi.POIData;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the grid as GeoJSON tiles in the z/x/y scheme of web maps (Web Mercator, 256 px tiles),
+ * <exportFolder>/tiles/{z}/{x}/{y}.json for the zoom levels tiles.minzoom .. tiles.maxzoom, so a
+ * viewer loads only what is on the screen instead of one grid.json.
+ *
+ * Per zoom level:
+ *  - lines are clipped to the tile (plus a small buffer) and simplified with a tolerance of half a
+ *    pixel, coordinates are rounded to the pixel size
+ *  - below tiles.detail.zoom only important features are kept: cross-border links and links which
+ *    are at least tiles.min.pixels long, stations with three or more links or a cross-border link,
+ *    plants with at least tiles.major.plant.mw; of the points in a 16 px cell only the most
+ *    important one is kept
+ *
+ * Tiles are written in parallel, each one atomically (GeoJSONStreamWriter). refresh() remembers
+ * the exported model; for the next version only the tiles touched by added, removed or changed
+ * features are written again, tiles which became empty are deleted.
+ *
+ *    -Dexport.tiles=true  -Dtiles.minzoom=0  -Dtiles.maxzoom=10  -Dtiles.detail.zoom=8
+ *    -Dtiles.min.pixels=2  -Dtiles.major.plant.mw=1000  -Dtiles.threads=<cores>
+ */
+public class TileExporter {
+
+    public static boolean enabled = Boolean.getBoolean( "export.tiles" );
+
+    public static int MIN_ZOOM = Integer.getInteger( "tiles.minzoom", 0 );
+    public static int MAX_ZOOM = Integer.getInteger( "tiles.maxzoom", 10 );
+    public static int DETAIL_ZOOM = Integer.getInteger( "tiles.detail.zoom", 8 );
+    public static double MIN_PIXELS = Double.parseDouble( System.getProperty( "tiles.min.pixels", "2" ) );
+    public static double MAJOR_PLANT_MW = Double.parseDouble( System.getProperty( "tiles.major.plant.mw", "1000" ) );
+    public static int THREADS = Integer.getInteger( "tiles.threads", Runtime.getRuntime().availableProcessors() );
+
+    static final int TILE_SIZE = 256;
+    static final double BUFFER_PX = 4;
+    static final int CELL_PX = 16;
+
+    static final double MAX_LAT = 85.05112878;
+
+    // the model the tiles on disk were written for
+    static GridModel exported = null;
+
+    /**
+     * Writes all tiles of the first model, only the changed tiles of later ones.
+     *
+     * @return the number of tiles written or deleted
+     */
+    public static synchronized int refresh(GridModel grid) throws IOException {
+
+        File dir = folder();
+        long t0 = System.currentTimeMillis();
+
+        int n;
+        if ( exported == null ) {
+            n = exportAll( grid, dir );
+            System.out.println( "> Wrote " + n + " tiles (zoom " + MIN_ZOOM + ".." + MAX_ZOOM + ") to " + dir + " in " + ( System.currentTimeMillis() - t0 ) + " ms" );
+        }
+        else if ( exported != grid ) {
+            n = exportChanged( exported, grid, dir );
+            System.out.println( "> Updated " + n + " tiles for version " + grid.version() + " in " + ( System.currentTimeMillis() - t0 ) + " ms" );
+        }
+        else {
+            n = 0;
+        }
+
+        exported = grid;
+        return n;
+
+    }
+
+    public static synchronized boolean hasTiles() {
+        return exported != null;
+    }
+
+    public static File folder() {
+        return new File( GeoJSONExporter.exportFolder, "tiles" );
+    }
+
+    /**
+     * Writes every tile of the grid and deletes tiles of an earlier export which are empty now.
+     */
+    public static int exportAll(GridModel grid, File dir) throws IOException {
+
+        List<Feature> features = features( grid );
+        Map<Long, IntList> tiles = index( features, null );
+
+        int n = write( dir, features, tiles );
+
+        // tiles of an earlier run which have no features any more
+        for( int z = MIN_ZOOM; z <= MAX_ZOOM; z++ ) {
+            File[] columns = new File( dir, "" + z ).listFiles();
+            if ( columns == null )
+                continue;
+            for( File column : columns ) {
+                File[] files = column.listFiles();
+                if ( files == null )
+                    continue;
+                for( File f : files ) {
+                    Long key = keyOf( z, column.getName(), f.getName() );
+                    if ( key != null && !tiles.containsKey( key ) && f.delete() )
+                        n++;
+                }
+            }
+        }
+
+        writeTileJSON( dir );
+
+        return n;
+
+    }
+
+    /**
+     * Writes the tiles of all features which differ between the two models, in the old and in the
+     * new place, and deletes the ones which became empty.
+     */
+    public static int exportChanged(GridModel before, GridModel after, File dir) throws IOException {
+
+        Map<String, Feature> old = new HashMap<>();
+        for( Feature f : features( before ) ) {
+            old.put( f.key, f );
+        }
+
+        List<Feature> features = features( after );
+
+        Set<Long> dirty = new HashSet<>();
+        for( Feature f : features ) {
+            Feature o = old.remove( f.key );
+            if ( o != null && o.signature.equals( f.signature ) )
+                continue;
+            tilesOf( f, dirty );
+            if ( o != null )
+                tilesOf( o, dirty );
+        }
+        for( Feature o : old.values() ) {
+            tilesOf( o, dirty );
+        }
+
+        if ( dirty.isEmpty() )
+            return 0;
+
+        Map<Long, IntList> tiles = index( features, dirty );
+        for( Long key : dirty ) {
+            if ( !tiles.containsKey( key ) )
+                tiles.put( key, new IntList() );
+        }
+
+        return write( dir, features, tiles );
+
+    }
+
+    /**
+     * A point or a line with the zoom level from which it is shown.
+     */
+    static final class Feature {
+
+        final String key;
+        final boolean point;
+
+        final double[] x;       // world coordinates 0..1 (Web Mercator)
+        final double[] y;
+
+        final int minZoom;
+        final double importance;
+
+        final POIData poi;
+        final String[] properties;   // keys and values of a line
+
+        final String signature;
+
+        Feature(String key, double[] lon, double[] lat, int minZoom, double importance, POIData poi, String... properties) {
+
+            this.key = key;
+            this.point = lon.length == 1;
+            this.x = new double[lon.length];
+            this.y = new double[lat.length];
+            for( int i = 0; i < lon.length; i++ ) {
+                x[i] = worldX( lon[i] );
+                y[i] = worldY( lat[i] );
+            }
+            this.minZoom = minZoom;
+            this.importance = importance;
+            this.poi = poi;
+            this.properties = properties;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append( minZoom ).append( '|' ).append( importance ).append( '|' ).append( Arrays.toString( lon ) ).append( Arrays.toString( lat ) ).append( '|' );
+            if ( poi != null )
+                sb.append( poi.getId() ).append( poi.getName() ).append( poi.getType() ).append( poi.getProperties() );
+            if ( properties != null )
+                sb.append( Arrays.toString( properties ) );
+            this.signature = sb.toString();
+
+        }
+
+    }
+
+    static List<Feature> features(GridModel grid) {
+
+        List<GridLink> links = grid.gridLinks();
+        int stationLinks = grid.stationLinkCount();
+
+        // links per node and nodes at a border
+        Map<Node, int[]> degree = new IdentityHashMap<>();
+        Set<Node> border = Collections.newSetFromMap( new IdentityHashMap<Node, Boolean>() );
+        for( int i = 0; i < stationLinks; i++ ) {
+            GridLink l = links.get( i );
+            count( degree, l.source() );
+            count( degree, l.target() );
+            if ( crossBorder( l ) ) {
+                border.add( l.source() );
+                border.add( l.target() );
+            }
+        }
+
+        List<Feature> features = new ArrayList<>( grid.stations().size() + grid.powerPlants().size() + links.size() );
+        Map<String, Integer> seen = new HashMap<>();
+
+        for( Station s : grid.stations() ) {
+            int[] d = degree.get( s );
+            int links4s = d == null ? 0 : d[0];
+            boolean major = links4s >= 3 || border.contains( s );
+            features.add( new Feature( unique( seen, "S:" + s.id ), new double[] { s.lon }, new double[] { s.lat },
+                    major ? MIN_ZOOM : DETAIL_ZOOM, links4s + ( border.contains( s ) ? 1000 : 0 ), s.asPoi() ) );
+        }
+
+        for( PowerPlant p : grid.powerPlants() ) {
+            features.add( new Feature( unique( seen, "P:" + p.id ), new double[] { p.lon }, new double[] { p.lat },
+                    p.production >= MAJOR_PLANT_MW ? MIN_ZOOM : DETAIL_ZOOM, p.production, p.asPoi() ) );
+        }
+
+        for( int i = 0; i < links.size(); i++ ) {
+
+            GridLink l = links.get( i );
+            Node a = l.source();
+            Node b = l.target();
+            double offset = l.visualOffset();
+
+            double[] lon = { a.lon - offset, b.lon - offset };
+            double[] lat = { a.lat + offset, b.lat + offset };
+
+            int minZoom;
+            if ( i < stationLinks && crossBorder( l ) )
+                minZoom = MIN_ZOOM;
+            else if ( i < stationLinks || ( b instanceof PowerPlant && ( (PowerPlant) b ).production >= MAJOR_PLANT_MW )
+                                       || ( a instanceof PowerPlant && ( (PowerPlant) a ).production >= MAJOR_PLANT_MW ) )
+                minZoom = visibleFrom( worldX( lon[0] ), worldY( lat[0] ), worldX( lon[1] ), worldY( lat[1] ) );
+            else
+                minZoom = DETAIL_ZOOM;
+
+            features.add( new Feature( unique( seen, "L:" + l.id ), lon, lat, minZoom, 0, null,
+                    "id", l.id, "linkType", l.linkType(), "popupContent", l.linkType() + ": (" + a.name + "=>" + b.id + ")" ) );
+
+        }
+
+        return features;
+
+    }
+
+    static boolean crossBorder(GridLink l) {
+        return l.source().country != null && !l.source().country.equals( l.target().country );
+    }
+
+    static void count(Map<Node, int[]> degree, Node n) {
+        int[] d = degree.get( n );
+        if ( d == null )
+            degree.put( n, d = new int[1] );
+        d[0]++;
+    }
+
+    /**
+     * Duplicate ids (the same plant twice) get a running number.
+     */
+    static String unique(Map<String, Integer> seen, String key) {
+        Integer n = seen.get( key );
+        seen.put( key, n == null ? 1 : n + 1 );
+        return n == null ? key : key + "#" + n;
+    }
+
+    /**
+     * The first zoom level at which the line is MIN_PIXELS long, at the latest DETAIL_ZOOM.
+     */
+    static int visibleFrom(double x0, double y0, double x1, double y1) {
+        double length = Math.hypot( x1 - x0, y1 - y0 ) * TILE_SIZE;
+        int z = MIN_ZOOM;
+        while ( z < DETAIL_ZOOM && length * ( 1L << z ) < MIN_PIXELS ) {
+            z++;
+        }
+        return z;
+    }
+
+    static double worldX(double lon) {
+        return ( lon + 180.0 ) / 360.0;
+    }
+
+    static double worldY(double lat) {
+        double r = Math.toRadians( Math.max( -MAX_LAT, Math.min( MAX_LAT, lat ) ) );
+        return ( 1.0 - Math.log( Math.tan( r ) + 1.0 / Math.cos( r ) ) / Math.PI ) / 2.0;
+    }
+
+    static double lon(double x) {
+        return x * 360.0 - 180.0;
+    }
+
+    static double lat(double y) {
+        return Math.toDegrees( Math.atan( Math.sinh( Math.PI * ( 1.0 - 2.0 * y ) ) ) );
+    }
+
+    static long key(int z, int x, int y) {
+        return ( (long) z << 58 ) | ( (long) x << 29 ) | y;
+    }
+
+    static int zoomOf(long key) {
+        return (int) ( key >>> 58 );
+    }
+
+    static int xOf(long key) {
+        return (int) ( ( key >>> 29 ) & ( ( 1 << 29 ) - 1 ) );
+    }
+
+    static int yOf(long key) {
+        return (int) ( key & ( ( 1 << 29 ) - 1 ) );
+    }
+
+    static Long keyOf(int z, String column, String file) {
+        try {
+            int dot = file.indexOf( '.' );
+            return dot <= 0 ? null : key( z, Integer.parseInt( column ), Integer.parseInt( file.substring( 0, dot ) ) );
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static int tile(double w, int n) {
+        return Math.max( 0, Math.min( n - 1, (int) Math.floor( w * n ) ) );
+    }
+
+    /**
+     * The tiles the feature is drawn in, on all zoom levels from its minZoom on.
+     */
+    static void tilesOf(Feature f, Set<Long> tiles) {
+        for( int z = Math.max( MIN_ZOOM, f.minZoom ); z <= MAX_ZOOM; z++ ) {
+            tilesOf( f, z, tiles, null, null, 0 );
+        }
+    }
+
+    /**
+     * Adds the tiles of the feature on zoom z to the set, or the feature to the lists of the map
+     * (only the tiles in only, if it is not null).
+     * A segment visits only the tiles it crosses, column by column.
+     */
+    static void tilesOf(Feature f, int z, Set<Long> set, Map<Long, IntList> map, Set<Long> only, int index) {
+
+        int n = 1 << z;
+
+        if ( f.point ) {
+            add( key( z, tile( f.x[0], n ), tile( f.y[0], n ) ), set, map, only, index );
+            return;
+        }
+
+        for( int i = 0; i + 1 < f.x.length; i++ ) {
+
+            double x0 = f.x[i] * n, y0 = f.y[i] * n;
+            double x1 = f.x[i + 1] * n, y1 = f.y[i + 1] * n;
+            if ( x0 > x1 ) {
+                double t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+
+            int c0 = tile( x0 / n, n );
+            int c1 = tile( x1 / n, n );
+            for( int c = c0; c <= c1; c++ ) {
+
+                // the part of the segment in this column
+                double ya = y0, yb = y1;
+                if ( x1 > x0 ) {
+                    double ta = Math.max( 0, ( c - x0 ) / ( x1 - x0 ) );
+                    double tb = Math.min( 1, ( c + 1 - x0 ) / ( x1 - x0 ) );
+                    ya = y0 + ta * ( y1 - y0 );
+                    yb = y0 + tb * ( y1 - y0 );
+                }
+
+                int r0 = tile( Math.min( ya, yb ) / n, n );
+                int r1 = tile( Math.max( ya, yb ) / n, n );
+                for( int r = r0; r <= r1; r++ ) {
+                    add( key( z, c, r ), set, map, only, index );
+                }
+
+            }
+
+        }
+
+    }
+
+    static void add(long key, Set<Long> set, Map<Long, IntList> map, Set<Long> only, int index) {
+        if ( only != null && !only.contains( key ) )
+            return;
+        if ( set != null ) {
+            set.add( key );
+            return;
+        }
+        IntList l = map.get( key );
+        if ( l == null )
+            map.put( key, l = new IntList() );
+        if ( l.size == 0 || l.values[l.size - 1] != index )
+            l.add( index );
+    }
+
+    /**
+     * Feature indexes per tile, only for the given tiles if only is not null.
+     */
+    static Map<Long, IntList> index(List<Feature> features, Set<Long> only) {
+
+        Map<Long, IntList> all = new HashMap<>();
+
+        for( int i = 0; i < features.size(); i++ ) {
+            Feature f = features.get( i );
+            for( int z = Math.max( MIN_ZOOM, f.minZoom ); z <= MAX_ZOOM; z++ ) {
+                tilesOf( f, z, null, all, only, i );
+            }
+        }
+
+        return all;
+
+    }
+
+    /**
+     * Writes the tiles in parallel, a tile without features is deleted.
+     */
+    static int write(final File dir, final List<Feature> features, Map<Long, IntList> tiles) throws IOException {
+
+        final long[] keys = new long[tiles.size()];
+        final IntList[] contents = new IntList[tiles.size()];
+        int k = 0;
+        for( Map.Entry<Long, IntList> e : tiles.entrySet() ) {
+            keys[k] = e.getKey();
+            contents[k] = e.getValue();
+            k++;
+        }
+
+        final AtomicInteger written = new AtomicInteger();
+        final int batch = 64;
+        int batches = ( keys.length + batch - 1 ) / batch;
+
+        ExecutorService pool = Executors.newFixedThreadPool( Math.max( 1, Math.min( THREADS, batches ) ), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "tile-exporter" );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>( batches );
+            for( int b = 0; b < batches; b++ ) {
+                final int from = b * batch;
+                final int to = Math.min( keys.length, from + batch );
+                futures.add( pool.submit( new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for( int i = from; i < to; i++ ) {
+                            if ( writeTile( dir, keys[i], features, contents[i] ) )
+                                written.incrementAndGet();
+                        }
+                        return null;
+                    }
+                }) );
+            }
+
+            for( Future<?> future : futures ) {
+                future.get();
+            }
+
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while writing tiles", e );
+        }
+        catch (ExecutionException e) {
+            if ( e.getCause() instanceof IOException )
+                throw (IOException) e.getCause();
+            throw new IOException( e.getCause() );
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        return written.get();
+
+    }
+
+    /**
+     * @return true if the tile was written or deleted
+     */
+    static boolean writeTile(File dir, long key, List<Feature> features, IntList content) throws IOException {
+
+        int z = zoomOf( key ), x = xOf( key ), y = yOf( key );
+        int n = 1 << z;
+
+        double buffer = BUFFER_PX / ( (double) TILE_SIZE * n );
+        double minX = (double) x / n - buffer, maxX = (double) ( x + 1 ) / n + buffer;
+        double minY = (double) y / n - buffer, maxY = (double) ( y + 1 ) / n + buffer;
+
+        double pixel = 1.0 / ( (double) TILE_SIZE * n );
+        int decimals = Math.max( 0, (int) Math.ceil( Math.log10( TILE_SIZE * n / 360.0 ) ) + 1 );
+
+        GeoJSONEncoder out = GeoJSONEncoder.local();
+
+        // of the points in a cell only the most important one below the detail zoom
+        Map<Long, Feature> cells = z < DETAIL_ZOOM ? new HashMap<Long, Feature>() : null;
+
+        for( int j = 0; j < content.size; j++ ) {
+
+            Feature f = features.get( content.values[j] );
+
+            if ( f.point ) {
+                if ( cells != null ) {
+                    long cell = ( (long) Math.floor( f.x[0] / ( pixel * CELL_PX ) ) << 32 ) ^ (long) Math.floor( f.y[0] / ( pixel * CELL_PX ) );
+                    Feature other = cells.get( cell );
+                    if ( other == null || f.importance > other.importance || ( f.importance == other.importance && f.key.compareTo( other.key ) < 0 ) )
+                        cells.put( cell, f );
+                }
+                else {
+                    point( out, f, decimals );
+                }
+                continue;
+            }
+
+            line( out, f, clip( f.x, f.y, minX, minY, maxX, maxY ), pixel, decimals );
+
+        }
+
+        if ( cells != null ) {
+            // in index order, so a tile is the same in every run
+            List<Feature> kept = new ArrayList<>( cells.values() );
+            final Map<Feature, Integer> order = new IdentityHashMap<>();
+            for( int j = 0; j < content.size; j++ ) {
+                order.put( features.get( content.values[j] ), j );
+            }
+            kept.sort( new Comparator<Feature>() {
+                @Override
+                public int compare(Feature a, Feature b) {
+                    return Integer.compare( order.get( a ), order.get( b ) );
+                }
+            });
+            for( Feature f : kept ) {
+                point( out, f, decimals );
+            }
+        }
+
+        File target = new File( dir, z + "/" + x + "/" + y + ".json" );
+
+        if ( out.featureCount() == 0 ) {
+            boolean deleted = target.delete();
+            deleted = new File( target.getPath() + ".gz" ).delete() || deleted;
+            return deleted;
+        }
+
+        GeoJSONStreamWriter w = new GeoJSONStreamWriter( target, GeoJSONExporter.gzip );
+        try {
+            w.features( out.buffer(), out.featureCount() );
+            w.close();
+        }
+        finally {
+            w.abort();
+        }
+
+        return true;
+
+    }
+
+    /**
+     * The clipped parts, simplified and rounded, nothing if no part is left.
+     */
+    static void line(GeoJSONEncoder out, Feature f, List<double[]> clipped, double pixel, int decimals) {
+
+        List<double[]> parts = new ArrayList<>( clipped.size() );
+        for( double[] part : clipped ) {
+            double[] xy = simplify( part, pixel / 2 );
+            double[] lonLat = new double[xy.length];
+            for( int i = 0; i + 1 < xy.length; i += 2 ) {
+                lonLat[i] = lon( xy[i] );
+                lonLat[i + 1] = lat( xy[i + 1] );
+            }
+            parts.add( lonLat );
+        }
+        out.lines( parts, decimals, f.properties );
+
+    }
+
+    static void point(GeoJSONEncoder out, Feature f, int decimals) {
+        out.poi( f.poi, lon( f.x[0] ), lat( f.y[0] ), decimals );
+    }
+
+    /**
+     * Liang-Barsky clipping of every segment, consecutive visible segments form one part.
+     */
+    static List<double[]> clip(double[] x, double[] y, double minX, double minY, double maxX, double maxY) {
+
+        List<double[]> parts = new ArrayList<>();
+        double[] part = null;
+        int size = 0;
+
+        for( int i = 0; i + 1 < x.length; i++ ) {
+
+            double x0 = x[i], y0 = y[i], dx = x[i + 1] - x0, dy = y[i + 1] - y0;
+            double t0 = 0, t1 = 1;
+
+            double[] p = { -dx, dx, -dy, dy };
+            double[] q = { x0 - minX, maxX - x0, y0 - minY, maxY - y0 };
+
+            boolean visible = true;
+            for( int k = 0; k < 4 && visible; k++ ) {
+                if ( p[k] == 0 ) {
+                    if ( q[k] < 0 )
+                        visible = false;
+                }
+                else {
+                    double t = q[k] / p[k];
+                    if ( p[k] < 0 )
+                        t0 = Math.max( t0, t );
+                    else
+                        t1 = Math.min( t1, t );
+                    if ( t0 > t1 )
+                        visible = false;
+                }
+            }
+
+            if ( !visible ) {
+                if ( part != null )
+                    parts.add( Arrays.copyOf( part, size ) );
+                part = null;
+                continue;
+            }
+
+            if ( part == null || t0 > 0 ) {
+                if ( part != null )
+                    parts.add( Arrays.copyOf( part, size ) );
+                part = new double[2 * x.length];
+                size = 0;
+                part[size++] = x0 + t0 * dx;
+                part[size++] = y0 + t0 * dy;
+            }
+            part[size++] = x0 + t1 * dx;
+            part[size++] = y0 + t1 * dy;
+
+            if ( t1 < 1 ) {
+                parts.add( Arrays.copyOf( part, size ) );
+                part = null;
+            }
+
+        }
+
+        if ( part != null )
+            parts.add( Arrays.copyOf( part, size ) );
+
+        return parts;
+
+    }
+
+    /**
+     * Douglas-Peucker on interleaved x,y, in world coordinates.
+     */
+    static double[] simplify(double[] xy, double tolerance) {
+
+        int points = xy.length / 2;
+        if ( points <= 2 )
+            return xy;
+
+        boolean[] keep = new boolean[points];
+        keep[0] = true;
+        keep[points - 1] = true;
+        simplify( xy, 0, points - 1, tolerance * tolerance, keep );
+
+        int kept = 0;
+        double[] out = new double[xy.length];
+        for( int i = 0; i < points; i++ ) {
+            if ( keep[i] ) {
+                out[kept++] = xy[2 * i];
+                out[kept++] = xy[2 * i + 1];
+            }
+        }
+        return Arrays.copyOf( out, kept );
+
+    }
+
+    static void simplify(double[] xy, int first, int last, double tolerance2, boolean[] keep) {
+
+        if ( last - first < 2 )
+            return;
+
+        double ax = xy[2 * first], ay = xy[2 * first + 1];
+        double bx = xy[2 * last], by = xy[2 * last + 1];
+        double dx = bx - ax, dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+
+        int farthest = -1;
+        double max = tolerance2;
+        for( int i = first + 1; i < last; i++ ) {
+            double px = xy[2 * i] - ax, py = xy[2 * i + 1] - ay;
+            double d2;
+            if ( length2 == 0 ) {
+                d2 = px * px + py * py;
+            }
+            else {
+                double t = Math.max( 0, Math.min( 1, ( px * dx + py * dy ) / length2 ) );
+                double ex = px - t * dx, ey = py - t * dy;
+                d2 = ex * ex + ey * ey;
+            }
+            if ( d2 > max ) {
+                max = d2;
+                farthest = i;
+            }
+        }
+
+        if ( farthest >= 0 ) {
+            keep[farthest] = true;
+            simplify( xy, first, farthest, tolerance2, keep );
+            simplify( xy, farthest, last, tolerance2, keep );
+        }
+
+    }
+
+    /**
+     * A TileJSON file which tells a viewer where the tiles are.
+     */
+    static void writeTileJSON(File dir) throws IOException {
+
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+            throw new IOException( "Can not create " + dir );
+
+        try ( FileWriter fw = new FileWriter( new File( dir, "tiles.json" ) ) ) {
+            fw.write( "{\n" +
+                    "  \"tilejson\": \"2.2.0\",\n" +
+                    "  \"name\": \"grid\",\n" +
+                    "  \"minzoom\": " + MIN_ZOOM + ",\n" +
+                    "  \"maxzoom\": " + MAX_ZOOM + ",\n" +
+                    "  \"tiles\": [\"{z}/{x}/{y}.json" + ( GeoJSONExporter.gzip ? ".gz" : "" ) + "\"]\n" +
+                    "}" );
+        }
+
+    }
+
+    static final class IntList {
+
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int v) {
+            if ( size == values.length )
+                values = Arrays.copyOf( values, size * 2 );
+            values[size++] = v;
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package tool.live;
+
+import datamodel.measurement.SampleBuffer;
+import tool.geojson.GeoJSONEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The newest flow of every link for the live viewers, and what changed from tick to tick.
+ *
+ * The tick workers write the flows of their slots with add(), tick() then compares the flows,
+ * rounded to the shown decimals, with the ones shown so far. Every link remembers the sequence
+ * number of its last change: the changes of one tick are encoded once as a shared frame, a client
+ * which missed ticks (a slow one, or after a reconnect) gets one coalesced frame with the newest
+ * value of every link changed since the sequence it has seen.
+ *
+ * A frame is a Server-Sent Event, the event id is "<run>-<seq>", so a reconnect with the
+ * Last-Event-ID of an earlier run gets all flows:
+ *
+ *    id: 1718000000000-42
+ *    event: flows
+ *    data: {"seq":42,"tick":41,"full":false,"flows":{"L1":120.5,"L7":-33.1}}
+ *
+ *    -Dlive.decimals=1
+ */
+public class LiveFlows {
+
+    public static int DECIMALS = Integer.getInteger( "live.decimals", 1 );
+
+    final String[] linkIds;
+    final double[] latest;              // per link ordinal, written by the tick workers
+    final double[] shown;               // rounded, NaN before the first sample
+    final long[] changed;               // sequence number of the last change of shown
+
+    final double scale;
+    final long run = System.currentTimeMillis();
+
+    long seq = 0;
+    int tick = -1;
+    Frame frame = null;                 // the changes of seq
+    volatile boolean closed = false;
+
+    /**
+     * @param linkIds  the ids of the links by ordinal, as in the SampleBuffer of the simulation
+     */
+    public LiveFlows(String[] linkIds) {
+        this.linkIds = linkIds;
+        this.latest = new double[linkIds.length];
+        this.shown = new double[linkIds.length];
+        this.changed = new long[linkIds.length];
+        Arrays.fill( latest, Double.NaN );
+        Arrays.fill( shown, Double.NaN );
+        this.scale = Math.pow( 10, DECIMALS );
+    }
+
+    /**
+     * Called from the tick workers with disjoint slots, tick() is called after all of them are done.
+     */
+    public void add(SampleBuffer buffer, int from, int to) {
+        for( int i = from; i < to; i++ ) {
+            latest[buffer.link[i]] = buffer.flow[i];
+        }
+    }
+
+    /**
+     * Takes the flows of this tick and wakes up the clients if a shown value changed.
+     *
+     * @return the number of changed links
+     */
+    public synchronized int tick(int z) {
+
+        tick = z;
+
+        GeoJSONEncoder e = null;
+        int changes = 0;
+
+        for( int i = 0; i < latest.length; i++ ) {
+
+            double v = Math.round( latest[i] * scale ) / scale;
+            if ( Double.isNaN( latest[i] ) || v == shown[i] )
+                continue;
+
+            if ( e == null ) {
+                e = begin( seq + 1, false );
+            }
+            else {
+                e.raw( ',' );
+            }
+            e.key( linkIds[i] ).number( v );
+
+            shown[i] = v;
+            changed[i] = seq + 1;
+            changes++;
+
+        }
+
+        if ( changes > 0 ) {
+            seq++;
+            frame = end( e, seq );
+            notifyAll();
+        }
+
+        return changes;
+
+    }
+
+    /**
+     * The next frame after the one with sequence seen: the shared frame if only the newest one is
+     * missing, otherwise the coalesced changes since seen. Waits until there is one.
+     *
+     * @return null after timeoutMs without a change or when closed
+     */
+    public synchronized Frame next(long seen, long timeoutMs) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while( seq <= seen && !closed ) {
+            long wait = deadline - System.currentTimeMillis();
+            if ( wait <= 0 )
+                return null;
+            wait( wait );
+        }
+
+        if ( closed )
+            return null;
+
+        return seq == seen + 1 && seen > 0 ? frame : since( seen );
+
+    }
+
+    /**
+     * All links changed after seen with their shown flow, all flows if seen is 0.
+     */
+    public synchronized Frame since(long seen) {
+
+        GeoJSONEncoder e = begin( seq, seen <= 0 );
+        boolean first = true;
+        for( int i = 0; i < shown.length; i++ ) {
+            if ( changed[i] > seen && !Double.isNaN( shown[i] ) ) {
+                if ( !first )
+                    e.raw( ',' );
+                e.key( linkIds[i] ).number( shown[i] );
+                first = false;
+            }
+        }
+        return end( e, seq );
+
+    }
+
+    GeoJSONEncoder begin(long seq, boolean full) {
+        GeoJSONEncoder e = new GeoJSONEncoder( 64 + 16 * linkIds.length );
+        return e.raw( "{\"seq\":" ).number( seq ).raw( ",\"tick\":" ).number( tick )
+                .raw( ",\"full\":" ).raw( String.valueOf( full ) ).raw( ",\"flows\":{" );
+    }
+
+    Frame end(GeoJSONEncoder e, long seq) {
+        e.raw( "}}" );
+        return new Frame( seq, eventId( seq ), e.toString() );
+    }
+
+    /**
+     * The sequence number in a Last-Event-ID of this run, 0 (all flows) for any other.
+     */
+    public synchronized long resume(String lastEventId) {
+
+        String prefix = run + "-";
+        if ( lastEventId == null || !lastEventId.startsWith( prefix ) )
+            return 0;
+
+        try {
+            long seen = Long.parseLong( lastEventId.substring( prefix.length() ) );
+            return seen >= 0 && seen <= seq ? seen : 0;
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+
+    }
+
+    public synchronized long seq() {
+        return seq;
+    }
+
+    String eventId(long seq) {
+        return run + "-" + seq;
+    }
+
+    /**
+     * Wakes up all waiting clients, next() returns null from now on.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * One event, encoded once and shared by all clients which get it.
+     */
+    public static final class Frame {
+
+        public final long seq;
+        public final String id;
+        public final String json;
+
+        byte[] event = null;
+
+        Frame(long seq, String id, String json) {
+            this.seq = seq;
+            this.id = id;
+            this.json = json;
+        }
+
+        public synchronized byte[] event() {
+            if ( event == null )
+                event = ( "id: " + id + "\nevent: flows\ndata: " + json + "\n\n" ).getBytes( StandardCharsets.UTF_8 );
+            return event;
+        }
+
+    }
+
+}
@@ -0,0 +1,336 @@
+package tool.live;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.poi.Node;
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.Metrics;
+import tool.SimulationScenario;
+import tool.geojson.GeoJSONEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A small HTTP server in the simulation process (com.sun.net.httpserver, no other dependency) for
+ * map viewers which follow the simulation live:
+ *
+ *    GET /                the viewer page (Leaflet)
+ *    GET /grid.json       stations, plants and links of the current grid model as GeoJSON, the
+ *                         links with their id. The ETag is the model version, so a viewer
+ *                         downloads it again only after an edit (304 otherwise).
+ *    GET /flows           all current flows by link id, ETag is the sequence of the last change
+ *    GET /flows/stream    Server-Sent Events: the flows which changed per tick (see LiveFlows)
+ *
+ * Every stream client has its own thread which blocks in its write. A slow client does not hold
+ * up the others or the simulation, it gets one coalesced frame for all ticks it missed when its
+ * write returns. Clients over the limit get 503.
+ *
+ *    -Dlive.server=true  -Dlive.port=8080  -Dlive.max.clients=500  -Dlive.keepalive.ms=15000
+ */
+public class LiveStateServer {
+
+    public static boolean enabled = Boolean.getBoolean( "live.server" );
+
+    public static int PORT = Integer.getInteger( "live.port", 8080 );
+    public static int MAX_CLIENTS = Integer.getInteger( "live.max.clients", 500 );
+    public static long KEEPALIVE_MS = Long.getLong( "live.keepalive.ms", 15000 );
+
+    final HttpServer server;
+    final ExecutorService pool;
+    final LiveFlows flows;
+
+    final AtomicInteger clients = new AtomicInteger();
+
+    final Counter frames = Metrics.counter( "live.frames" );
+    final Counter coalesced = Metrics.counter( "live.coalesced" );
+    final Counter bytes = Metrics.counter( "live.bytes" );
+
+    Snapshot snapshot = null;
+
+    public LiveStateServer(int port, LiveFlows flows) throws IOException {
+
+        this.flows = flows;
+
+        this.server = HttpServer.create( new InetSocketAddress( port ), 0 );
+        this.pool = Executors.newCachedThreadPool( new ThreadFactory() {
+            final AtomicInteger n = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread( r, "live-http-" + n.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        });
+        server.setExecutor( pool );
+
+        server.createContext( "/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange x) throws IOException {
+                page( x );
+            }
+        });
+        server.createContext( "/grid.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange x) throws IOException {
+                grid( x );
+            }
+        });
+        server.createContext( "/flows", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange x) throws IOException {
+                if ( x.getRequestURI().getPath().equals( "/flows/stream" ) )
+                    stream( x );
+                else
+                    flows( x );
+            }
+        });
+
+        Metrics.gauge( "live.clients", new Gauge() {
+            @Override
+            public double value() {
+                return clients.get();
+            }
+        });
+
+    }
+
+    public static LiveStateServer start(LiveFlows flows) throws IOException {
+        LiveStateServer s = new LiveStateServer( PORT, flows );
+        s.server.start();
+        System.out.println( "> Live state on http://localhost:" + s.port() + "/" );
+        return s;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public int clientCount() {
+        return clients.get();
+    }
+
+    /**
+     * Ends the streams and stops the server.
+     */
+    public void close() {
+        flows.close();
+        server.stop( 0 );
+        pool.shutdownNow();
+    }
+
+    /*
+     * Handlers
+     */
+
+    void page(HttpExchange x) throws IOException {
+
+        if ( !x.getRequestURI().getPath().equals( "/" ) ) {
+            send( x, 404, "text/plain", "Not found".getBytes( StandardCharsets.UTF_8 ), null );
+            return;
+        }
+
+        try ( InputStream in = LiveStateServer.class.getResourceAsStream( "/live/index.html" ) ) {
+            if ( in == null ) {
+                send( x, 404, "text/plain", "No viewer page in the classpath".getBytes( StandardCharsets.UTF_8 ), null );
+                return;
+            }
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            for( int n; ( n = in.read( b ) ) > 0; ) {
+                page.write( b, 0, n );
+            }
+            send( x, 200, "text/html; charset=utf-8", page.toByteArray(), null );
+        }
+
+    }
+
+    void grid(HttpExchange x) throws IOException {
+
+        Snapshot s = snapshot( SimulationScenario.getModel() );
+
+        if ( s.etag.equals( x.getRequestHeaders().getFirst( "If-None-Match" ) ) ) {
+            notModified( x, s.etag );
+            return;
+        }
+
+        String accept = x.getRequestHeaders().getFirst( "Accept-Encoding" );
+        if ( accept != null && accept.contains( "gzip" ) ) {
+            x.getResponseHeaders().set( "Content-Encoding", "gzip" );
+            send( x, 200, "application/geo+json", s.gzip, s.etag );
+        }
+        else {
+            send( x, 200, "application/geo+json", s.json, s.etag );
+        }
+
+    }
+
+    void flows(HttpExchange x) throws IOException {
+
+        LiveFlows.Frame f = flows.since( 0 );
+        String etag = "\"" + f.id + "\"";
+
+        if ( etag.equals( x.getRequestHeaders().getFirst( "If-None-Match" ) ) )
+            notModified( x, etag );
+        else
+            send( x, 200, "application/json", f.json.getBytes( StandardCharsets.UTF_8 ), etag );
+
+    }
+
+    void stream(HttpExchange x) throws IOException {
+
+        if ( clients.incrementAndGet() > MAX_CLIENTS ) {
+            clients.decrementAndGet();
+            send( x, 503, "text/plain", "Too many clients".getBytes( StandardCharsets.UTF_8 ), null );
+            return;
+        }
+
+        try {
+
+            x.getResponseHeaders().set( "Content-Type", "text/event-stream" );
+            x.getResponseHeaders().set( "Cache-Control", "no-cache" );
+            x.getResponseHeaders().set( "Access-Control-Allow-Origin", "*" );
+            x.sendResponseHeaders( 200, 0 );
+
+            OutputStream out = x.getResponseBody();
+            out.write( "retry: 2000\n\n".getBytes( StandardCharsets.UTF_8 ) );
+            out.flush();
+
+            long seen = flows.resume( x.getRequestHeaders().getFirst( "Last-Event-ID" ) );
+
+            while( !Thread.currentThread().isInterrupted() ) {
+
+                LiveFlows.Frame f = flows.next( seen, KEEPALIVE_MS );
+
+                byte[] b;
+                if ( f == null ) {
+                    if ( flows.closed )
+                        break;
+                    // a comment, finds the clients which are gone
+                    b = ": keepalive\n\n".getBytes( StandardCharsets.UTF_8 );
+                }
+                else {
+                    b = f.event();
+                    frames.inc();
+                    if ( f.seq > seen + 1 && seen > 0 )
+                        coalesced.inc();
+                    seen = f.seq;
+                }
+
+                out.write( b );
+                out.flush();
+                bytes.add( b.length );
+
+            }
+
+        }
+        catch (IOException e) {
+            // the client is gone
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            clients.decrementAndGet();
+            x.close();
+        }
+
+    }
+
+    static void send(HttpExchange x, int status, String type, byte[] body, String etag) throws IOException {
+        x.getResponseHeaders().set( "Content-Type", type );
+        x.getResponseHeaders().set( "Access-Control-Allow-Origin", "*" );
+        if ( etag != null ) {
+            x.getResponseHeaders().set( "ETag", etag );
+            x.getResponseHeaders().set( "Cache-Control", "no-cache" );
+        }
+        if ( x.getRequestMethod().equals( "HEAD" ) ) {
+            x.sendResponseHeaders( status, -1 );
+        }
+        else {
+            x.sendResponseHeaders( status, body.length );
+            x.getResponseBody().write( body );
+        }
+        x.close();
+    }
+
+    static void notModified(HttpExchange x, String etag) throws IOException {
+        x.getResponseHeaders().set( "ETag", etag );
+        x.getResponseHeaders().set( "Access-Control-Allow-Origin", "*" );
+        x.sendResponseHeaders( 304, -1 );
+        x.close();
+    }
+
+    /*
+     * Grid snapshot
+     */
+
+    static final class Snapshot {
+
+        final long version;
+        final String etag;
+        final byte[] json;
+        final byte[] gzip;
+
+        Snapshot(long version, byte[] json) throws IOException {
+            this.version = version;
+            this.etag = "\"v" + version + "\"";
+            this.json = json;
+            ByteArrayOutputStream bos = new ByteArrayOutputStream( json.length / 4 );
+            try ( GZIPOutputStream gz = new GZIPOutputStream( bos ) ) {
+                gz.write( json );
+            }
+            this.gzip = bos.toByteArray();
+        }
+
+    }
+
+    /**
+     * The encoded snapshot of the model, encoded once per version.
+     */
+    synchronized Snapshot snapshot(GridModel grid) throws IOException {
+
+        if ( snapshot != null && snapshot.version == grid.version() )
+            return snapshot;
+
+        GeoJSONEncoder e = new GeoJSONEncoder( 256 * ( grid.linkCount() + grid.stations().size() + grid.powerPlants().size() ) + 64 );
+        e.raw( "{\"type\":\"FeatureCollection\",\"features\":[" );
+
+        for( Station s : grid.stations() ) {
+            e.poi( s.asPoi() );
+        }
+        for( PowerPlant p : grid.powerPlants() ) {
+            e.poi( p.asPoi() );
+        }
+        for( GridLink l : grid.gridLinks() ) {
+            Node a = l.source();
+            Node b = l.target();
+            double o = l.visualOffset();
+            e.lines( Collections.singletonList( new double[] { a.lon - o, a.lat + o, b.lon - o, b.lat + o } ), -1,
+                    "id", l.id, "linkType", l.linkType(), "popupContent", l.linkType() + ": (" + a.name + "=>" + b.id + ")" );
+        }
+
+        e.raw( "]}" );
+
+        snapshot = new Snapshot( grid.version(), e.toString().getBytes( StandardCharsets.UTF_8 ) );
+        return snapshot;
+
+    }
+
+}
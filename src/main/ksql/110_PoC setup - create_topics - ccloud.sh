@@ -29,13 +29,17 @@ ccloud kafka topic delete grid-stations --cluster lkc-jwgvw
 ccloud kafka topic delete grid-plants --cluster lkc-jwgvw
 ccloud kafka topic delete grid-link-flow-data --cluster lkc-jwgvw
 ccloud kafka topic delete grid-static-links --cluster lkc-jwgvw
+ccloud kafka topic delete grid-link-dictionary --cluster lkc-jwgvw
+ccloud kafka topic delete grid-link-flow-enriched --cluster lkc-jwgvw
 
 # Create
-ccloud kafka topic create grid-regions --cluster lkc-jwgvw --partitions 1
-ccloud kafka topic create grid-stations --cluster lkc-jwgvw --partitions 1
-ccloud kafka topic create grid-plants --cluster lkc-jwgvw --partitions 1
+ccloud kafka topic create grid-regions --cluster lkc-jwgvw --partitions 1 --config cleanup.policy=compact
+ccloud kafka topic create grid-stations --cluster lkc-jwgvw --partitions 1 --config cleanup.policy=compact
+ccloud kafka topic create grid-plants --cluster lkc-jwgvw --partitions 1 --config cleanup.policy=compact
 ccloud kafka topic create grid-link-flow-data --cluster lkc-jwgvw --partitions 1
-ccloud kafka topic create grid-static-links --cluster lkc-jwgvw --partitions 1
+ccloud kafka topic create grid-static-links --cluster lkc-jwgvw --partitions 1 --config cleanup.policy=compact
+ccloud kafka topic create grid-link-dictionary --cluster lkc-jwgvw --partitions 1 --config cleanup.policy=compact
+ccloud kafka topic create grid-link-flow-enriched --cluster lkc-jwgvw --partitions 1
 
 
 
@@ -0,0 +1,78 @@
+package kafka.serde;
+
+import datamodel.measurement.SampleBuffer;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The buffer -> encoder path of the tick allocates nothing per record. Only encode(buffer, slot,
+ * ByteBuffer) into a reused ByteBuffer is measured, the byte[] copy handed to Kafka is not.
+ */
+public class SampleEncoderAllocationTest {
+
+    static final int LINKS = 1000;
+    static final int RECORDS = 200000;
+
+    @Test
+    public void jsonEncoderAllocatesNothingPerRecord() {
+        assertEquals( 0.0, bytesPerRecord( SampleFormat.JSON ), 0.0 );
+    }
+
+    @Test
+    public void binaryEncoderAllocatesNothingPerRecord() {
+        assertEquals( 0.0, bytesPerRecord( SampleFormat.BINARY ), 0.0 );
+    }
+
+    static double bytesPerRecord(SampleFormat format) {
+
+        com.sun.management.ThreadMXBean threads = threads();
+
+        String[] ids = new String[LINKS];
+        LinkIdDictionary dictionary = new LinkIdDictionary();
+        for( int i = 0; i < LINKS; i++ ) {
+            ids[i] = "ST" + i + "-ST" + ( i + 1 );
+            dictionary.assign( ids[i] );
+        }
+
+        SampleEncoder encoder = format.encoder( ids, dictionary );
+        SampleBuffer buffer = new SampleBuffer( LINKS );
+        for( int i = 0; i < LINKS; i++ ) {
+            buffer.set( i, i, 1600000000000L + i, 100 + i * 0.37 );
+        }
+        buffer.setSize( LINKS );
+        ByteBuffer out = ByteBuffer.allocate( 1 << 12 );
+
+        // warm up, the encode loop is compiled before it is measured
+        encode( encoder, buffer, out, RECORDS );
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes( thread );
+        encode( encoder, buffer, out, RECORDS );
+        long allocated = threads.getThreadAllocatedBytes( thread ) - before;
+
+        return (double) allocated / RECORDS;
+
+    }
+
+    static void encode(SampleEncoder encoder, SampleBuffer buffer, ByteBuffer out, int records) {
+        for( int r = 0; r < records; r++ ) {
+            out.clear();
+            encoder.encode( buffer, r % LINKS, out );
+        }
+    }
+
+    static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue( bean instanceof com.sun.management.ThreadMXBean );
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue( threads.isThreadAllocatedMemorySupported() );
+        threads.setThreadAllocatedMemoryEnabled( true );
+        return threads;
+    }
+
+}
@@ -0,0 +1,152 @@
+package kafka.streams;
+
+import datamodel.graph_of_things.GridModel;
+import datamodel.graph_of_things.nodes.PowerPlant;
+import datamodel.graph_of_things.nodes.Region;
+import datamodel.graph_of_things.nodes.Station;
+import datamodel.graph_of_things.relations.GridLink;
+import datamodel.measurement.PowerFlowSample;
+import kafka.serde.LinkIdDictionary;
+import kafka.serde.SampleFormat;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tool.RegionalBalance;
+import tool.SimulationScenario;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The region transfer topology offline with TopologyTestDriver, for JSON and binary samples: the
+ * window totals must be the ones of the in-process RegionalBalance, and getTotalFor must report
+ * them from the store as average MW.
+ */
+public class RegionTransferTopologyTest {
+
+    static final String TOPIC = "grid-link-flow-data";
+    static final long WINDOW_MS = 10000;
+    static final long ADVANCE_MS = 5000;
+    static final int TICKS = 15;
+
+    List<Region> regions;
+    List<Station> stations;
+    GridModel grid;
+    List<GridLink> links;
+
+    long window, advance;
+
+    @Before
+    public void setUp() {
+
+        regions = Arrays.asList(
+                new Region( "R1", "BE", "Belgium", 50.8, 4.4, 0, 0, 0, 0 ),
+                new Region( "R2", "DE", "Germany", 51.2, 10.4, 0, 0, 0, 0 ),
+                new Region( "R3", "NL", "Netherlands", 52.1, 5.3, 0, 0, 0, 0 ) );
+        stations = Arrays.asList(
+                new Station( "S1", "BE", "Brussels", 50.8, 4.4 ),
+                new Station( "S2", "DE", "Aachen", 50.8, 6.1 ),
+                new Station( "S3", "NL", "Maastricht", 50.9, 5.7 ) );
+
+        grid = GridModel.build( regions, stations, Collections.<PowerPlant>emptyList(), Arrays.asList( "S1-S2", "S2-S3" ) );
+        links = grid.gridLinks();
+
+        window = RegionTransferService.WINDOW_MS;
+        advance = RegionTransferService.ADVANCE_MS;
+        RegionTransferService.WINDOW_MS = WINDOW_MS;
+        RegionTransferService.ADVANCE_MS = ADVANCE_MS;
+
+    }
+
+    @After
+    public void tearDown() {
+        RegionTransferService.WINDOW_MS = window;
+        RegionTransferService.ADVANCE_MS = advance;
+        SimulationScenario.transfers = null;
+    }
+
+    @Test
+    public void jsonSamples() throws IOException {
+        run( SampleFormat.JSON );
+    }
+
+    @Test
+    public void binarySamples() throws IOException {
+        run( SampleFormat.BINARY );
+    }
+
+    void run(SampleFormat format) throws IOException {
+
+        LinkIdDictionary dictionary = new LinkIdDictionary();
+        for( GridLink l : links ) {
+            dictionary.assign( l.id );
+        }
+        Serde<PowerFlowSample> serde = format.serde( dictionary );
+
+        Properties props = new Properties();
+        props.put( StreamsConfig.APPLICATION_ID_CONFIG, "region-transfer-test" );
+        props.put( StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092" );
+        props.put( StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory( "region-transfers" ).toString() );
+
+        RegionalBalance balance = new RegionalBalance( regions, links, WINDOW_MS, ADVANCE_MS );
+
+        try ( TopologyTestDriver driver = new TopologyTestDriver( RegionTransferTopology.build( TOPIC,
+                RegionTransferTopology.linkRegions( links ), serde, WINDOW_MS, ADVANCE_MS, 0, 3600000 ), props ) ) {
+
+            TestInputTopic<String, PowerFlowSample> input = driver.createInputTopic( TOPIC, Serdes.String().serializer(), serde.serializer() );
+
+            // S1-S2 carries 100 + t from BE to DE, S2-S3 carries 50 from NL to DE (a negative flow)
+            for( int t = 0; t < TICKS; t++ ) {
+                PowerFlowSample a = PowerFlowSample.of( links.get( 0 ).id, t * PowerFlowSample.TICK_MS, 100 + t );
+                PowerFlowSample b = PowerFlowSample.of( links.get( 1 ).id, t * PowerFlowSample.TICK_MS, -50 );
+                input.pipeInput( a.id, a );
+                input.pipeInput( b.id, b );
+                balance.add( a );
+                balance.add( b );
+            }
+
+            driver.advanceWallClockTime( Duration.ofMillis( WINDOW_MS ) );
+
+            WindowStore<String, Double> store = driver.getWindowStore( RegionTransferTopology.STORE );
+
+            // the newest window starts at 10 s and is still filling, the latest complete one is [0 s, 10 s): ticks 0 .. 9
+            assertEquals( 10000, RegionTransferTopology.newestWindowStart( store, Long.MIN_VALUE ) );
+            assertEquals( 1045.0, RegionTransferTopology.latest( store, "BE", "DE", WINDOW_MS, ADVANCE_MS ), 1e-9 );
+            assertEquals( 500.0, RegionTransferTopology.latest( store, "NL", "DE", WINDOW_MS, ADVANCE_MS ), 1e-9 );
+            assertNull( RegionTransferTopology.latest( store, "DE", "BE", WINDOW_MS, ADVANCE_MS ) );
+
+            // the window of the next hop, [5 s, 15 s), has all its ticks but its newest pane may still get samples
+            assertEquals( 1095.0, RegionTransferTopology.total( store, "BE", "DE", 5000 ), 1e-9 );
+
+            RegionalBalance.Snapshot s = balance.snapshot();
+            assertEquals( 0, s.start );
+            assertEquals( 104.5, s.average( s.transfer( 0, 1 ) ), 1e-9 );
+            assertEquals( s.transfer( 0, 1 ), RegionTransferTopology.latest( store, "BE", "DE", WINDOW_MS, ADVANCE_MS ), 1e-9 );
+            assertEquals( s.transfer( 2, 1 ), RegionTransferTopology.latest( store, "NL", "DE", WINDOW_MS, ADVANCE_MS ), 1e-9 );
+
+            // getTotalFor reads the store through the service: 1045 MW x ticks over 10 ticks
+            SimulationScenario.setModel( grid );
+            SimulationScenario.transfers = new RegionTransferService( store );
+            assertEquals( "104.5 MW", SimulationScenario.getTotalFor( "R1", "R2" ) );
+            assertEquals( "50.0 MW", SimulationScenario.getTotalFor( "R3", "R2" ) );
+            assertEquals( "n/a", SimulationScenario.getTotalFor( "R2", "R1" ) );
+
+        }
+
+    }
+
+}